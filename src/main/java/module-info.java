@@ -2,6 +2,13 @@ module word_statistics {
     requires javafx.controls;
     requires javafx.fxml;
     requires transitive javafx.base;
+    // optional HTTP/JSON API (word_statistics.api.port)
+    requires jdk.httpserver;
+    // GC and thread statistics of the soak test (word_statistics.tools.SoakTest)
+    requires java.management;
+    requires jdk.management;
+    // optional SIMD tokenizer, used only when the module is resolved at runtime
+    requires static jdk.incubator.vector;
 
     // Export packages
     exports word_statistics;
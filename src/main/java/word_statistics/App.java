@@ -3,31 +3,122 @@ package word_statistics;
 import java.io.IOException;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.stage.Stage;
+import word_statistics.api.ApiServer;
+import word_statistics.controller.MainController;
+import word_statistics.core.TokenizerWarmup;
+import word_statistics.tools.AllocationBench;
+import word_statistics.tools.AotTraining;
+import word_statistics.tools.CorpusGenerator;
+import word_statistics.tools.SoakTest;
+import word_statistics.tools.TokenizerBench;
 
 public class App extends Application {
 
+    private final TabPane sessionTabs = new TabPane();
+    private int sessionCount = 0;
+    private ApiServer apiServer;
+
+    @Override
+    public void init() {
+        TokenizerWarmup.startInBackground();
+        apiServer = ApiServer.startFromSystemProperties();
+    }
+
+    @Override
+    public void stop() {
+        if (apiServer != null) {
+            apiServer.stop();
+        }
+    }
+
     @Override
     public void start(Stage primaryStage) {
+        // One tab per analysis session; the "+" tab opens another one
+        Tab newSessionTab = new Tab("+");
+        newSessionTab.setClosable(false);
+        sessionTabs.getTabs().add(newSessionTab);
+        MainController first = openSession();
+        newSessionTab.setOnSelectionChanged(event -> {
+            if (newSessionTab.isSelected()) {
+                MainController controller = openSession();
+                if (controller != null) {
+                    controller.connectSession();
+                }
+            }
+        });
+
+        Scene scene = new Scene(sessionTabs, 1200, 800);
+
+        primaryStage.setTitle("Text File Analyzer");
+        primaryStage.setScene(scene);
+        primaryStage.setMinWidth(1200);
+        primaryStage.setMinHeight(800);
+        primaryStage.show();
+
+        // The engine, with its reader and tokenizer threads, and the first
+        // session are built after the first frame instead of before it
+        if (first != null) {
+            scene.addPostLayoutPulseListener(new Runnable() {
+                @Override
+                public void run() {
+                    scene.removePostLayoutPulseListener(this);
+                    Platform.runLater(first::connectSession);
+                }
+            });
+        }
+    }
+
+    private MainController openSession() {
         try {
-            Parent root = FXMLLoader.load(getClass().getResource("main.fxml"));
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("main.fxml"));
+            Parent root = loader.load();
+            MainController controller = loader.getController();
 
-            Scene scene = new Scene(root, 1200, 800);
+            sessionCount++;
+            Tab tab = new Tab("Session " + sessionCount, root);
+            tab.setOnClosed(event -> controller.closeSession());
 
-            primaryStage.setTitle("Text File Analyzer");
-            primaryStage.setScene(scene);
-            primaryStage.setMinWidth(1200);
-            primaryStage.setMinHeight(800);
-            primaryStage.show();
+            // Keep "+" as the last tab
+            sessionTabs.getTabs().add(sessionTabs.getTabs().size() - 1, tab);
+            sessionTabs.getSelectionModel().select(tab);
+            return controller;
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
     public static void main(String[] args) {
+        // Headless commands, otherwise the UI
+        int status = SnapshotCli.run(args);
+        if (status < 0) {
+            status = CorpusGenerator.run(args);
+        }
+        if (status < 0) {
+            status = SoakTest.run(args);
+        }
+        if (status < 0) {
+            status = AllocationBench.run(args);
+        }
+        if (status < 0) {
+            status = TokenizerBench.run(args);
+        }
+        if (status < 0) {
+            status = AotTraining.run(args);
+        }
+        if (status < 0) {
+            status = ApiServer.run(args);
+        }
+        if (status >= 0) {
+            System.exit(status);
+        }
         launch(args);
     }
 }
@@ -0,0 +1,88 @@
+package word_statistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import word_statistics.core.RunSnapshot;
+import word_statistics.core.SnapshotDiff;
+
+// Headless commands on the run snapshots, so the UI isn't needed to see what changed:
+//   snapshots <directory>            lists the snapshots of a directory
+//   diff <directory>                 compares its two latest snapshots
+//   diff <old.snap> <new.snap>       compares two snapshot files
+public class SnapshotCli {
+
+    // Returns the exit status, or -1 if the arguments are not a snapshot command
+    public static int run(String[] args) {
+        if (args.length == 0 || !(args[0].equals("snapshots") || args[0].equals("diff"))) {
+            return -1;
+        }
+        try {
+            if (args[0].equals("snapshots") && args.length == 2) {
+                return listSnapshots(args[1]);
+            }
+            if (args[0].equals("diff") && args.length == 2) {
+                List<Path> snapshots = RunSnapshot.list(args[1]);
+                if (snapshots.size() < 2) {
+                    System.err.println("Need two snapshots of " + args[1] + ", found " + snapshots.size());
+                    return 1;
+                }
+                return diff(snapshots.get(snapshots.size() - 2), snapshots.get(snapshots.size() - 1));
+            }
+            if (args[0].equals("diff") && args.length == 3) {
+                return diff(Path.of(args[1]), Path.of(args[2]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading snapshots - " + e.getMessage());
+            return 1;
+        }
+        System.err.println("Usage: snapshots <directory> | diff <directory> | diff <old.snap> <new.snap>");
+        return 2;
+    }
+
+    private static int listSnapshots(String directory) throws IOException {
+        for (Path snapshot : RunSnapshot.list(directory)) {
+            try (RunSnapshot.Reader reader = new RunSnapshot.Reader(snapshot)) {
+                System.out.println(snapshot + "    " + new Date(reader.getCreatedMillis()) + "    "
+                        + reader.getFileCount() + " files, " + reader.getTotalWords() + " words");
+            }
+        }
+        return 0;
+    }
+
+    // Streams every change to stdout, however many there are; each directory's
+    // totals follow its files
+    private static int diff(Path older, Path newer) throws IOException {
+        for (Path snapshot : List.of(older, newer)) {
+            if (!Files.isRegularFile(snapshot)) {
+                System.err.println("No such snapshot: " + snapshot);
+                return 1;
+            }
+        }
+        long[] counts = new long[SnapshotDiff.ChangeType.values().length];
+        SnapshotDiff.compare(older, newer, new SnapshotDiff.Listener() {
+            @Override
+            public void fileChanged(SnapshotDiff.FileChange change) {
+                counts[change.getType().ordinal()]++;
+                System.out.println(change);
+            }
+
+            @Override
+            public void directoryChanged(SnapshotDiff.DirectoryChange change) {
+                System.out.println("= " + change);
+            }
+        });
+        try (RunSnapshot.Reader before = new RunSnapshot.Reader(older);
+                RunSnapshot.Reader after = new RunSnapshot.Reader(newer)) {
+            System.out.println(counts[SnapshotDiff.ChangeType.ADDED.ordinal()] + " added, "
+                    + counts[SnapshotDiff.ChangeType.REMOVED.ordinal()] + " removed, "
+                    + counts[SnapshotDiff.ChangeType.CHANGED.ordinal()] + " changed; files "
+                    + before.getFileCount() + " -> " + after.getFileCount()
+                    + ", words " + before.getTotalWords() + " -> " + after.getTotalWords());
+        }
+        return 0;
+    }
+}
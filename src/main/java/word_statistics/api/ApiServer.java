@@ -0,0 +1,567 @@
+package word_statistics.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import word_statistics.core.AnalysisSession;
+import word_statistics.core.FileResultLog;
+import word_statistics.core.FileSearchEngine;
+import word_statistics.core.NGramCounter;
+import word_statistics.core.TokenizerWarmup;
+import word_statistics.model.AppStatus;
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.DirectoryNode;
+import word_statistics.model.Estimate;
+import word_statistics.model.FileModel;
+import word_statistics.model.ProfileReport;
+import word_statistics.model.WordFrequency;
+
+// Optional HTTP/JSON API over the engine, started next to the UI when
+// -Dword_statistics.api.port is set, or on its own without a display or JavaFX
+// toolkit:
+//   api --port=<port> [--host=<address>] [--token=<token>]
+//
+// Every request runs on its own virtual thread and only reads the sessions'
+// atomic counters and result logs, so pollers never hold up workers.
+//
+// POST   /api/scans?directory=..&subdirectories=..&deduplicate=..&index=..&frequencies=..&ngrams=n&unicode=..&preview=..  start a scan in a new session
+// GET    /api/scans                       progress of every session, including the UI tabs
+// GET    /api/scans/{id}                  progress of one session, with the estimate of a preview scan
+// POST   /api/scans/{id}/stop             stop the scan
+// DELETE /api/scans/{id}                  stop and close a session started here; the UI's tabs are refused
+// GET    /api/scans/{id}/files[?follow=false]  finished files as NDJSON, streamed until the scan ends
+// GET    /api/scans/{id}/directory        directory totals, word frequencies, top n-grams, profile and rollups
+//
+// With -Dword_statistics.api.token every request must send "Authorization:
+// Bearer <token>"; binding anywhere but loopback requires one. Scans started
+// here that see no request for -Dword_statistics.api.idleMinutes (30) are
+// closed, so abandoned clients don't keep sessions and their results alive.
+public class ApiServer {
+
+    private static final long FOLLOW_POLL_MILLIS = 1000;
+    private static final long IDLE_MILLIS = Long.getLong("word_statistics.api.idleMinutes", 30) * 60_000;
+
+    private final FileSearchEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService reaper;
+    private final byte[] token;
+    // Sessions started through the API and when a request last touched them; the UI's tabs are never reaped
+    private final Map<AnalysisSession, Long> lastAccess = new ConcurrentHashMap<>();
+
+    public ApiServer(FileSearchEngine engine, InetSocketAddress address, String token) throws IOException {
+        if (token == null && !address.getAddress().isLoopbackAddress()) {
+            throw new IllegalArgumentException("Binding to " + address.getAddress().getHostAddress()
+                    + " requires -Dword_statistics.api.token");
+        }
+        this.engine = engine;
+        this.token = token == null ? null : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/scans", this::handle);
+        this.reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ApiSessionReaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Null unless the port property is set
+    public static ApiServer startFromSystemProperties() {
+        Integer port = Integer.getInteger("word_statistics.api.port");
+        if (port == null) {
+            return null;
+        }
+        try {
+            return start(port, System.getProperty("word_statistics.api.host"),
+                    System.getProperty("word_statistics.api.token"));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Cannot start API server on port " + port + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command;
+    // serves until the process is stopped
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("api")) {
+            return -1;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || equals < 0) {
+                return usage("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2, equals), args[i].substring(equals + 1));
+        }
+        int port;
+        try {
+            port = Integer.parseInt(options.getOrDefault("port", ""));
+        } catch (NumberFormatException e) {
+            return usage("Missing or invalid --port");
+        }
+
+        ApiServer apiServer;
+        try {
+            apiServer = start(port, options.get("host"), options.get("token"));
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Cannot start API server on port " + port + " - " + e.getMessage());
+            return 1;
+        }
+        TokenizerWarmup.startInBackground();
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop, "ApiServerShutdown"));
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: api --port=<port> [--host=<address>] [--token=<token>]");
+        return 2;
+    }
+
+    // Binds to loopback unless a host is given
+    private static ApiServer start(int port, String host, String token) throws IOException {
+        InetSocketAddress address = host == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(host, port);
+        ApiServer apiServer = new ApiServer(FileSearchEngine.getInstance(), address, token);
+        apiServer.start();
+        System.out.println("API server listening on " + apiServer.getAddress());
+        return apiServer;
+    }
+
+    public void start() {
+        server.start();
+        long period = Math.max(1_000, IDLE_MILLIS / 4);
+        reaper.scheduleWithFixedDelay(this::closeIdleSessions, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        server.stop(0);
+        reaper.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        lastAccess.forEach((session, last) -> {
+            if (now - last > IDLE_MILLIS && lastAccess.remove(session, last)) {
+                System.err.println("Closing idle API scan " + session.getId());
+                session.close();
+            }
+        });
+    }
+
+    private void touch(AnalysisSession session) {
+        lastAccess.computeIfPresent(session, (s, last) -> System.currentTimeMillis());
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                System.err.println("Error handling API request: " + exchange.getRequestURI() + " - " + e.getMessage());
+                try {
+                    sendError(exchange, 500, "Internal error");
+                } catch (IOException | IllegalStateException alreadySent) {
+                    // A streamed response already has its status, closing the exchange ends it
+                }
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws Exception {
+        if (token != null && !authorized(exchange)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            sendError(exchange, 401, "Missing or wrong bearer token");
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath()
+                .substring("/api/scans".length())
+                .replaceAll("^/+|/+$", "")
+                .split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (parts[0].isEmpty()) {
+            if (method.equals("GET")) {
+                listScans(exchange);
+            } else if (method.equals("POST")) {
+                startScan(exchange, query);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+            return;
+        }
+
+        AnalysisSession session = findSession(parts[0]);
+        if (session == null) {
+            sendError(exchange, 404, "No such scan: " + parts[0]);
+            return;
+        }
+        touch(session);
+
+        String action = parts.length > 1 ? parts[1] : "";
+        String route = method + " " + action;
+        switch (route) {
+            case "GET " -> sendJson(exchange, 200, progressJson(session));
+            case "DELETE " -> {
+                // Only sessions started here are tracked; a tab's session is closed with its tab
+                if (lastAccess.remove(session) == null) {
+                    sendError(exchange, 403, "Scan " + session.getId() + " belongs to the UI");
+                    return;
+                }
+                session.close();
+                sendJson(exchange, 200, progressJson(session));
+            }
+            case "POST stop" -> {
+                session.stopEngine();
+                sendJson(exchange, 200, progressJson(session));
+            }
+            case "GET files" -> streamFiles(exchange, session, !"false".equals(query.get("follow")));
+            case "GET directory" -> sendDirectory(exchange, session);
+            default -> sendError(exchange, 404, "Unknown endpoint: " + route);
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && MessageDigest.isEqual(token, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private AnalysisSession findSession(String id) {
+        for (AnalysisSession session : engine.getSessions()) {
+            if (String.valueOf(session.getId()).equals(id)) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    private void listScans(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (AnalysisSession session : engine.getSessions()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(progressJson(session));
+        }
+        sendJson(exchange, 200, json.append(']').toString());
+    }
+
+    private void startScan(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String directory = query.get("directory");
+        if (directory == null || directory.isEmpty()) {
+            sendError(exchange, 400, "Missing 'directory' parameter");
+            return;
+        }
+
+        AnalysisSession session = engine.createSession();
+        lastAccess.put(session, System.currentTimeMillis());
+        try {
+            session.setCurrentDirectory(directory);
+        } catch (IllegalArgumentException e) {
+            lastAccess.remove(session);
+            session.close();
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        session.includeSubdirectoriesProperty().set(Boolean.parseBoolean(query.get("subdirectories")));
+        session.deduplicateProperty().set(Boolean.parseBoolean(query.get("deduplicate")));
+        session.buildIndexProperty().set(Boolean.parseBoolean(query.get("index")));
+        session.wordFrequenciesProperty().set(Boolean.parseBoolean(query.get("frequencies")));
+        session.unicodeWordsProperty().set(Boolean.parseBoolean(query.get("unicode")));
+        session.previewProperty().set(Boolean.parseBoolean(query.get("preview")));
+        int nGramSize;
+        try {
+            nGramSize = query.containsKey("ngrams") ? Integer.parseInt(query.get("ngrams")) : 0;
+        } catch (NumberFormatException e) {
+            nGramSize = -1;
+        }
+        if (nGramSize != 0 && (nGramSize < 2 || nGramSize > Byte.MAX_VALUE)) {
+            lastAccess.remove(session);
+            session.close();
+            sendError(exchange, 400, "'ngrams' must be 0 or between 2 and 127: " + query.get("ngrams"));
+            return;
+        }
+        session.nGramSizeProperty().set(nGramSize);
+
+        // Same steps as the Analyze button
+        session.setStatus(AppStatus.RUNNING);
+        session.setTotalFiles(0);
+        session.setFileProcessed(0);
+        session.startEngine();
+
+        sendJson(exchange, 202, progressJson(session));
+    }
+
+    // Chunked NDJSON, one finished file per line; with follow it keeps the
+    // response open until the scan completes or is stopped
+    private void streamFiles(HttpExchange exchange, AnalysisSession session, boolean follow)
+            throws IOException, InterruptedException {
+        FileResultLog log = session.getResults();
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+
+        try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+            int cursor = 0;
+            while (true) {
+                List<FileModel> batch = log.awaitFrom(cursor, follow ? FOLLOW_POLL_MILLIS : 0);
+                for (FileModel file : batch) {
+                    out.write(fileJson(file));
+                    out.write('\n');
+                }
+                cursor += batch.size();
+                out.flush();
+                // A client following the stream is still there
+                touch(session);
+
+                if (batch.isEmpty() && (!follow || (log.isClosed() && cursor >= log.size()))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sendDirectory(HttpExchange exchange, AnalysisSession session) throws IOException {
+        DirectoryModel model = session.getDirectoryModel();
+        if (model == null) {
+            sendError(exchange, 404, "Scan " + session.getId() + " has not been started");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"directory\":").append(quote(session.getCurrentDirectory()));
+        json.append(",\"totalWords\":").append(model.totalWords.get());
+        json.append(",\"isCount\":").append(model.isCount.get());
+        json.append(",\"areCount\":").append(model.areCount.get());
+        json.append(",\"youCount\":").append(model.youCount.get());
+        json.append(",\"uniqueTotalWords\":").append(model.uniqueTotalWords.get());
+        json.append(",\"uniqueIsCount\":").append(model.uniqueIsCount.get());
+        json.append(",\"uniqueAreCount\":").append(model.uniqueAreCount.get());
+        json.append(",\"uniqueYouCount\":").append(model.uniqueYouCount.get());
+        json.append(",\"longestWord\":").append(quote(model.longestWord.get()));
+        json.append(",\"shortestWord\":").append(quote(model.shortestWord.get()));
+        json.append(",\"distinctWords\":").append(model.getDistinctWords());
+        json.append(",\"topWords\":[");
+        List<WordFrequency> topWords = model.getTopWords();
+        for (int i = 0; i < topWords.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"word\":").append(quote(topWords.get(i).getWord()))
+                    .append(",\"count\":").append(topWords.get(i).getCount()).append('}');
+        }
+        json.append("]");
+        json.append(",\"nGramMaxError\":").append(model.getNGramMaxError());
+        json.append(",\"nGrams\":[");
+        List<NGramCounter.NGram> nGrams = model.topNGrams(100);
+        for (int i = 0; i < nGrams.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"text\":").append(quote(nGrams.get(i).getText()))
+                    .append(",\"n\":").append(nGrams.get(i).getLength())
+                    .append(",\"count\":").append(nGrams.get(i).getCount()).append('}');
+        }
+        json.append("]");
+        json.append(",\"profile\":");
+        appendProfile(json, model.getProfileReport());
+        json.append(",\"tree\":");
+        appendNode(json, model.getRootNode());
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    // Null until the scan completed
+    private static void appendProfile(StringBuilder json, ProfileReport report) {
+        if (report == null) {
+            json.append("null");
+            return;
+        }
+        json.append("{\"profiledFiles\":").append(report.getProfiledFiles());
+        json.append(",\"totalBytes\":").append(report.getTotalBytes());
+        json.append(",\"totalReadNanos\":").append(report.getTotalReadNanos());
+        json.append(",\"totalTokenizeNanos\":").append(report.getTotalTokenizeNanos());
+        json.append(",\"totalQueueWaitNanos\":").append(report.getTotalQueueWaitNanos());
+        json.append(",\"medianBytesPerSecond\":").append((long) report.getMedianBytesPerSecond());
+        json.append(",\"outlierCount\":").append(report.getOutlierCount());
+        json.append(",\"slowestFiles\":");
+        appendFiles(json, report.getSlowestFiles());
+        json.append(",\"outliers\":");
+        appendFiles(json, report.getOutliers());
+        json.append('}');
+    }
+
+    private static void appendFiles(StringBuilder json, List<FileModel> files) {
+        json.append('[');
+        for (int i = 0; i < files.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(fileJson(files.get(i)));
+        }
+        json.append(']');
+    }
+
+    private static void appendNode(StringBuilder json, DirectoryNode node) {
+        json.append("{\"name\":").append(quote(node.getName()));
+        json.append(",\"path\":").append(quote(node.getPath()));
+        json.append(",\"fileCount\":").append(node.getFileCount());
+        json.append(",\"totalWords\":").append(node.getTotalWords());
+        json.append(",\"isCount\":").append(node.getIsCount());
+        json.append(",\"areCount\":").append(node.getAreCount());
+        json.append(",\"youCount\":").append(node.getYouCount());
+        json.append(",\"longestWord\":").append(quote(node.getLongestWord()));
+        json.append(",\"shortestWord\":").append(quote(node.getShortestWord()));
+        json.append(",\"children\":[");
+        boolean first = true;
+        for (DirectoryNode child : node.getChildren()) {
+            if (!first) {
+                json.append(',');
+            }
+            appendNode(json, child);
+            first = false;
+        }
+        json.append("]}");
+    }
+
+    private String progressJson(AnalysisSession session) {
+        int active = engine.getActiveThreads();
+        return "{\"id\":" + session.getId()
+                + ",\"directory\":" + quote(session.getCurrentDirectory())
+                + ",\"status\":" + quote(session.getStatus().name())
+                + ",\"fileProcessed\":" + session.getFileProcessed()
+                + ",\"totalFiles\":" + session.getTotalFiles()
+                + ",\"activeThreads\":" + active
+                + ",\"availableThreads\":" + Math.max(0, engine.getThreadCapacity() - active)
+                + ",\"estimate\":" + estimateJson(session.getDirectoryModel())
+                + "}";
+    }
+
+    // Null unless the scan samples and has seen enough files
+    private static String estimateJson(DirectoryModel model) {
+        Estimate estimate = model == null ? null : model.getEstimate();
+        if (estimate == null) {
+            return "null";
+        }
+        return "{\"totalWords\":" + estimate.getTotalWords()
+                + ",\"totalWordsMargin\":" + estimate.getTotalWordsMargin()
+                + ",\"isCount\":" + estimate.getIsCount()
+                + ",\"isMargin\":" + estimate.getIsMargin()
+                + ",\"areCount\":" + estimate.getAreCount()
+                + ",\"areMargin\":" + estimate.getAreMargin()
+                + ",\"youCount\":" + estimate.getYouCount()
+                + ",\"youMargin\":" + estimate.getYouMargin()
+                + ",\"sampledFiles\":" + estimate.getSampledFiles()
+                + ",\"completedFiles\":" + estimate.getCompletedFiles()
+                + ",\"completedBytes\":" + estimate.getCompletedBytes()
+                + ",\"totalBytes\":" + estimate.getTotalBytes()
+                + ",\"exact\":" + estimate.isExact()
+                + "}";
+    }
+
+    private static String fileJson(FileModel file) {
+        return "{\"fileName\":" + quote(file.getFileName())
+                + ",\"filePath\":" + quote(file.getFilePath())
+                + ",\"status\":" + quote(file.getStatus().name())
+                + ",\"wordCount\":" + file.getWordCount()
+                + ",\"isCount\":" + file.getIsCount()
+                + ",\"areCount\":" + file.getAreCount()
+                + ",\"youCount\":" + file.getYouCount()
+                + ",\"longestWord\":" + quote(file.getLongestWord())
+                + ",\"shortestWord\":" + quote(file.getShortestWord())
+                + ",\"topNGram\":" + quote(file.getTopNGram())
+                + ",\"bytesRead\":" + file.getBytesRead()
+                + ",\"readNanos\":" + file.getReadNanos()
+                + ",\"tokenizeNanos\":" + file.getTokenizeNanos()
+                + ",\"queueWaitNanos\":" + file.getQueueWaitNanos()
+                + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        sendJson(exchange, code, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
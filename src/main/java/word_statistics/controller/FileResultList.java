@@ -0,0 +1,87 @@
+package word_statistics.controller;
+
+import javafx.collections.ObservableListBase;
+import word_statistics.core.FileResultStore;
+import word_statistics.model.FileModel;
+
+// Table items backed by a FileResultStore. The table only asks for the rows it
+// shows, so only those are materialised as FileModel objects, and the last few
+// are kept so scrolling and repaints don't rebuild them. Sorting reorders an
+// int permutation of the file indexes, never the records.
+class FileResultList extends ObservableListBase<FileModel> {
+
+    private static final int CACHE_SIZE = 256;
+
+    private final FileResultStore store;
+    private final FileModel[] cache = new FileModel[CACHE_SIZE];
+    private final int[] cachedIndex = new int[CACHE_SIZE];
+    // Row -> file index and back; null while the rows are in file order
+    private int[] order;
+    private int[] rowOf;
+
+    FileResultList(FileResultStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public FileModel get(int row) {
+        if (row < 0 || row >= store.size()) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        int index = order == null ? row : order[row];
+        int slot = index % CACHE_SIZE;
+        FileModel cached = cache[slot];
+        if (cached == null || cachedIndex[slot] != index) {
+            cached = store.toFileModel(index);
+            cache[slot] = cached;
+            cachedIndex[slot] = index;
+        }
+        return cached;
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    // Orders the rows by the values the files have now, or back into file
+    // order for a null key. Files finishing later keep their row until the
+    // next sort.
+    void sort(FileResultStore.SortKey key, boolean descending) {
+        int[] previousRowOf = rowOf;
+        if (key == null) {
+            order = null;
+            rowOf = null;
+        } else {
+            order = store.order(key, descending);
+            rowOf = new int[order.length];
+            for (int row = 0; row < order.length; row++) {
+                rowOf[order[row]] = row;
+            }
+        }
+
+        // permutation[oldRow] = newRow
+        int[] permutation = new int[store.size()];
+        for (int index = 0; index < permutation.length; index++) {
+            int oldRow = previousRowOf == null ? index : previousRowOf[index];
+            permutation[oldRow] = rowOf == null ? index : rowOf[index];
+        }
+        beginChange();
+        nextPermutation(0, permutation.length, permutation);
+        endChange();
+    }
+
+    // The store's record changed; reported as a replacement so the row is redrawn
+    void fileUpdated(int index) {
+        if (index < 0 || index >= store.size()) {
+            return;
+        }
+        int slot = index % CACHE_SIZE;
+        FileModel previous = cachedIndex[slot] == index ? cache[slot] : null;
+        cache[slot] = null;
+
+        beginChange();
+        nextSet(rowOf == null ? index : rowOf[index], previous);
+        endChange();
+    }
+}
@@ -1,26 +1,48 @@
 package word_statistics.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
 import javafx.geometry.Pos;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tab;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeTableColumn;
+import javafx.scene.control.TreeTableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.cell.TreeItemPropertyValueFactory;
 import javafx.scene.layout.Border;
 import javafx.scene.layout.HBox;
 import javafx.stage.DirectoryChooser;
-import word_statistics.core.FileSearch;
+import word_statistics.core.AnalysisSession;
+import word_statistics.core.FileResultStore;
 import word_statistics.core.FileSearchEngine;
+import word_statistics.core.InvertedIndex;
+import word_statistics.core.NGramCounter;
+import word_statistics.core.SnapshotDiff;
 import word_statistics.model.AppStatus;
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.DirectoryNode;
+import word_statistics.model.Estimate;
 import word_statistics.model.FileModel;
 import word_statistics.model.FileStatus;
+import word_statistics.model.ProfileReport;
+import word_statistics.model.WordFrequency;
 
 public class MainController {
 
@@ -48,9 +70,71 @@ public class MainController {
     @FXML
     private TableColumn<FileModel, String> shortestWordCol;
 
+    @FXML
+    private TableColumn<FileModel, String> topNGramCol;
+
+    @FXML
+    private TableColumn<FileModel, String> timingsCol;
+
     @FXML
     private TableColumn<FileModel, FileStatus> statusCol;
 
+    @FXML
+    private TreeTableView<DirectoryNode> directoryTree;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, String> dirNameCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, Long> dirFilesCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, Long> dirWordsCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, Long> dirIsCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, Long> dirAreCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, Long> dirYouCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, String> dirLongestCol;
+
+    @FXML
+    private TreeTableColumn<DirectoryNode, String> dirShortestCol;
+
+    private final Map<DirectoryNode, TreeItem<DirectoryNode>> treeItems = new HashMap<>();
+
+    // Rarely used tabs, built from their own fxml the first time they are
+    // selected; what a run showed in them meanwhile waits in pendingViews
+    @FXML
+    private Tab wordsTab;
+
+    @FXML
+    private Tab nGramsTab;
+
+    @FXML
+    private Tab profileTab;
+
+    @FXML
+    private Tab changesTab;
+
+    @FXML
+    private Tab searchTab;
+
+    private final Map<Tab, Runnable> pendingViews = new HashMap<>();
+
+    // Each controller (one per tab) drives its own analysis session
+    private AnalysisSession session;
+    private FileResultList fileResults;
+    private final Map<TableColumn<FileModel, ?>, FileResultStore.SortKey> sortKeys = new HashMap<>();
+    private boolean directoryTreeConfigured = false;
+    private boolean initialized = false;
+    private boolean closed = false;
+
     @FXML
     private Label statusLabel;
 
@@ -66,6 +150,72 @@ public class MainController {
     @FXML
     private CheckBox includeSubdirsCheck;
 
+    @FXML
+    private CheckBox deduplicateCheck;
+
+    @FXML
+    private CheckBox uniqueContentCheck;
+
+    @FXML
+    private CheckBox buildIndexCheck;
+
+    @FXML
+    private CheckBox nGramCheck;
+
+    @FXML
+    private CheckBox wordFrequencyCheck;
+
+    @FXML
+    private CheckBox unicodeWordsCheck;
+
+    @FXML
+    private CheckBox previewCheck;
+
+    @FXML
+    private Label estimateLabel;
+
+    @FXML
+    private Label wordFrequencyInfoLabel;
+
+    @FXML
+    private ListView<String> wordFrequencyList;
+
+    @FXML
+    private Label nGramInfoLabel;
+
+    @FXML
+    private ListView<String> nGramList;
+
+    @FXML
+    private Label profileInfoLabel;
+
+    @FXML
+    private ListView<String> slowFileList;
+
+    @FXML
+    private Label outlierInfoLabel;
+
+    @FXML
+    private ListView<String> outlierList;
+
+    @FXML
+    private Label changesInfoLabel;
+
+    @FXML
+    private ListView<String> fileChangeList;
+
+    @FXML
+    private ListView<String> directoryChangeList;
+
+    @FXML
+    private TextField searchField;
+
+    @FXML
+    private Label searchInfoLabel;
+
+    @FXML
+    private ListView<String> searchResults;
+
     @FXML
     private Button analyzeBtn;
 
@@ -96,33 +246,28 @@ public class MainController {
 
     @FXML
     public void initialize() {
-        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
-
-        // Bind status labels to FileSearchEngine properties for real-time updates
-        statusLabel
-                .textProperty()
-                .bind(searchEngine.statusProperty().asString());
-        threadCountLabel
-                .textProperty()
-                .bind(
-                        searchEngine
-                                .activeThreadsProperty()
-                                .asString()
-                                .concat(" / ")
-                                .concat(searchEngine.availableThreadsProperty().asString()));
-        filesProcessedLabel
-                .textProperty()
-                .bind(
-                        searchEngine
-                                .fileProcessedProperty()
-                                .asString()
-                                .concat(" / ")
-                                .concat(searchEngine.totalFilesProperty().asString()));
+        // FXMLLoader calls this again after loading each lazy tab into this controller
+        if (initialized) {
+            return;
+        }
+        initialized = true;
 
-        // Bind checkbox to search engine property (bidirectional)
-        includeSubdirsCheck
-                .selectedProperty()
-                .bindBidirectional(searchEngine.includeSubdirectoriesProperty());
+        // Inputs wait for connectSession()
+        analyzeBtn.setDisable(true);
+        browseBtn.setDisable(true);
+        includeSubdirsCheck.setDisable(true);
+        deduplicateCheck.setDisable(true);
+        buildIndexCheck.setDisable(true);
+        nGramCheck.setDisable(true);
+        wordFrequencyCheck.setDisable(true);
+        unicodeWordsCheck.setDisable(true);
+        previewCheck.setDisable(true);
+
+        loadOnFirstSelection(wordsTab, "words_tab.fxml");
+        loadOnFirstSelection(nGramsTab, "ngrams_tab.fxml");
+        loadOnFirstSelection(profileTab, "profile_tab.fxml");
+        loadOnFirstSelection(changesTab, "changes_tab.fxml");
+        loadOnFirstSelection(searchTab, "search_tab.fxml");
 
         System.out.println("Controller initialized");
         makeTableResponsive();
@@ -138,8 +283,28 @@ public class MainController {
                 new PropertyValueFactory<>("longestWord"));
         shortestWordCol.setCellValueFactory(
                 new PropertyValueFactory<>("shortestWord"));
+        topNGramCol.setCellValueFactory(new PropertyValueFactory<>("topNGram"));
+        timingsCol.setCellValueFactory(new PropertyValueFactory<>("timings"));
         statusCol.setCellValueFactory(new PropertyValueFactory<>("status"));
 
+        // Rows come from the off-heap result store, so sorting reorders file
+        // indexes in FileResultList instead of the items; the first column of
+        // the sort order decides
+        sortKeys.put(fileNameCol, FileResultStore.SortKey.NAME);
+        sortKeys.put(wordCountCol, FileResultStore.SortKey.WORD_COUNT);
+        sortKeys.put(isCountCol, FileResultStore.SortKey.IS_COUNT);
+        sortKeys.put(areCountCol, FileResultStore.SortKey.ARE_COUNT);
+        sortKeys.put(youCountCol, FileResultStore.SortKey.YOU_COUNT);
+        sortKeys.put(longestWordCol, FileResultStore.SortKey.LONGEST_WORD);
+        sortKeys.put(shortestWordCol, FileResultStore.SortKey.SHORTEST_WORD);
+        sortKeys.put(topNGramCol, FileResultStore.SortKey.TOP_NGRAM);
+        sortKeys.put(timingsCol, FileResultStore.SortKey.ELAPSED);
+        sortKeys.put(statusCol, FileResultStore.SortKey.STATUS);
+        statsTable.setSortPolicy(table -> {
+            sortResults();
+            return true;
+        });
+
         // Custom cell factory for status column - displays colored badges
         statusCol.setCellFactory(column -> new TableCell<FileModel, FileStatus>() {
             private final HBox container = new HBox();
@@ -194,24 +359,90 @@ public class MainController {
         });
     }
 
+    // Creates this tab's session, and the engine with its reader and tokenizer
+    // threads if this is the first one. Separate from initialize() so that the
+    // first window can be shown before any of that is built.
+    public void connectSession() {
+        if (session != null || closed) {
+            return;
+        }
+        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
+        session = searchEngine.createSession();
+        session.setController(this);
+
+        // Bind status labels to session and shared pool properties for real-time updates
+        statusLabel
+                .textProperty()
+                .bind(session.statusProperty().asString());
+        threadCountLabel
+                .textProperty()
+                .bind(
+                        searchEngine
+                                .activeThreadsProperty()
+                                .asString()
+                                .concat(" / ")
+                                .concat(searchEngine.availableThreadsProperty().asString()));
+        filesProcessedLabel
+                .textProperty()
+                .bind(
+                        session
+                                .fileProcessedProperty()
+                                .asString()
+                                .concat(" / ")
+                                .concat(session.totalFilesProperty().asString()));
+
+        // Bind checkbox to search engine property (bidirectional)
+        includeSubdirsCheck
+                .selectedProperty()
+                .bindBidirectional(session.includeSubdirectoriesProperty());
+        deduplicateCheck
+                .selectedProperty()
+                .bindBidirectional(session.deduplicateProperty());
+        uniqueContentCheck
+                .selectedProperty()
+                .bindBidirectional(session.uniqueContentViewProperty());
+        buildIndexCheck
+                .selectedProperty()
+                .bindBidirectional(session.buildIndexProperty());
+        uniqueContentCheck
+                .selectedProperty()
+                .addListener((obs, oldValue, newValue) -> session.refreshDirectoryStatistics());
+        wordFrequencyCheck
+                .selectedProperty()
+                .bindBidirectional(session.wordFrequenciesProperty());
+        unicodeWordsCheck
+                .selectedProperty()
+                .bindBidirectional(session.unicodeWordsProperty());
+        previewCheck
+                .selectedProperty()
+                .bindBidirectional(session.previewProperty());
+        nGramCheck
+                .selectedProperty()
+                .addListener((obs, oldValue, newValue) -> session.nGramSizeProperty()
+                        .set(newValue ? NGramCounter.DEFAULT_N : 0));
+
+        enableControls();
+    }
+
     // Button Action Handlers
     @FXML
     public void onIncludeSubdirsCheckToggle() {
-        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
-        if (searchEngine.getStatus() == AppStatus.RUNNING) {
+        if (session.getStatus() == AppStatus.RUNNING) {
             includeSubdirsCheck.setDisable(true);
             return;
         }
-        searchEngine
+        session
                 .includeSubdirectoriesProperty()
                 .set(includeSubdirsCheck.isSelected());
         includeSubdirsCheck.setDisable(false);
+        if (session.getCurrentDirectory() != null && !session.getCurrentDirectory().isEmpty()) {
+            session.countFiles();
+        }
     }
 
     @FXML
     public void onBrowseButtonClick() {
-        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
-        if (searchEngine.getStatus() == AppStatus.RUNNING) {
+        if (session.getStatus() == AppStatus.RUNNING) {
             return;
         }
 
@@ -222,36 +453,35 @@ public class MainController {
                 directoryPathField.getScene().getWindow());
         if (selectedDirectory != null) {
             directoryPathField.setText(selectedDirectory.getAbsolutePath());
-            searchEngine
+            session
                     .currentDirectoryProperty()
                     .set(selectedDirectory.getAbsolutePath());
-            try {
-                searchEngine.setTotalFiles(
-                        FileSearch.searchTextFiles(selectedDirectory.toString(), includeSubdirsCheck.isSelected())
-                                .size());
-            } catch (IOException e) {
-            }
+            // Counts in the background; Analyze reuses the listing
+            session.countFiles();
         }
 
     }
 
     @FXML
     public void onStopButtonClick() {
-        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
-        searchEngine.stopEngine();
+        session.stopEngine();
 
         analyzeBtn.setDisable(false);
         browseBtn.setDisable(false);
         includeSubdirsCheck.setDisable(false);
+        deduplicateCheck.setDisable(false);
+        buildIndexCheck.setDisable(false);
+        nGramCheck.setDisable(false);
+        wordFrequencyCheck.setDisable(false);
+        unicodeWordsCheck.setDisable(false);
+        previewCheck.setDisable(false);
         stopBtn.setDisable(true);
     }
 
     @FXML
     public void onAnalyzeButtonClick() {
-        FileSearchEngine searchEngine = FileSearchEngine.getInstance();
-
-        if (searchEngine.getCurrentDirectory() == null ||
-                searchEngine.getCurrentDirectory().isEmpty()) {
+        if (session.getCurrentDirectory() == null ||
+                session.getCurrentDirectory().isEmpty()) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Error");
             alert.setHeaderText("No Directory Selected");
@@ -261,43 +491,294 @@ public class MainController {
             return;
         }
 
-        if (searchEngine.getStatus() == AppStatus.RUNNING) {
+        if (session.getStatus() == AppStatus.RUNNING) {
             return;
         }
 
-        searchEngine.setController(this);
-
-        searchEngine.setStatus(AppStatus.RUNNING);
+        session.setStatus(AppStatus.RUNNING);
         analyzeBtn.setDisable(true);
         browseBtn.setDisable(true);
         includeSubdirsCheck.setDisable(true);
+        deduplicateCheck.setDisable(true);
+        buildIndexCheck.setDisable(true);
+        nGramCheck.setDisable(true);
+        wordFrequencyCheck.setDisable(true);
+        unicodeWordsCheck.setDisable(true);
+        previewCheck.setDisable(true);
         stopBtn.setDisable(false);
 
-        searchEngine.setTotalFiles(0);
-        searchEngine.setFileProcessed(0);
+        session.setTotalFiles(0);
+        session.setFileProcessed(0);
 
         // Start the file search and analysis engine
-        searchEngine.startEngine();
+        session.startEngine();
+    }
+
+    @FXML
+    public void onSearchButtonClick() {
+        searchResults.getItems().clear();
+        if (session == null) {
+            return;
+        }
+
+        if (session.getCurrentDirectory() == null ||
+                session.getCurrentDirectory().isEmpty()) {
+            searchInfoLabel.setText("Select a directory first.");
+            return;
+        }
+
+        try {
+            InvertedIndex index = session.getSearchIndex();
+            if (index == null) {
+                searchInfoLabel.setText("No index for this directory. Analyze it with 'Build search index' first.");
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<String> matches = index.search(searchField.getText());
+            long micros = (System.nanoTime() - start) / 1000;
+
+            searchResults.getItems().setAll(matches);
+            searchInfoLabel.setText(matches.size() + " of " + index.getDocumentCount()
+                    + " files match (" + micros / 1000.0 + " ms)");
+        } catch (IOException e) {
+            searchInfoLabel.setText("Cannot read index: " + e.getMessage());
+        }
+    }
+
+    // Called when the tab showing this controller is closed
+    public void closeSession() {
+        closed = true;
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public AnalysisSession getSession() {
+        return session;
     }
 
-    public void addFileStatistics(FileModel fileModel) {
-        statsTable.getItems().add(fileModel);
+    // Shows a run's per-file records; rows are built only when displayed
+    public void showResults(FileResultStore store) {
+        fileResults = new FileResultList(store);
+        statsTable.setItems(fileResults);
+        sortResults();
     }
 
-    public void updateFileStatistics(int index, FileModel fileModel) {
-        if (index >= 0 && index < statsTable.getItems().size()) {
-            statsTable.getItems().set(index, fileModel);
+    private void sortResults() {
+        if (fileResults == null) {
+            return;
+        }
+        List<TableColumn<FileModel, ?>> sortOrder = statsTable.getSortOrder();
+        if (sortOrder.isEmpty()) {
+            fileResults.sort(null, false);
+            return;
+        }
+        TableColumn<FileModel, ?> column = sortOrder.get(0);
+        fileResults.sort(sortKeys.get(column), column.getSortType() == TableColumn.SortType.DESCENDING);
+    }
+
+    public void updateFileStatistics(int index) {
+        if (fileResults != null) {
+            fileResults.fileUpdated(index);
         }
     }
 
     public void clearResults() {
-        statsTable.getItems().clear();
+        fileResults = null;
+        statsTable.setItems(FXCollections.observableArrayList());
+        directoryTree.setRoot(null);
+        treeItems.clear();
         totalWordsLabel.setText("0");
         totalIsLabel.setText("0");
         totalAreLabel.setText("0");
         totalYouLabel.setText("0");
         ShortestLabel.setText("N/A");
         LongestLabel.setText("N/A");
+        estimateLabel.setText("");
+        estimateLabel.setVisible(false);
+        estimateLabel.setManaged(false);
+        // A tab that was never loaded still shows its fxml defaults
+        resetIn(nGramsTab, () -> {
+            nGramList.getItems().clear();
+            nGramInfoLabel.setText("Run an analysis with 'Count word n-grams' to see frequent phrases.");
+        });
+        resetIn(wordsTab, () -> {
+            wordFrequencyList.getItems().clear();
+            wordFrequencyInfoLabel.setText(
+                    "Run an analysis with 'Exact word frequencies' to see the most frequent words.");
+        });
+        resetIn(profileTab, () -> {
+            slowFileList.getItems().clear();
+            outlierList.getItems().clear();
+            profileInfoLabel.setText("Slowest files and throughput outliers appear here when a run completes.");
+            outlierInfoLabel.setText("Throughput outliers");
+        });
+        resetIn(changesTab, () -> {
+            fileChangeList.getItems().clear();
+            directoryChangeList.getItems().clear();
+            changesInfoLabel.setText(
+                    "Changes since the previous run of the same directory appear here when a run completes.");
+        });
+    }
+
+    private void loadOnFirstSelection(Tab tab, String fxml) {
+        tab.selectedProperty().addListener((obs, wasSelected, selected) -> {
+            if (!selected || tab.getContent() != null) {
+                return;
+            }
+            try {
+                // No fx:controller in the fragment: its fields and handlers are this controller's
+                FXMLLoader loader = new FXMLLoader(MainController.class.getResource("/word_statistics/" + fxml));
+                loader.setController(this);
+                tab.setContent(loader.load());
+            } catch (IOException e) {
+                System.err.println("Error loading tab: " + fxml + " - " + e.getMessage());
+                return;
+            }
+            Runnable pending = pendingViews.remove(tab);
+            if (pending != null) {
+                pending.run();
+            }
+        });
+    }
+
+    // Shows a run's results in the tab now, or once it has been loaded
+    private void showIn(Tab tab, Runnable view) {
+        if (tab.getContent() != null) {
+            view.run();
+        } else {
+            pendingViews.put(tab, view);
+        }
+    }
+
+    private void resetIn(Tab tab, Runnable reset) {
+        if (tab.getContent() != null) {
+            reset.run();
+        } else {
+            pendingViews.remove(tab);
+        }
+    }
+
+    public void showProfile(ProfileReport report) {
+        showIn(profileTab, () -> renderProfile(report));
+    }
+
+    private void renderProfile(ProfileReport report) {
+        if (report == null || report.getProfiledFiles() == 0) {
+            profileInfoLabel.setText("No file was read in this run.");
+            return;
+        }
+        String summary = String.format("%d files, %s read in %.0f ms, tokenized in %.0f ms, %.0f ms waiting in queues.",
+                report.getProfiledFiles(), FileModel.formatBytes(report.getTotalBytes()),
+                report.getTotalReadNanos() / 1e6, report.getTotalTokenizeNanos() / 1e6,
+                report.getTotalQueueWaitNanos() / 1e6);
+        if (report.getMedianBytesPerSecond() > 0) {
+            summary += " Median " + FileModel.formatBytes((long) report.getMedianBytesPerSecond()) + "/s per file.";
+        }
+        profileInfoLabel.setText(summary);
+
+        List<String> slowest = new ArrayList<>();
+        for (FileModel file : report.getSlowestFiles()) {
+            slowest.add(String.format("%.1f ms    %s    %s", (file.getReadNanos() + file.getTokenizeNanos()) / 1e6,
+                    file.getFilePath(), file.getTimings()));
+        }
+        slowFileList.getItems().setAll(slowest);
+
+        List<String> outliers = new ArrayList<>();
+        for (FileModel file : report.getOutliers()) {
+            outliers.add(String.format("%s/s    %s    %s", FileModel.formatBytes((long) file.getBytesPerSecond()),
+                    file.getFilePath(), file.getTimings()));
+        }
+        outlierList.getItems().setAll(outliers);
+        outlierInfoLabel.setText(report.getOutlierCount() == 0
+                ? "Throughput outliers: none"
+                : "Throughput outliers: " + report.getOutlierCount() + " files far below the median bytes/sec");
+    }
+
+    public void showEstimate(Estimate estimate) {
+        String text;
+        if (estimate.isExact()) {
+            text = "Exact totals: all " + estimate.getTotalFiles() + " files analyzed.";
+        } else {
+            text = String.format("Estimate (95%%): %s words, IS %s, ARE %s, YOU %s"
+                    + "  —  %d files sampled, %d of %d files (%s of %s) analyzed exactly",
+                    Estimate.format(estimate.getTotalWords(), estimate.getTotalWordsMargin()),
+                    Estimate.format(estimate.getIsCount(), estimate.getIsMargin()),
+                    Estimate.format(estimate.getAreCount(), estimate.getAreMargin()),
+                    Estimate.format(estimate.getYouCount(), estimate.getYouMargin()),
+                    estimate.getSampledFiles(), estimate.getCompletedFiles(), estimate.getTotalFiles(),
+                    FileModel.formatBytes(estimate.getCompletedBytes()),
+                    FileModel.formatBytes(estimate.getTotalBytes()));
+        }
+        estimateLabel.setText(text);
+        estimateLabel.setVisible(true);
+        estimateLabel.setManaged(true);
+    }
+
+    public void showChanges(SnapshotDiff.Summary changes) {
+        showIn(changesTab, () -> renderChanges(changes));
+    }
+
+    private void renderChanges(SnapshotDiff.Summary changes) {
+        if (changes == null) {
+            changesInfoLabel.setText("No earlier run of this directory to compare with.");
+            return;
+        }
+        String summary = "Since " + new Date(changes.getOldCreatedMillis()) + ": " + changes;
+        if (changes.getFileChanges().size() < changes.getAdded() + changes.getRemoved() + changes.getChanged()) {
+            summary += " Showing the first " + changes.getFileChanges().size() + " changes.";
+        }
+        changesInfoLabel.setText(summary);
+
+        List<String> files = new ArrayList<>();
+        for (SnapshotDiff.FileChange change : changes.getFileChanges()) {
+            files.add(change.toString());
+        }
+        fileChangeList.getItems().setAll(files);
+
+        List<String> directories = new ArrayList<>();
+        for (SnapshotDiff.DirectoryChange change : changes.getDirectoryChanges()) {
+            directories.add(change.toString());
+        }
+        directoryChangeList.getItems().setAll(directories);
+    }
+
+    public void showWordFrequencies(DirectoryModel directoryModel) {
+        showIn(wordsTab, () -> renderWordFrequencies(directoryModel));
+    }
+
+    private void renderWordFrequencies(DirectoryModel directoryModel) {
+        if (directoryModel.getDistinctWords() < 0) {
+            wordFrequencyInfoLabel.setText("Word frequencies could not be merged.");
+            return;
+        }
+        List<String> rows = new ArrayList<>();
+        for (WordFrequency frequency : directoryModel.getTopWords()) {
+            rows.add(frequency.getCount() + "    " + frequency.getWord());
+        }
+        wordFrequencyList.getItems().setAll(rows);
+        wordFrequencyInfoLabel.setText(directoryModel.getDistinctWords() + " distinct words; exact counts.");
+    }
+
+    public void showNGrams(DirectoryModel directoryModel) {
+        int nGramSize = session.getNGramSize();
+        showIn(nGramsTab, () -> renderNGrams(directoryModel, nGramSize));
+    }
+
+    private void renderNGrams(DirectoryModel directoryModel, int nGramSize) {
+        List<NGramCounter.NGram> top = directoryModel.topNGrams(100);
+        List<String> rows = new ArrayList<>(top.size());
+        for (NGramCounter.NGram nGram : top) {
+            rows.add(nGram.getCount() + "    " + nGram.getText());
+        }
+        nGramList.getItems().setAll(rows);
+
+        long maxError = directoryModel.getNGramMaxError();
+        nGramInfoLabel.setText(maxError == 0
+                ? "Most frequent n-grams of up to " + nGramSize + " words."
+                : "Approximate: the n-gram table hit its size limit, so counts may be up to "
+                        + maxError + " too low.");
     }
 
     public void updateDirectoryStatistics(
@@ -315,17 +796,66 @@ public class MainController {
         ShortestLabel.setText(shortest.isEmpty() ? "N/A" : shortest);
     }
 
+    // Configured on first use rather than in initialize() to keep start-up short
+    private void configureDirectoryTree() {
+        if (directoryTreeConfigured) {
+            return;
+        }
+        directoryTreeConfigured = true;
+
+        // Directory tree columns read the live rollups of each node
+        dirNameCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("name"));
+        dirFilesCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("fileCount"));
+        dirWordsCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("totalWords"));
+        dirIsCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("isCount"));
+        dirAreCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("areCount"));
+        dirYouCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("youCount"));
+        dirLongestCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("longestWord"));
+        dirShortestCol.setCellValueFactory(new TreeItemPropertyValueFactory<>("shortestWord"));
+    }
+
+    public void refreshDirectoryTree(DirectoryModel directoryModel) {
+        configureDirectoryTree();
+        DirectoryNode rootNode = directoryModel.getRootNode();
+        if (!treeItems.containsKey(rootNode)) {
+            TreeItem<DirectoryNode> rootItem = new TreeItem<>(rootNode);
+            rootItem.setExpanded(true);
+            treeItems.put(rootNode, rootItem);
+            directoryTree.setRoot(rootItem);
+        }
+
+        // Parents are always queued before their children
+        DirectoryNode created;
+        while ((created = directoryModel.pollCreatedNode()) != null) {
+            TreeItem<DirectoryNode> parentItem = treeItems.get(created.getParent());
+            if (parentItem == null) {
+                continue;
+            }
+            TreeItem<DirectoryNode> item = new TreeItem<>(created);
+            treeItems.put(created, item);
+            parentItem.getChildren().add(item);
+        }
+
+        directoryTree.refresh();
+    }
+
     public void enableControls() {
         analyzeBtn.setDisable(false);
         browseBtn.setDisable(false);
         includeSubdirsCheck.setDisable(false);
+        deduplicateCheck.setDisable(false);
+        buildIndexCheck.setDisable(false);
+        nGramCheck.setDisable(false);
+        wordFrequencyCheck.setDisable(false);
+        unicodeWordsCheck.setDisable(false);
+        previewCheck.setDisable(false);
         stopBtn.setDisable(true);
     }
 
     private void makeTableResponsive() {
         fileNameCol
                 .prefWidthProperty()
-                .bind(statsTable.widthProperty().multiply(0.15));
+                .bind(statsTable.widthProperty().multiply(0.12));
         wordCountCol
                 .prefWidthProperty()
                 .bind(statsTable.widthProperty().multiply(0.08));
@@ -340,12 +870,18 @@ public class MainController {
                 .bind(statsTable.widthProperty().multiply(0.07));
         longestWordCol
                 .prefWidthProperty()
-                .bind(statsTable.widthProperty().multiply(0.35));
+                .bind(statsTable.widthProperty().multiply(0.14));
         shortestWordCol
                 .prefWidthProperty()
                 .bind(statsTable.widthProperty().multiply(0.1));
+        topNGramCol
+                .prefWidthProperty()
+                .bind(statsTable.widthProperty().multiply(0.1));
+        timingsCol
+                .prefWidthProperty()
+                .bind(statsTable.widthProperty().multiply(0.18));
         statusCol
                 .prefWidthProperty()
-                .bind(statsTable.widthProperty().multiply(0.125));
+                .bind(statsTable.widthProperty().multiply(0.09));
     }
 }
@@ -0,0 +1,141 @@
+package word_statistics.core;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.IntConsumer;
+
+/*
+ * Tunes the number of worker permits at runtime from observed per-file read
+ * latency and tokenize (CPU) time.
+ *
+ * - Read latency per chunk (one read call, at most a pipeline buffer) far above
+ * the best seen means the device is thrashing: the limit is cut
+ * multiplicatively. Per chunk rather than per file, so a window of bigger
+ * files doesn't look like thrashing on an idle disk.
+ * - Otherwise the limit moves one step towards cores * (1 + read / cpu), so
+ * high-latency filesystems get more threads and CPU-bound scans stay near the
+ * core count.
+ */
+public class AdaptiveConcurrencyController {
+
+    private static final double THRASH_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final int MIN_WINDOW = 4;
+    // Fewer chunks than this say too little about the device to judge it
+    private static final int MIN_WINDOW_CHUNKS = 16;
+    // Cached reads can average 0 ns per chunk; a baseline of 0 would make every later window look like thrashing
+    private static final long MIN_BASELINE_NANOS = 1_000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int cores;
+    private final ResizableSemaphore permits;
+
+    private int limit;
+    private IntConsumer limitListener;
+
+    private int windowSamples = 0;
+    private long windowReadNanos = 0;
+    private long windowChunks = 0;
+    private long windowCpuNanos = 0;
+    private long minChunkNanos = Long.MAX_VALUE;
+
+    public AdaptiveConcurrencyController(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency bounds: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.limit = clamp(initialLimit);
+        this.permits = new ResizableSemaphore(this.limit);
+    }
+
+    public Semaphore getPermits() {
+        return permits;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public void setLimitListener(IntConsumer limitListener) {
+        this.limitListener = limitListener;
+    }
+
+    public synchronized void reset(int initialLimit) {
+        windowSamples = 0;
+        windowReadNanos = 0;
+        windowChunks = 0;
+        windowCpuNanos = 0;
+        minChunkNanos = Long.MAX_VALUE;
+        applyLimit(clamp(initialLimit));
+    }
+
+    // chunks is the number of read calls that returned data, at least 1 per file
+    public synchronized void recordSample(long readNanos, long chunks, long cpuNanos) {
+        windowSamples++;
+        windowReadNanos += readNanos;
+        windowChunks += Math.max(1, chunks);
+        windowCpuNanos += cpuNanos;
+
+        if (windowSamples < Math.max(MIN_WINDOW, limit) || windowChunks < MIN_WINDOW_CHUNKS) {
+            return;
+        }
+
+        long avgRead = windowReadNanos / windowSamples;
+        long avgCpu = Math.max(1, windowCpuNanos / windowSamples);
+        long chunkNanos = windowReadNanos / windowChunks;
+        windowSamples = 0;
+        windowReadNanos = 0;
+        windowChunks = 0;
+        windowCpuNanos = 0;
+
+        // Let the baseline drift up slowly so one lucky window doesn't pin it forever
+        minChunkNanos = Math.max(MIN_BASELINE_NANOS, minChunkNanos == Long.MAX_VALUE
+                ? chunkNanos
+                : Math.min(chunkNanos, minChunkNanos + minChunkNanos / 16));
+
+        int newLimit;
+        if (chunkNanos > minChunkNanos * THRASH_TOLERANCE) {
+            newLimit = (int) (limit * DECREASE_FACTOR);
+        } else {
+            int target = (int) Math.round(cores * (1.0 + (double) avgRead / avgCpu));
+            newLimit = target > limit ? limit + 1 : target < limit ? limit - 1 : limit;
+        }
+        applyLimit(clamp(newLimit));
+    }
+
+    private void applyLimit(int newLimit) {
+        int delta = newLimit - limit;
+        if (delta == 0) {
+            return;
+        }
+        if (delta > 0) {
+            permits.release(delta);
+        } else {
+            permits.reducePermits(-delta);
+        }
+        limit = newLimit;
+
+        if (limitListener != null) {
+            limitListener.accept(newLimit);
+        }
+    }
+
+    private int clamp(int value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
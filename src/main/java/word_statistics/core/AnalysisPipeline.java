@@ -0,0 +1,324 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+// Two-stage analysis so disks and cores are busy at the same time:
+//
+// - Reader stage: an I/O pool whose concurrency is the adaptive permit count.
+// Readers take files from the IoScheduler, which keeps sessions fair and caps
+// the readers per device, stream each into a few pooled chunk buffers and hand
+// it to the tokenizer stage as soon as the first chunk is ready.
+// - Tokenizer stage: one worker per core taking files from a bounded queue and
+// tokenizing chunks as they arrive, recycling each buffer back to its reader.
+//
+// The bounded queue and the fixed number of buffers per file are the
+// backpressure: readers block when the tokenizers fall behind.
+public class AnalysisPipeline {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BUFFERS_PER_FILE = 3;
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0);
+
+    private final FileSearchEngine searchEngine;
+    private final Semaphore readPermits;
+    private final IoScheduler readQueue = new IoScheduler();
+    private final BlockingQueue<FileStream> tokenizeQueue;
+    private final int tokenizerThreads;
+    private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    public AnalysisPipeline(FileSearchEngine searchEngine, Semaphore readPermits, int maxReaders,
+            int tokenizerThreads, int queueCapacity) {
+        this.searchEngine = searchEngine;
+        this.readPermits = readPermits;
+        this.tokenizerThreads = tokenizerThreads;
+        this.tokenizeQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (int i = 0; i < maxReaders; i++) {
+            Thread reader = new Thread(this::readLoop);
+            reader.setName("FileReader-" + (i + 1));
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        for (int i = 0; i < tokenizerThreads; i++) {
+            Thread worker = new Thread(this::tokenizeLoop);
+            worker.setName("FileTokenizer-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public int getTokenizerThreads() {
+        return tokenizerThreads;
+    }
+
+    public void submitAll(RunFiles files, int[] indexes) {
+        readQueue.addAll(files, indexes);
+    }
+
+    // Reads outside the pipeline, like the preview sampler's, take the same
+    // device slot and read permit as a reader; run the returned action after
+    Runnable enterRead(Path file) {
+        IoScheduler.Device device = readQueue.deviceOfFile(file);
+        acquireSlot(device);
+        readPermits.acquireUninterruptibly();
+        return () -> {
+            readPermits.release();
+            readQueue.release(device);
+        };
+    }
+
+    // Files of this session that no reader has picked up yet are dropped and
+    // get a STOPPED result; a run can leave millions queued, so that's done
+    // off the caller's thread, which is usually the FX thread
+    public void cancelPending(AnalysisSession session) {
+        List<IoScheduler.FileQueue> dropped = readQueue.removeAll(session);
+        if (dropped.isEmpty()) {
+            return;
+        }
+        Thread stopper = new Thread(() -> {
+            for (IoScheduler.FileQueue queue : dropped) {
+                queue.stopRemaining();
+            }
+        });
+        stopper.setName("FileStopper-" + session.getId());
+        stopper.setDaemon(true);
+        stopper.start();
+    }
+
+    private void readLoop() {
+        while (true) {
+            FileAnalyzer.simulateWork();
+            // Holds the file's device slot until readStage has read it
+            FileAnalyzer analyzer = take(readQueue);
+            try {
+                readStage(analyzer);
+            } catch (Exception e) {
+                // Failed before the tokenizers got the file, so it still needs a result for the run to complete
+                analyzer.publishError(e);
+            }
+        }
+    }
+
+    private void readStage(FileAnalyzer analyzer) {
+        AnalysisSession session = analyzer.getSession();
+        FileStream stream;
+        searchEngine.incrementActiveThreads();
+        try {
+            if (session.isStopped()) {
+                analyzer.handleStoppedFile();
+                return;
+            }
+            analyzer.started();
+            readPermits.acquireUninterruptibly();
+            try {
+                stream = new FileStream(analyzer);
+                readInto(stream);
+            } finally {
+                readPermits.release();
+            }
+        } finally {
+            readQueue.release(analyzer);
+            searchEngine.decrementActiveThreads();
+        }
+
+        analyzer.recordRead(stream.bytesRead, stream.readNanos);
+        stream.filled.add(END_OF_FILE);
+        if (!stream.handedOff) {
+            analyzer.queued();
+            put(tokenizeQueue, stream);
+        }
+    }
+
+    private void readInto(FileStream stream) {
+        try (FileChannel channel = FileChannel.open(stream.analyzer.getFilePath(), StandardOpenOption.READ)) {
+            while (!stream.analyzer.getSession().isStopped()) {
+                ByteBuffer chunk = take(stream.free);
+                chunk.clear();
+
+                long readStart = System.nanoTime();
+                int read = channel.read(chunk);
+                stream.readNanos += System.nanoTime() - readStart;
+
+                if (read < 0) {
+                    stream.free.add(chunk);
+                    return;
+                }
+                stream.bytesRead += read;
+                stream.readChunks++;
+                chunk.flip();
+                stream.filled.add(chunk);
+
+                if (!stream.handedOff) {
+                    stream.handedOff = true;
+                    stream.analyzer.queued();
+                    put(tokenizeQueue, stream);
+                }
+            }
+            stream.stopped = true;
+        } catch (IOException | RuntimeException e) {
+            // The tokenizer already has the stream or gets it next, and publishes the error
+            stream.error = e;
+        }
+    }
+
+    private void tokenizeLoop() {
+        while (true) {
+            FileStream stream = take(tokenizeQueue);
+            stream.analyzer.dequeued();
+            searchEngine.incrementActiveThreads();
+            try {
+                tokenize(stream);
+            } catch (Exception e) {
+                stream.analyzer.publishError(e);
+            } finally {
+                searchEngine.decrementActiveThreads();
+            }
+        }
+    }
+
+    private void tokenize(FileStream stream) {
+        FileAnalyzer analyzer = stream.analyzer;
+        AnalysisSession session = analyzer.getSession();
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try {
+            tokenizer.setCollectTerms(analyzer.collectsTerms());
+            tokenizer.setNGramSize(session.getNGramSize());
+            tokenizer.setUnicode(session.getUnicodeWords());
+            tokenizer.beginBytes();
+
+            Exception error = null;
+            boolean stopped = false;
+            long cpuNanos = 0;
+
+            // Always drain to the end marker so the reader is never left waiting for a buffer
+            ByteBuffer chunk;
+            while ((chunk = take(stream.filled)) != END_OF_FILE) {
+                if (error == null && !stopped) {
+                    if (session.isStopped()) {
+                        stopped = true;
+                    } else {
+                        long start = System.nanoTime();
+                        try {
+                            tokenizer.feedBytes(chunk);
+                            if (tokenizer.isTermTableFull()) {
+                                analyzer.addTerms(tokenizer.getTermFrequencies());
+                                tokenizer.clearTerms();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            error = e;
+                        }
+                        cpuNanos += System.nanoTime() - start;
+                    }
+                }
+                stream.free.add(chunk);
+            }
+            stream.release();
+
+            if (error == null) {
+                error = stream.error;
+            }
+            if (error == null && !stopped && !stream.stopped) {
+                long start = System.nanoTime();
+                try {
+                    tokenizer.endBytes();
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+                cpuNanos += System.nanoTime() - start;
+            }
+
+            if (error != null) {
+                analyzer.publishError(error);
+            } else if (stopped || stream.stopped || session.isStopped()) {
+                analyzer.handleStoppedFile();
+            } else {
+                searchEngine.recordFileTiming(stream.readNanos, stream.readChunks, cpuNanos);
+                analyzer.recordTokenize(cpuNanos);
+                analyzer.publishCompleted(tokenizer);
+            }
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+    }
+
+    private static FileAnalyzer take(IoScheduler queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // Pipeline threads are never cancelled individually
+            }
+        }
+    }
+
+    private void acquireSlot(IoScheduler.Device device) {
+        while (true) {
+            try {
+                readQueue.acquire(device);
+                return;
+            } catch (InterruptedException e) {
+                // Pipeline threads are never cancelled individually
+            }
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // Pipeline threads are never cancelled individually
+            }
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        while (true) {
+            try {
+                queue.put(item);
+                return;
+            } catch (InterruptedException e) {
+                // Pipeline threads are never cancelled individually
+            }
+        }
+    }
+
+    // One file in flight between a reader and a tokenizer
+    private final class FileStream {
+        final FileAnalyzer analyzer;
+        final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS_PER_FILE + 1);
+        final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS_PER_FILE);
+
+        volatile boolean handedOff;
+        volatile boolean stopped;
+        volatile Exception error;
+        volatile long readNanos;
+        volatile long readChunks;
+        volatile long bytesRead;
+
+        FileStream(FileAnalyzer analyzer) {
+            this.analyzer = analyzer;
+            for (int i = 0; i < BUFFERS_PER_FILE; i++) {
+                ByteBuffer buffer = bufferPool.poll();
+                free.add(buffer != null ? buffer : ByteBuffer.allocateDirect(CHUNK_SIZE));
+            }
+        }
+
+        void release() {
+            ByteBuffer buffer;
+            while ((buffer = free.poll()) != null) {
+                bufferPool.offer(buffer);
+            }
+        }
+    }
+}
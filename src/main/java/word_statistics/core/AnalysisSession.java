@@ -0,0 +1,670 @@
+package word_statistics.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.scene.control.Alert;
+import word_statistics.controller.MainController;
+import word_statistics.model.AppStatus;
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.Estimate;
+import word_statistics.model.FileModel;
+
+// One analysis: its directory, options, progress, cancellation and results.
+// Any number of sessions can run at once; their files share the engine's
+// worker pool, which serves them round-robin.
+public class AnalysisSession {
+
+    private static final int TOP_WORDS = 100;
+    // -Dword_statistics.profile.slowest, -Dword_statistics.profile.outlierFactor
+    private static final int SLOWEST_FILES = Integer.getInteger("word_statistics.profile.slowest", 20);
+    private static final double OUTLIER_FACTOR =
+            Double.parseDouble(System.getProperty("word_statistics.profile.outlierFactor", "10"));
+    // Changes listed in the Changes tab, all of them are counted
+    private static final int LISTED_CHANGES = 500;
+    // How often a preview run refreshes its estimate
+    private static final long ESTIMATE_INTERVAL_NANOS = 250_000_000L;
+
+    private final FileSearchEngine engine;
+    private final int id;
+
+    private final StringProperty currentDirectory;
+    private final IntegerProperty fileProcessed;
+    private final IntegerProperty totalFiles;
+    private final ObjectProperty<AppStatus> status;
+    private final BooleanProperty includeSubdirectories;
+    private final BooleanProperty deduplicate;
+    private final BooleanProperty uniqueContentView;
+    private final BooleanProperty buildIndex;
+    private final IntegerProperty nGramSize;
+    private final BooleanProperty wordFrequencies;
+    private final BooleanProperty unicodeWords;
+    private final BooleanProperty preview;
+
+    private final AtomicInteger fileProcessedAtomic;
+    private final AtomicInteger totalFilesAtomic;
+
+    private MainController controller;
+    private volatile DirectoryModel directoryModel;
+    private volatile boolean shouldStop = false;
+    // Latest status and results, readable from any thread without going through the FX thread
+    private volatile AppStatus currentStatus = AppStatus.Ready;
+    private volatile FileResultLog results;
+
+    private final AtomicReference<InvertedIndexBuilder> indexBuilder = new AtomicReference<>();
+    private InvertedIndex searchIndex;
+    private volatile WordFrequencyAggregator frequencyAggregator;
+    private volatile SampleEstimator estimator;
+    private final AtomicLong lastEstimateNanos = new AtomicLong();
+    private final AtomicBoolean runCompleted = new AtomicBoolean();
+    private DirectoryEnumeration enumeration;
+    private String searchIndexDirectory;
+
+    AnalysisSession(FileSearchEngine engine, int id) {
+        this.engine = engine;
+        this.id = id;
+
+        this.currentDirectory = new SimpleStringProperty("");
+        this.fileProcessed = new SimpleIntegerProperty(0);
+        this.totalFiles = new SimpleIntegerProperty(0);
+        this.status = new SimpleObjectProperty<>(AppStatus.Ready);
+        this.includeSubdirectories = new SimpleBooleanProperty(false);
+        this.deduplicate = new SimpleBooleanProperty(false);
+        this.uniqueContentView = new SimpleBooleanProperty(false);
+        this.buildIndex = new SimpleBooleanProperty(false);
+        this.nGramSize = new SimpleIntegerProperty(0);
+        this.wordFrequencies = new SimpleBooleanProperty(false);
+        this.unicodeWords = new SimpleBooleanProperty(false);
+        this.preview = new SimpleBooleanProperty(false);
+
+        this.fileProcessedAtomic = new AtomicInteger(0);
+        this.totalFilesAtomic = new AtomicInteger(0);
+
+        this.results = new FileResultLog(new FileResultStore(List.of()));
+        this.results.close();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public FileSearchEngine getEngine() {
+        return engine;
+    }
+
+    public void setController(MainController controller) {
+        this.controller = controller;
+    }
+
+    public MainController getController() {
+        return controller;
+    }
+
+    public DirectoryModel getDirectoryModel() {
+        return directoryModel;
+    }
+
+    // Counts the current directory's files in the background, updating
+    // totalFiles as it goes, for Analyze to reuse. A count of another
+    // directory or option that's still running is cancelled.
+    public synchronized void countFiles() {
+        if (enumeration != null) {
+            enumeration.cancel();
+        }
+        DirectoryEnumeration counting = new DirectoryEnumeration(getCurrentDirectory(), getIncludeSubdirectories());
+        enumeration = counting;
+        setTotalFiles(0);
+        counting.start("FileCounter-" + id, count -> {
+            if (!counting.isCancelled()) {
+                setTotalFiles(count);
+            }
+        });
+    }
+
+    public void startEngine() {
+        shouldStop = false;
+        String directory = getCurrentDirectory();
+        boolean includeSubdirs = getIncludeSubdirectories();
+
+        // Listing, hashing and the scheduler's device and inode lookups touch the disk, keep them off the FX thread
+        Thread launchThread = new Thread(() -> {
+            try {
+                DirectoryListing listing = listFiles(directory, includeSubdirs);
+                if (listing != null) {
+                    startRun(listing);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error searching directory: " + directory + " - " + e.getMessage());
+                setStatus(AppStatus.FAILED);
+                if (controller != null) {
+                    Platform.runLater(() -> {
+                        Alert alert = new Alert(Alert.AlertType.ERROR);
+                        alert.setTitle("Error");
+                        alert.setHeaderText("File Search Error");
+                        alert.setContentText(e.getMessage());
+                        alert.showAndWait();
+                        setStatus(AppStatus.Ready);
+                        controller.enableControls();
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        launchThread.setName((getDeduplicate() ? "FileDeduplicator-" : "FileScheduler-") + id);
+        launchThread.setDaemon(true);
+        launchThread.start();
+    }
+
+    // The listing counted since browsing, waiting for it if need be, as long as
+    // the tree hasn't changed since; otherwise a new walk. Null once stopped.
+    private DirectoryListing listFiles(String directory, boolean includeSubdirs)
+            throws IOException, InterruptedException {
+        DirectoryEnumeration counting;
+        synchronized (this) {
+            counting = enumeration;
+        }
+        if (counting != null && counting.matches(directory, includeSubdirs) && !counting.isCancelled()) {
+            while (!counting.await(100)) {
+                if (shouldStop) {
+                    // The count keeps going for the next Analyze
+                    return null;
+                }
+            }
+            DirectoryListing listing = counting.getListing();
+            if (listing != null && listing.isCurrent()) {
+                setTotalFiles(listing.getFiles().size());
+                return listing;
+            }
+        }
+
+        DirectoryListing listing = FileSearch.listTextFiles(directory, includeSubdirs, this::isStopped,
+                this::setTotalFiles);
+        if (listing != null) {
+            synchronized (this) {
+                if (enumeration == counting) {
+                    enumeration = new DirectoryEnumeration(listing);
+                }
+            }
+        }
+        return listing;
+    }
+
+    private void startRun(DirectoryListing listing) {
+        List<Path> files = listing.getFiles();
+        setTotalFiles(files.size());
+
+        if (files.isEmpty()) {
+            setStatus(AppStatus.Ready);
+            if (controller != null) {
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                    alert.setTitle("No Files Found");
+                    alert.setHeaderText(null);
+                    alert.setContentText("No .txt files were found in the selected directory.");
+                    alert.showAndWait();
+                    controller.enableControls();
+                });
+            }
+            return;
+        }
+
+        DirectoryModel model = new DirectoryModel(listing.getDirectory());
+        if (getNGramSize() >= 2) {
+            // The merged table sees every file's n-grams, so it gets more room
+            model.enableNGrams(getNGramSize(), NGramCounter.DEFAULT_MAX_ENTRIES * 4,
+                    engine.getTokenizerThreads());
+        }
+        directoryModel = model;
+        // Every file starts out as a pending record
+        FileResultStore store = new FileResultStore(files);
+        FileResultLog previous = results;
+        FileResultLog run = new FileResultLog(store);
+        results = run;
+        previous.close();
+        // Files of the previous run still in flight no longer count, see incrementFileProcessed
+        setFileProcessed(0);
+        InvertedIndexBuilder builder = getBuildIndex()
+                ? new InvertedIndexBuilder(listing.getDirectory(), files, getUnicodeWords(),
+                        InvertedIndexBuilder.DEFAULT_BUDGET_BYTES, engine.getTokenizerThreads())
+                : null;
+        InvertedIndexBuilder previousBuilder = indexBuilder.getAndSet(builder);
+        if (previousBuilder != null) {
+            previousBuilder.discard();
+        }
+        WordFrequencyAggregator frequencies = getWordFrequencies()
+                ? new WordFrequencyAggregator(WordFrequencyAggregator.DEFAULT_BUDGET_BYTES,
+                        engine.getTokenizerThreads())
+                : null;
+        frequencyAggregator = frequencies;
+        runCompleted.set(false);
+        estimator = null;
+
+        if (controller != null) {
+            Platform.runLater(() -> {
+                controller.clearResults();
+                controller.showResults(store);
+            });
+        }
+
+        launchAnalyzers(listing, run, builder, frequencies, model);
+    }
+
+    private void launchAnalyzers(DirectoryListing listing, FileResultLog run, InvertedIndexBuilder builder,
+            WordFrequencyAggregator frequencies, DirectoryModel model) {
+        List<Path> files = listing.getFiles();
+        if (getPreview()) {
+            startSampler(listing);
+        }
+        int[] canonical = getDeduplicate()
+                ? DuplicateDetector.findCanonicalIndexes(files, listing.getSizes(), engine::enterRead)
+                : null;
+
+        // Analyzers are built as readers take the files, see RunFiles
+        RunFiles runFiles = new RunFiles(this, run, listing, canonical, builder, frequencies, model);
+        int[] toRead = runFiles.filesToRead();
+        if (isStopped()) {
+            runFiles.stopAll(toRead, 0);
+        } else {
+            engine.submitAll(runFiles, toRead);
+        }
+    }
+
+    // Runs next to the scan: the sample is tokenized while deduplication and the scan itself go on,
+    // reading under the same read permits and device slots as the scan
+    private void startSampler(DirectoryListing listing) {
+        SampleEstimator sampler = new SampleEstimator(listing.getFiles(), listing.getSizes(), SampleEstimator.seed(),
+                engine::enterRead);
+        estimator = sampler;
+        boolean unicode = getUnicodeWords();
+        Thread samplerThread = new Thread(() -> {
+            sampler.sample(unicode, this::isStopped, () -> publishEstimate(false));
+            publishEstimate(true);
+        });
+        samplerThread.setName("PreviewSampler-" + id);
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    // Refreshes the preview estimate, at most every ESTIMATE_INTERVAL_NANOS unless forced
+    private void publishEstimate(boolean force) {
+        SampleEstimator sampler = estimator;
+        DirectoryModel model = directoryModel;
+        if (sampler == null || model == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastEstimateNanos.get();
+        if (!force && (now - last < ESTIMATE_INTERVAL_NANOS || !lastEstimateNanos.compareAndSet(last, now))) {
+            return;
+        }
+        Estimate estimate = sampler.estimate();
+        if (estimate == null) {
+            return;
+        }
+        model.setEstimate(estimate);
+        if (controller != null) {
+            Platform.runLater(() -> controller.showEstimate(estimate));
+        }
+    }
+
+    // False once another run has started; files of a stopped run can still be in flight
+    boolean isCurrentRun(FileResultLog run) {
+        return run == results;
+    }
+
+    // Stores a file's final result, appends it to the run's result log and refreshes its row
+    void publishFile(FileResultLog run, int fileIndex, FileModel fileModel) {
+        if (run != results) {
+            return;
+        }
+        run.getStore().set(fileIndex, fileModel);
+        run.add(fileIndex);
+        SampleEstimator sampler = estimator;
+        if (sampler != null) {
+            sampler.recordFile(fileIndex, fileModel);
+            publishEstimate(false);
+        }
+        if (controller != null) {
+            Platform.runLater(() -> controller.updateFileStatistics(fileIndex));
+        }
+    }
+
+    // Called by the worker(s) that finished the last file; only the first one
+    // completes the run. A stopped run's files all end up STOPPED or done, but
+    // the run stays STOPPED: stopEngine() closed its log and discarded the rest.
+    void completeRun(RunFiles files) {
+        FileResultLog run = files.getRun();
+        if (run != results || shouldStop || run.isClosed() || !runCompleted.compareAndSet(false, true)) {
+            return;
+        }
+
+        // The frequency and n-gram merges, the index, the profile and the snapshot
+        // read or write whole files or scan every record, keep them off the shared workers
+        WordFrequencyAggregator frequencies = files.getFrequencies();
+        DirectoryModel model = files.getDirectoryModel();
+        Thread finishThread = new Thread(() -> {
+            if (frequencies != null) {
+                try {
+                    WordFrequencyAggregator.Result result = frequencies.merge(TOP_WORDS);
+                    model.setWordFrequencies(result.getDistinctWords(), result.getTopWords());
+                } catch (IOException e) {
+                    System.err.println("Error merging word frequencies - " + e.getMessage());
+                }
+            }
+            model.combineNGrams();
+            finishRun(files);
+        });
+        finishThread.setName("RunFinisher-" + id);
+        finishThread.setDaemon(true);
+        finishThread.start();
+    }
+
+    private void finishRun(RunFiles files) {
+        FileResultLog run = files.getRun();
+        DirectoryModel completed = files.getDirectoryModel();
+        writeIndex(files.getIndexBuilder());
+        completed.setProfileReport(run.getStore().profileReport(SLOWEST_FILES, OUTLIER_FACTOR));
+        writeSnapshot(run, completed);
+        // Every file is in, so this one is exact
+        publishEstimate(true);
+        run.close();
+        setStatus(AppStatus.COMPLETED);
+        if (controller != null) {
+            Platform.runLater(() -> {
+                controller.enableControls();
+                controller.showProfile(completed.getProfileReport());
+                controller.showChanges(completed.getChanges());
+                if (getNGramSize() >= 2) {
+                    controller.showNGrams(completed);
+                }
+                if (getWordFrequencies()) {
+                    controller.showWordFrequencies(completed);
+                }
+            });
+        }
+    }
+
+    // Snapshots the completed run and diffs it against the previous one
+    private void writeSnapshot(FileResultLog run, DirectoryModel model) {
+        if (!RunSnapshot.isEnabled() || shouldStop) {
+            return;
+        }
+        String directory = getCurrentDirectory();
+        try {
+            List<Path> snapshots = RunSnapshot.list(directory);
+            Path previous = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+            Path snapshot = RunSnapshot.write(directory, model, run.getStore());
+            if (previous != null && !previous.equals(snapshot)) {
+                model.setChanges(SnapshotDiff.compare(previous, snapshot, LISTED_CHANGES));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot for: " + directory + " - " + e.getMessage());
+        }
+    }
+
+    public FileResultLog getResults() {
+        return results;
+    }
+
+    // Adds a file to its run's totals; the UI shows the current run's
+    void updateDirectoryStatisticsFromFile(DirectoryModel model, FileModel fileModel, boolean duplicate) {
+        model.updateFromFile(fileModel, duplicate, controller != null ? this::refreshDirectoryStatistics : null);
+    }
+
+    // Pushes the current totals to the UI, in whichever view is selected
+    public void refreshDirectoryStatistics() {
+        if (controller == null || directoryModel == null) {
+            return;
+        }
+        boolean unique = getUniqueContentView();
+        controller.updateDirectoryStatistics(
+                unique ? directoryModel.uniqueTotalWords.get() : directoryModel.totalWords.get(),
+                unique ? directoryModel.uniqueIsCount.get() : directoryModel.isCount.get(),
+                unique ? directoryModel.uniqueAreCount.get() : directoryModel.areCount.get(),
+                unique ? directoryModel.uniqueYouCount.get() : directoryModel.youCount.get(),
+                directoryModel.longestWord.get(),
+                directoryModel.shortestWord.get());
+        controller.refreshDirectoryTree(directoryModel);
+    }
+
+    // Writes the completed run's index, unless Stop or the next run took the builder first
+    private void writeIndex(InvertedIndexBuilder builder) {
+        if (builder == null || !indexBuilder.compareAndSet(builder, null)) {
+            return;
+        }
+        if (shouldStop) {
+            builder.discard();
+            return;
+        }
+        String directory = getCurrentDirectory();
+        Path indexFile = InvertedIndex.indexFileFor(directory);
+        try {
+            builder.write(indexFile);
+            InvertedIndex index = InvertedIndex.open(indexFile);
+            synchronized (this) {
+                searchIndex = index;
+                searchIndexDirectory = directory;
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing index: " + indexFile + " - " + e.getMessage());
+        }
+    }
+
+    // Index of the current directory from this or an earlier run, or null if none exists
+    public synchronized InvertedIndex getSearchIndex() throws IOException {
+        String directory = getCurrentDirectory();
+        if (searchIndex == null || !directory.equals(searchIndexDirectory)) {
+            searchIndex = InvertedIndex.openFor(directory);
+            searchIndexDirectory = directory;
+        }
+        return searchIndex;
+    }
+
+    public void stopEngine() {
+        setStatus(AppStatus.STOPPED);
+        shouldStop = true;
+        engine.cancelPending(this);
+        results.close();
+        WordFrequencyAggregator frequencies = frequencyAggregator;
+        if (frequencies != null) {
+            frequencies.discard();
+        }
+        InvertedIndexBuilder builder = indexBuilder.getAndSet(null);
+        if (builder != null) {
+            builder.discard();
+        }
+    }
+
+    // Stops the session and detaches it from the engine, e.g. when its tab is closed
+    public void close() {
+        stopEngine();
+        synchronized (this) {
+            if (enumeration != null) {
+                enumeration.cancel();
+            }
+        }
+        engine.closeSession(this);
+    }
+
+    public boolean isStopped() {
+        return shouldStop;
+    }
+
+    public ObjectProperty<AppStatus> statusProperty() {
+        return status;
+    }
+
+    public BooleanProperty includeSubdirectoriesProperty() {
+        return includeSubdirectories;
+    }
+
+    public BooleanProperty deduplicateProperty() {
+        return deduplicate;
+    }
+
+    public BooleanProperty uniqueContentViewProperty() {
+        return uniqueContentView;
+    }
+
+    public BooleanProperty buildIndexProperty() {
+        return buildIndex;
+    }
+
+    public BooleanProperty wordFrequenciesProperty() {
+        return wordFrequencies;
+    }
+
+    public boolean getWordFrequencies() {
+        return wordFrequencies.get();
+    }
+
+    // Unicode word boundaries instead of the ASCII \s and \p{Punct} delimiters
+    public BooleanProperty unicodeWordsProperty() {
+        return unicodeWords;
+    }
+
+    public boolean getUnicodeWords() {
+        return unicodeWords.get();
+    }
+
+    // Estimates the totals from a sample while the scan runs, see SampleEstimator
+    public BooleanProperty previewProperty() {
+        return preview;
+    }
+
+    public boolean getPreview() {
+        return preview.get();
+    }
+
+    // Longest n-gram counted, 0 when n-grams are off
+    public IntegerProperty nGramSizeProperty() {
+        return nGramSize;
+    }
+
+    public int getNGramSize() {
+        return nGramSize.get();
+    }
+
+    public IntegerProperty fileProcessedProperty() {
+        return fileProcessed;
+    }
+
+    public IntegerProperty totalFilesProperty() {
+        return totalFiles;
+    }
+
+    public StringProperty currentDirectoryProperty() {
+        return currentDirectory;
+    }
+
+    public String getCurrentDirectory() {
+        return currentDirectory.get();
+    }
+
+    public int getFileProcessed() {
+        return fileProcessedAtomic.get();
+    }
+
+    public int getTotalFiles() {
+        return totalFilesAtomic.get();
+    }
+
+    public AppStatus getStatus() {
+        return currentStatus;
+    }
+
+    public Boolean getIncludeSubdirectories() {
+        return includeSubdirectories.get();
+    }
+
+    public boolean getDeduplicate() {
+        return deduplicate.get();
+    }
+
+    public boolean getUniqueContentView() {
+        return uniqueContentView.get();
+    }
+
+    public boolean getBuildIndex() {
+        return buildIndex.get();
+    }
+
+    public void setCurrentDirectory(String value) {
+        File dir = new File(value);
+        if (!dir.exists() || !dir.isDirectory()) {
+            throw new IllegalArgumentException("Invalid directory path: " + value);
+        }
+        currentDirectory.set(value);
+    }
+
+    public void setTotalFiles(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Total files cannot be negative");
+        }
+
+        int oldValue = totalFilesAtomic.getAndSet(value);
+
+        if (oldValue != value) {
+            updateProperty(() -> totalFiles.set(value));
+        }
+    }
+
+    public void setFileProcessed(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("File processed cannot be negative");
+        }
+
+        int oldValue = fileProcessedAtomic.getAndSet(value);
+
+        if (oldValue != value) {
+            updateProperty(() -> fileProcessed.set(value));
+        }
+    }
+
+    public void setStatus(AppStatus value) {
+        if (value != null && value != currentStatus) {
+            currentStatus = value;
+            updateProperty(() -> status.set(value));
+        }
+    }
+
+    void incrementFileProcessed(FileResultLog run) {
+        int processed = run.countProcessed();
+        // Workers finish out of order, so never move the count back; the run is
+        // checked again on every attempt, as startRun resets the count after the swap
+        while (true) {
+            int current = fileProcessedAtomic.get();
+            if (run != results || processed <= current) {
+                return;
+            }
+            if (fileProcessedAtomic.compareAndSet(current, processed)) {
+                break;
+            }
+        }
+        updateProperty(() -> fileProcessed.set(processed));
+    }
+
+    // Only a tab's controller observes the properties; a session of a headless
+    // API server runs without the FX toolkit and reads the atomics instead
+    private void updateProperty(Runnable update) {
+        if (controller != null) {
+            Platform.runLater(update);
+        }
+    }
+}
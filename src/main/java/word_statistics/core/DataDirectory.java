@@ -0,0 +1,37 @@
+package word_statistics.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Where the indexes and snapshots of analyzed directories are kept: in
+// ~/.word_statistics, outside the directories themselves, named after the
+// SHA-256 of the directory's absolute path so two directories never share
+// a file.
+final class DataDirectory {
+
+    private DataDirectory() {
+    }
+
+    static String normalize(String directoryPath) {
+        return Path.of(directoryPath).toAbsolutePath().normalize().toString();
+    }
+
+    // prefix + key + suffix, e.g. index-<key>.idx
+    static Path fileFor(String directoryPath, String prefix, String suffix) {
+        return Path.of(System.getProperty("user.home"), ".word_statistics", prefix + key(directoryPath) + suffix);
+    }
+
+    private static String key(String directoryPath) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(normalize(directoryPath).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JDK has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
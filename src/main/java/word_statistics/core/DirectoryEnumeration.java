@@ -0,0 +1,73 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+// A session's listing of its directory, walked on a background thread so
+// browsing doesn't block the FX thread. Analyze picks up the listing, or
+// waits for the walk still in progress, instead of walking the tree again.
+class DirectoryEnumeration {
+
+    private final String directory;
+    private final boolean includeSubdirs;
+    private volatile boolean cancelled;
+    private DirectoryListing listing;
+    private boolean done;
+
+    DirectoryEnumeration(String directory, boolean includeSubdirs) {
+        this.directory = directory;
+        this.includeSubdirs = includeSubdirs;
+    }
+
+    // One that is already done, for a listing walked some other way
+    DirectoryEnumeration(DirectoryListing listing) {
+        this(listing.getDirectory(), listing.isIncludeSubdirs());
+        this.listing = listing;
+        this.done = true;
+    }
+
+    // onCount gets the number of files found so far, now and then, on the walking thread
+    void start(String threadName, IntConsumer onCount) {
+        Thread walkThread = new Thread(() -> {
+            DirectoryListing result = null;
+            try {
+                result = FileSearch.listTextFiles(directory, includeSubdirs, () -> cancelled, onCount);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error counting files in: " + directory + " - " + e.getMessage());
+            }
+            synchronized (this) {
+                listing = result;
+                done = true;
+                notifyAll();
+            }
+        });
+        walkThread.setName(threadName);
+        walkThread.setDaemon(true);
+        walkThread.start();
+    }
+
+    boolean matches(String directory, boolean includeSubdirs) {
+        return this.directory.equals(directory) && this.includeSubdirs == includeSubdirs;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    // False if the walk is still going after the given time
+    synchronized boolean await(long millis) throws InterruptedException {
+        if (!done) {
+            wait(millis);
+        }
+        return done;
+    }
+
+    // Null until done, and if the walk was cancelled or failed
+    synchronized DirectoryListing getListing() {
+        return listing;
+    }
+}
@@ -0,0 +1,75 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+// The .txt files a walk found under a directory, the size and inode it saw for
+// each and the modification time of every directory it went through. Adding, removing
+// or renaming a file touches its directory, so isCurrent() tells whether the
+// tree still holds the same files with one stat per directory instead of a
+// new walk. Sizes of files rewritten in place may be stale, so they only
+// feed estimates and narrow duplicate candidates, never results.
+public class DirectoryListing {
+
+    private final String directory;
+    private final boolean includeSubdirs;
+    private final List<Path> files;
+    private final long[] sizes;
+    private final long[] inodes;
+    private final Map<Path, FileTime> directories;
+
+    DirectoryListing(String directory, boolean includeSubdirs, List<Path> files, long[] sizes, long[] inodes,
+            Map<Path, FileTime> directories) {
+        this.directory = directory;
+        this.includeSubdirs = includeSubdirs;
+        this.files = files;
+        this.sizes = sizes;
+        this.inodes = inodes;
+        this.directories = directories;
+    }
+
+    public boolean matches(String directory, boolean includeSubdirs) {
+        return this.directory.equals(directory) && this.includeSubdirs == includeSubdirs;
+    }
+
+    // Stats every directory of the walk, so call it off the FX thread
+    public boolean isCurrent() {
+        for (Map.Entry<Path, FileTime> entry : directories.entrySet()) {
+            try {
+                if (!Files.getLastModifiedTime(entry.getKey()).equals(entry.getValue())) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public boolean isIncludeSubdirs() {
+        return includeSubdirs;
+    }
+
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    // Size of files.get(i) when it was listed
+    public long[] getSizes() {
+        return sizes;
+    }
+
+    // Inode of files.get(i) when it was listed, 0 if the filesystem has none;
+    // only used to order reads
+    public long[] getInodes() {
+        return inodes;
+    }
+}
@@ -0,0 +1,151 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds byte-identical files so each distinct content is analyzed only once.
+// Candidates are narrowed by size, then by a hash of a few sampled blocks, and
+// only the survivors are hashed in full.
+//
+// Files are never compared byte by byte: two files of the same size whose
+// 64-bit full hashes collide are taken as duplicates and one of them is
+// reported with the other's counts. For n same-size files the chance of that
+// is about n^2 / 2^65, around 3e-8 for a million of them, which is accepted
+// here instead of reading every duplicate twice.
+//
+// Every hash is read under the ReadGate, since this runs before the scan's
+// read queue has the files.
+public class DuplicateDetector {
+
+    private static final int SAMPLE_SIZE = 4 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+
+    // canonical[i] is the index of the first file with the same content as file i.
+    // sizes[i] is the size of file i when it was listed; a stale one only costs a
+    // missed duplicate, since both hashes also cover the size read on open.
+    static int[] findCanonicalIndexes(List<Path> files, long[] sizes, ReadGate gate) {
+        int[] canonical = new int[files.size()];
+        Map<Long, List<Integer>> bySize = new HashMap<>();
+
+        for (int i = 0; i < files.size(); i++) {
+            canonical[i] = i;
+            bySize.computeIfAbsent(sizes[i], k -> new ArrayList<>()).add(i);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Map.Entry<Long, List<Integer>> entry : bySize.entrySet()) {
+            List<Integer> sameSize = entry.getValue();
+            if (sameSize.size() < 2) {
+                continue;
+            }
+            boolean sampleCoversFile = entry.getKey() <= 3L * SAMPLE_SIZE;
+            for (List<Integer> sameSample : groupByHash(files, sameSize, buffer, gate, true)) {
+                List<List<Integer>> groups = sampleCoversFile
+                        ? List.of(sameSample)
+                        : groupByHash(files, sameSample, buffer, gate, false);
+                for (List<Integer> group : groups) {
+                    int first = group.get(0);
+                    for (int index : group) {
+                        canonical[index] = first;
+                    }
+                }
+            }
+        }
+        return canonical;
+    }
+
+    private static List<List<Integer>> groupByHash(List<Path> files, List<Integer> candidates, ByteBuffer buffer,
+            ReadGate gate, boolean sampled) {
+        Map<Long, List<Integer>> byHash = new HashMap<>();
+        for (int index : candidates) {
+            Path file = files.get(index);
+            Runnable exit = gate.enter(file);
+            try {
+                long hash = sampled ? hashSample(file, buffer) : hashFull(file, buffer);
+                byHash.computeIfAbsent(hash, k -> new ArrayList<>()).add(index);
+            } catch (IOException e) {
+                // Unreadable files are left unique and reported by FileAnalyzer
+            } finally {
+                exit.run();
+            }
+        }
+
+        List<List<Integer>> groups = new ArrayList<>();
+        for (List<Integer> group : byHash.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    private static long hashSample(Path path, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long hash = PRIME_4 + size;
+            long[] offsets = { 0, Math.max(0, size / 2 - SAMPLE_SIZE / 2), Math.max(0, size - SAMPLE_SIZE) };
+            for (long offset : offsets) {
+                buffer.clear().limit(SAMPLE_SIZE);
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                    // fill the sample block
+                }
+                buffer.flip();
+                hash = hashBytes(hash, buffer);
+            }
+            return finish(hash);
+        }
+    }
+
+    private static long hashFull(Path path, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long hash = PRIME_4 + channel.size();
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hash = hashLongs(hash, buffer);
+                buffer.compact();
+            }
+            buffer.flip();
+            return finish(hashBytes(hash, buffer));
+        }
+    }
+
+    private static long hashBytes(long hash, ByteBuffer buffer) {
+        hash = hashLongs(hash, buffer);
+        while (buffer.hasRemaining()) {
+            hash ^= (buffer.get() & 0xFFL) * PRIME_3;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+        return hash;
+    }
+
+    private static long hashLongs(long hash, ByteBuffer buffer) {
+        while (buffer.remaining() >= Long.BYTES) {
+            long lane = buffer.getLong() * PRIME_2;
+            hash ^= Long.rotateLeft(lane, 31) * PRIME_1;
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        return hash;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ (hash >>> 32);
+    }
+}
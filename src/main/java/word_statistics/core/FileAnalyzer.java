@@ -1,177 +1,212 @@
 package word_statistics.core;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.Semaphore;
+import java.util.List;
+import java.util.Map;
 
-import javafx.application.Platform;
 import word_statistics.model.FileModel;
 import word_statistics.model.FileStatus;
 
-public class FileAnalyzer implements Runnable {
+// Per-file part of the analysis: turns what the pipeline stages produced for
+// one file into a FileModel and publishes it to the table and directory totals.
+// Built by RunFiles when a reader takes the file, so only files in flight have one.
+public class FileAnalyzer {
+    // -Dword_statistics.noSimulatedWork skips the per-file delay, e.g. to measure throughput in a soak test
+    private static final boolean NO_SIMULATED_WORK = Boolean.getBoolean("word_statistics.noSimulatedWork");
+
+    private final RunFiles files;
     private final Path filePath;
-    private final FileSearchEngine searchEngine;
+    private final AnalysisSession session;
+    // The run this file was listed for; results of a run the session has moved on from are dropped
+    private final FileResultLog run;
     private final int fileIndex;
-    private final Semaphore threadLimiter;
-
-    public FileAnalyzer(Path filePath, FileSearchEngine searchEngine, int fileIndex, Semaphore threadLimiter) {
-        this.filePath = filePath;
-        this.searchEngine = searchEngine;
+    // Files with identical content, which reuse this file's result instead of
+    // being read again; null if there are none
+    private final int[] duplicates;
+    private IoScheduler.Device device;
+
+    // Profile, filled in by the pipeline stages; each is written by one stage
+    // and handed to the next through a queue
+    private long queuedAt;
+    private long queueWaitNanos;
+    private long bytesRead;
+    private long readNanos;
+    private long tokenizeNanos;
+
+    FileAnalyzer(RunFiles files, int fileIndex, int[] duplicates) {
+        this.files = files;
+        this.filePath = files.getPath(fileIndex);
+        this.session = files.getSession();
+        this.run = files.getRun();
         this.fileIndex = fileIndex;
-        this.threadLimiter = threadLimiter;
+        this.duplicates = duplicates;
     }
 
-    @Override
-    public void run() {
-        try {
-            threadLimiter.acquire();
+    public Path getFilePath() {
+        return filePath;
+    }
 
-            if (searchEngine.isStopped()) {
-                threadLimiter.release();
-                return;
-            }
+    public AnalysisSession getSession() {
+        return session;
+    }
 
-            try {
-                searchEngine.incrementActiveThreads();
-                analyzeFile();
-                System.err.println(
-                        "Finished Thread (" + Thread.currentThread().getName() + ") analyzing file: " + filePath);
-
-                if (searchEngine.getFileProcessed() >= searchEngine.getTotalFiles()) {
-                    Platform.runLater(() -> {
-                        searchEngine.setStatus(word_statistics.model.AppStatus.COMPLETED);
-                        if (searchEngine.getController() != null) {
-                            searchEngine.getController().enableControls();
-                        }
-                    });
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                searchEngine.decrementActiveThreads();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } finally {
-            threadLimiter.release();
-        }
+    public int getFileIndex() {
+        return fileIndex;
     }
 
-    private void analyzeFile() {
-        try {
-            if (searchEngine.isStopped()) {
-                handleStoppedFile();
-                return;
-            }
-            System.err.println("Started Thread (" + Thread.currentThread().getName() + ") analyzing file: " + filePath);
-            try {
-                Thread.sleep(1000 + (long) (Math.random() * 3000));
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                handleStoppedFile();
-                return;
-            }
+    IoScheduler.Device getDevice() {
+        return device;
+    }
 
-            if (searchEngine.isStopped()) {
-                handleStoppedFile();
-                return;
-            }
+    void setDevice(IoScheduler.Device device) {
+        this.device = device;
+    }
 
-            String content = Files.readString(filePath);
+    // Marks the file as waiting in a queue; dequeued() adds the time waited
+    void queued() {
+        queuedAt = System.nanoTime();
+    }
 
-            String[] words = content.split("[\\s\\p{Punct}]+");
+    // Waiting since the given System.nanoTime(), e.g. since its run was queued
+    void queuedSince(long nanoTime) {
+        queuedAt = nanoTime;
+    }
 
-            int wordCount = 0;
-            int isCount = 0;
-            int areCount = 0;
-            int youCount = 0;
-            String longestWord = "";
-            String shortestWord = "";
+    void dequeued() {
+        queueWaitNanos += System.nanoTime() - queuedAt;
+    }
 
-            for (String word : words) {
-                if (searchEngine.isStopped()) {
-                    handleStoppedFile();
-                    return;
-                }
+    void recordRead(long bytesRead, long readNanos) {
+        this.bytesRead = bytesRead;
+        this.readNanos = readNanos;
+    }
 
-                if (word.isEmpty()) {
-                    continue;
-                }
+    void recordTokenize(long tokenizeNanos) {
+        this.tokenizeNanos = tokenizeNanos;
+    }
 
-                wordCount++;
+    // Simulated per-file work, done by a reader before it takes its next file
+    // so the delay holds neither a device slot nor a read permit
+    static void simulateWork() {
+        if (NO_SIMULATED_WORK) {
+            return;
+        }
+        try {
+            Thread.sleep(1000 + (long) (Math.random() * 3000));
+        } catch (InterruptedException e) {
+            // Pipeline threads are never cancelled individually
+        }
+    }
 
-                String lowerWord = word.toLowerCase();
-                switch (lowerWord) {
-                    case "is" -> isCount++;
-                    case "are" -> areCount++;
-                    case "you" -> youCount++;
-                    default -> {
-                    }
-                }
+    void started() {
+        System.err.println("Started Thread (" + Thread.currentThread().getName() + ") analyzing file: " + filePath);
+    }
 
-                if (longestWord.isEmpty() || word.length() > longestWord.length()) {
-                    longestWord = word;
-                }
+    // Whether the tokenizer has to collect the file's terms for addTerms
+    boolean collectsTerms() {
+        return files.getIndexBuilder() != null || files.getFrequencies() != null;
+    }
 
-                if (shortestWord.isEmpty() || word.length() < shortestWord.length()) {
-                    shortestWord = word;
+    // Adds the file's terms to its run's index and word frequencies, in parts
+    // while a big file is tokenized and the rest once it completed. A file that
+    // fails after a part was added keeps that part's terms.
+    void addTerms(Map<String, int[]> terms) {
+        // Stopped or replaced, the run's index and frequencies were discarded
+        if (!session.isCurrentRun(run)) {
+            return;
+        }
+        InvertedIndexBuilder indexBuilder = files.getIndexBuilder();
+        if (indexBuilder != null) {
+            indexBuilder.addDocument(fileIndex, terms);
+            if (duplicates != null) {
+                for (int duplicateIndex : duplicates) {
+                    indexBuilder.addDocument(duplicateIndex, terms);
                 }
             }
+        }
 
-            FileModel fileModel = new FileModel(
-                    filePath.getFileName().toString(),
-                    filePath.toString());
+        WordFrequencyAggregator frequencies = files.getFrequencies();
+        if (frequencies != null) {
+            frequencies.add(terms, copies());
+        }
+    }
 
-            if (searchEngine.isStopped()) {
-                handleStoppedFile();
-                return;
-            }
+    void publishCompleted(WordTokenizer tokenizer) {
+        // The table and totals already belong to the next run
+        if (!session.isCurrentRun(run)) {
+            return;
+        }
+        addTerms(tokenizer.getTermFrequencies());
+
+        String longestWord = tokenizer.getLongestWord();
+        String shortestWord = tokenizer.getShortestWord();
+
+        // Path was just read successfully, so skip the File.exists/isFile/canRead checks
+        FileModel fileModel = new FileModel(
+                filePath.getFileName().toString(),
+                filePath.toString(),
+                false);
+
+        fileModel.setUnicodeWords(tokenizer.isUnicode());
+        fileModel.setLongestWord(longestWord.isEmpty() ? "N/A" : longestWord);
+        fileModel.setShortestWord(shortestWord.isEmpty() ? "N/A" : shortestWord);
+        fileModel.setWordCount(tokenizer.getWordCount());
+        fileModel.setIsCount(tokenizer.getIsCount());
+        fileModel.setAreCount(tokenizer.getAreCount());
+        fileModel.setYouCount(tokenizer.getYouCount());
+        fileModel.setBytesRead(bytesRead);
+        fileModel.setReadNanos(readNanos);
+        fileModel.setTokenizeNanos(tokenizeNanos);
+        fileModel.setQueueWaitNanos(queueWaitNanos);
+        fileModel.setStatus(FileStatus.COMPLETED);
+
+        NGramCounter nGrams = tokenizer.getNGrams();
+        if (nGrams != null) {
+            List<NGramCounter.NGram> top = nGrams.top(1);
+            fileModel.setTopNGram(top.isEmpty() ? "N/A" : top.get(0).toString());
+            files.getDirectoryModel().mergeNGrams(nGrams, copies());
+        }
 
-            fileModel.setLongestWord(longestWord.isEmpty() ? "N/A" : longestWord);
-            fileModel.setShortestWord(shortestWord.isEmpty() ? "N/A" : shortestWord);
-            fileModel.setWordCount(wordCount);
-            fileModel.setIsCount(isCount);
-            fileModel.setAreCount(areCount);
-            fileModel.setYouCount(youCount);
-            fileModel.setStatus(FileStatus.COMPLETED);
-
-            Platform.runLater(() -> {
-                if (searchEngine.getController() != null) {
-                    searchEngine.getController().updateFileStatistics(fileIndex, fileModel);
-                }
-            });
+        session.publishFile(run, fileIndex, fileModel);
 
-            searchEngine.updateDirectoryStatisticsFromFile(fileModel);
+        session.updateDirectoryStatisticsFromFile(files.getDirectoryModel(), fileModel, false);
 
-            searchEngine.incrementFileProcessed();
+        session.incrementFileProcessed(run);
+        publishToDuplicates(fileModel, true);
+        finished();
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + filePath + " - " + e.getMessage());
+    void publishError(Exception e) {
+        System.err.println((e instanceof IOException ? "Error reading file: " : "Error analyzing file: ")
+                + filePath + " - " + e.getMessage());
+        if (!session.isCurrentRun(run)) {
+            return;
+        }
 
-            try {
-                FileModel errorModel = new FileModel(
-                        filePath.getFileName().toString(),
-                        filePath.toString(),
-                        false);
-                errorModel.setLongestWord("ERROR");
-                errorModel.setShortestWord("ERROR");
-                errorModel.setStatus(FileStatus.ERROR);
+        try {
+            FileModel errorModel = new FileModel(
+                    filePath.getFileName().toString(),
+                    filePath.toString(),
+                    false);
+            errorModel.setLongestWord("ERROR");
+            errorModel.setShortestWord("ERROR");
+            errorModel.setStatus(FileStatus.ERROR);
 
-                Platform.runLater(() -> {
-                    if (searchEngine.getController() != null) {
-                        searchEngine.getController().updateFileStatistics(fileIndex, errorModel);
-                    }
-                });
+            session.publishFile(run, fileIndex, errorModel);
 
-                searchEngine.incrementFileProcessed();
-            } catch (Exception ex) {
-                System.err.println("Cannot create error FileModel: " + ex.getMessage());
-            }
+            session.incrementFileProcessed(run);
+            publishToDuplicates(errorModel, false);
+        } catch (Exception ex) {
+            System.err.println("Cannot create error FileModel: " + ex.getMessage());
         }
+        finished();
     }
 
-    private void handleStoppedFile() {
+    void handleStoppedFile() {
+        if (!session.isCurrentRun(run)) {
+            return;
+        }
         try {
             FileModel stoppedModel = new FileModel(
                     filePath.getFileName().toString(),
@@ -181,16 +216,45 @@ public class FileAnalyzer implements Runnable {
             stoppedModel.setLongestWord("-");
             stoppedModel.setShortestWord("-");
 
-            Platform.runLater(() -> {
-                if (searchEngine.getController() != null) {
-                    searchEngine.getController().updateFileStatistics(fileIndex, stoppedModel);
-                }
-            });
+            session.publishFile(run, fileIndex, stoppedModel);
 
-            searchEngine.incrementFileProcessed();
+            session.incrementFileProcessed(run);
+            publishToDuplicates(stoppedModel, false);
         } catch (Exception ex) {
             System.err.println("Cannot create stopped FileModel: " + ex.getMessage());
-            searchEngine.incrementFileProcessed();
+            session.incrementFileProcessed(run);
+        }
+        finished();
+    }
+
+    // This file and its duplicates
+    private int copies() {
+        return 1 + (duplicates == null ? 0 : duplicates.length);
+    }
+
+    private void publishToDuplicates(FileModel result, boolean aggregate) {
+        if (duplicates == null) {
+            return;
+        }
+        for (int index : duplicates) {
+            Path path = files.getPath(index);
+            FileModel copy = result.copyFor(path.getFileName().toString(), path.toString());
+
+            session.publishFile(run, index, copy);
+
+            if (aggregate) {
+                session.updateDirectoryStatisticsFromFile(files.getDirectoryModel(), copy, true);
+            }
+            session.incrementFileProcessed(run);
+        }
+    }
+
+    private void finished() {
+        System.err.println(
+                "Finished Thread (" + Thread.currentThread().getName() + ") analyzing file: " + filePath);
+
+        if (run.isComplete()) {
+            session.completeRun(files);
         }
     }
 }
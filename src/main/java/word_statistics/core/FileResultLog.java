@@ -0,0 +1,109 @@
+package word_statistics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import word_statistics.model.FileModel;
+
+// Order in which the files of one run finished, as indexes into its
+// FileResultStore. Followers keep their own cursor and wait for more results
+// until the run ends; workers only take the lock long enough to append.
+// Each run has its own log, so it also identifies the run its files belong to.
+public class FileResultLog {
+
+    private final FileResultStore store;
+    // Files of this run that are done, duplicates included
+    private final AtomicInteger processed = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int[] finished = new int[16];
+    private int size;
+    private boolean closed;
+
+    FileResultLog(FileResultStore store) {
+        this.store = store;
+    }
+
+    public FileResultStore getStore() {
+        return store;
+    }
+
+    int countProcessed() {
+        return processed.incrementAndGet();
+    }
+
+    // Every file of the run is done
+    boolean isComplete() {
+        return processed.get() >= store.size();
+    }
+
+    void add(int fileIndex) {
+        lock.lock();
+        try {
+            if (size == finished.length) {
+                finished = Arrays.copyOf(finished, size * 2);
+            }
+            finished[size++] = fileIndex;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // No more results will be added: the run completed, was stopped or replaced
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Results from position 'from' on, waiting up to the timeout if there are none
+    // yet; empty when the timeout passed or the log is closed and fully read
+    public List<FileModel> awaitFrom(int from, long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int[] indexes;
+        lock.lock();
+        try {
+            while (size <= from && !closed && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+            indexes = Arrays.copyOfRange(finished, Math.min(from, size), size);
+        } finally {
+            lock.unlock();
+        }
+
+        // Materialised outside the lock
+        List<FileModel> results = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            results.add(store.toFileModel(index));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,344 @@
+package word_statistics.core;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import word_statistics.model.FileModel;
+import word_statistics.model.FileStatus;
+import word_statistics.model.ProfileReport;
+
+// Per-file results of one run as fixed-width off-heap records, one per file
+// index, with paths and words in a StringArena. Millions of files cost no heap
+// objects; FileModel instances are only built on demand, e.g. for the table
+// rows on screen or an API response.
+//
+// Record layout (96 bytes):
+// int status, int wordCount, int isCount, int areCount, int youCount, int unused,
+// long directoryRef, long nameRef, long longestWordRef, long shortestWordRef, long topNGramRef,
+// long bytesRead, long readNanos, long tokenizeNanos, long queueWaitNanos
+public class FileResultStore {
+
+    private static final long RECORD_SIZE = 96;
+    private static final long STATUS = 0;
+    private static final long WORD_COUNT = 4;
+    private static final long IS_COUNT = 8;
+    private static final long ARE_COUNT = 12;
+    private static final long YOU_COUNT = 16;
+    private static final long DIRECTORY = 24;
+    private static final long NAME = 32;
+    private static final long LONGEST_WORD = 40;
+    private static final long SHORTEST_WORD = 48;
+    private static final long TOP_NGRAM = 56;
+    private static final long BYTES_READ = 64;
+    private static final long READ_NANOS = 72;
+    private static final long TOKENIZE_NANOS = 80;
+    private static final long QUEUE_WAIT_NANOS = 88;
+
+    // Below one read chunk per-file overhead dominates, so bytes/sec says nothing
+    private static final long OUTLIER_MIN_BYTES = 64 * 1024;
+
+    private static final FileStatus[] STATUSES = FileStatus.values();
+
+    private final int size;
+    private final MemorySegment records;
+    private final StringArena strings;
+
+    public FileResultStore(List<Path> files) {
+        // Freed by the GC once the run's store is no longer referenced
+        Arena arena = Arena.ofAuto();
+        this.size = files.size();
+        this.records = arena.allocate(Math.max(1, RECORD_SIZE * size), Long.BYTES);
+        this.strings = new StringArena(arena);
+
+        long empty = strings.intern("");
+        for (int i = 0; i < size; i++) {
+            Path file = files.get(i);
+            Path parent = file.getParent();
+            long record = RECORD_SIZE * i;
+            records.set(ValueLayout.JAVA_INT, record + STATUS, FileStatus.PENDING.ordinal());
+            records.set(ValueLayout.JAVA_LONG, record + DIRECTORY,
+                    strings.intern(parent == null ? "" : parent.toString()));
+            records.set(ValueLayout.JAVA_LONG, record + NAME, strings.add(file.getFileName().toString()));
+            records.set(ValueLayout.JAVA_LONG, record + LONGEST_WORD, empty);
+            records.set(ValueLayout.JAVA_LONG, record + SHORTEST_WORD, empty);
+            records.set(ValueLayout.JAVA_LONG, record + TOP_NGRAM, empty);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Copies a finished file's result into its record; the path stays as stored
+    void set(int index, FileModel result) {
+        long record = RECORD_SIZE * index;
+        records.set(ValueLayout.JAVA_INT, record + WORD_COUNT, result.getWordCount());
+        records.set(ValueLayout.JAVA_INT, record + IS_COUNT, result.getIsCount());
+        records.set(ValueLayout.JAVA_INT, record + ARE_COUNT, result.getAreCount());
+        records.set(ValueLayout.JAVA_INT, record + YOU_COUNT, result.getYouCount());
+        records.set(ValueLayout.JAVA_LONG, record + LONGEST_WORD, strings.intern(result.getLongestWord()));
+        records.set(ValueLayout.JAVA_LONG, record + SHORTEST_WORD, strings.intern(result.getShortestWord()));
+        records.set(ValueLayout.JAVA_LONG, record + TOP_NGRAM, strings.intern(result.getTopNGram()));
+        records.set(ValueLayout.JAVA_LONG, record + BYTES_READ, result.getBytesRead());
+        records.set(ValueLayout.JAVA_LONG, record + READ_NANOS, result.getReadNanos());
+        records.set(ValueLayout.JAVA_LONG, record + TOKENIZE_NANOS, result.getTokenizeNanos());
+        records.set(ValueLayout.JAVA_LONG, record + QUEUE_WAIT_NANOS, result.getQueueWaitNanos());
+        // Status last, so a row drawn mid-update is at worst still shown as pending
+        records.set(ValueLayout.JAVA_INT, record + STATUS, result.getStatus().ordinal());
+    }
+
+    public FileStatus getStatus(int index) {
+        return STATUSES[records.get(ValueLayout.JAVA_INT, RECORD_SIZE * index + STATUS)];
+    }
+
+    String getDirectory(int index) {
+        return strings.get(records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * index + DIRECTORY));
+    }
+
+    String getName(int index) {
+        return strings.get(records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * index + NAME));
+    }
+
+    int getWordCount(int index) {
+        return records.get(ValueLayout.JAVA_INT, RECORD_SIZE * index + WORD_COUNT);
+    }
+
+    int getIsCount(int index) {
+        return records.get(ValueLayout.JAVA_INT, RECORD_SIZE * index + IS_COUNT);
+    }
+
+    int getAreCount(int index) {
+        return records.get(ValueLayout.JAVA_INT, RECORD_SIZE * index + ARE_COUNT);
+    }
+
+    int getYouCount(int index) {
+        return records.get(ValueLayout.JAVA_INT, RECORD_SIZE * index + YOU_COUNT);
+    }
+
+    // File indexes ordered by directory, then by file name (String order). Only
+    // one directory's names are materialised at a time.
+    int[] pathOrder() {
+        // Directory strings are interned up to a limit, so one directory may have several refs
+        Map<Long, String> directoryOf = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            directoryOf.computeIfAbsent(records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * i + DIRECTORY), strings::get);
+        }
+        Map<String, Integer> rankOf = new TreeMap<>();
+        for (String directory : directoryOf.values()) {
+            rankOf.put(directory, 0);
+        }
+        int rank = 0;
+        for (Map.Entry<String, Integer> entry : rankOf.entrySet()) {
+            entry.setValue(rank++);
+        }
+
+        long[] keyed = new long[size];
+        for (int i = 0; i < size; i++) {
+            String directory = directoryOf.get(records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * i + DIRECTORY));
+            keyed[i] = (long) rankOf.get(directory) << 32 | i;
+        }
+        Arrays.sort(keyed);
+
+        int[] order = new int[size];
+        for (int start = 0; start < size;) {
+            int end = start;
+            while (end < size && keyed[end] >>> 32 == keyed[start] >>> 32) {
+                end++;
+            }
+            String[] names = new String[end - start];
+            Integer[] positions = new Integer[end - start];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = getName((int) keyed[start + i]);
+                positions[i] = i;
+            }
+            Arrays.sort(positions, Comparator.comparing((Integer i) -> names[i]));
+            for (int i = 0; i < positions.length; i++) {
+                order[start + i] = (int) keyed[start + positions[i]];
+            }
+            start = end;
+        }
+        return order;
+    }
+
+    // Columns of the results table the rows can be ordered by
+    public enum SortKey {
+        NAME, WORD_COUNT, IS_COUNT, ARE_COUNT, YOU_COUNT, LONGEST_WORD, SHORTEST_WORD, TOP_NGRAM, ELAPSED, STATUS
+    }
+
+    // File indexes ordered by the key's current values, equal ones in file
+    // order. Text keys materialise one string per file for the sort, numbers a long.
+    public int[] order(SortKey key, boolean descending) {
+        Integer[] indexes = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = i;
+        }
+        Comparator<Integer> comparator;
+        long textField = textField(key);
+        if (textField >= 0) {
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = strings.get(records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * i + textField));
+            }
+            comparator = Comparator.comparing((Integer i) -> values[i]);
+        } else {
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = numberOf(key, i);
+            }
+            comparator = Comparator.comparingLong((Integer i) -> values[i]);
+        }
+        // Stable, so reversing keeps ties in file order
+        Arrays.sort(indexes, descending ? comparator.reversed() : comparator);
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = indexes[i];
+        }
+        return order;
+    }
+
+    private static long textField(SortKey key) {
+        return switch (key) {
+            case NAME -> NAME;
+            case LONGEST_WORD -> LONGEST_WORD;
+            case SHORTEST_WORD -> SHORTEST_WORD;
+            case TOP_NGRAM -> TOP_NGRAM;
+            default -> -1;
+        };
+    }
+
+    private long numberOf(SortKey key, int index) {
+        long record = RECORD_SIZE * index;
+        return switch (key) {
+            case WORD_COUNT -> records.get(ValueLayout.JAVA_INT, record + WORD_COUNT);
+            case IS_COUNT -> records.get(ValueLayout.JAVA_INT, record + IS_COUNT);
+            case ARE_COUNT -> records.get(ValueLayout.JAVA_INT, record + ARE_COUNT);
+            case YOU_COUNT -> records.get(ValueLayout.JAVA_INT, record + YOU_COUNT);
+            case ELAPSED -> elapsedNanos(index);
+            case STATUS -> records.get(ValueLayout.JAVA_INT, record + STATUS);
+            default -> throw new IllegalArgumentException("Not a number key: " + key);
+        };
+    }
+
+    public FileModel toFileModel(int index) {
+        long record = RECORD_SIZE * index;
+        String directory = strings.get(records.get(ValueLayout.JAVA_LONG, record + DIRECTORY));
+        String name = strings.get(records.get(ValueLayout.JAVA_LONG, record + NAME));
+
+        FileModel model = new FileModel(name, directory.isEmpty() ? name : Path.of(directory, name).toString(), false);
+        model.setWordCount(records.get(ValueLayout.JAVA_INT, record + WORD_COUNT));
+        model.setIsCount(records.get(ValueLayout.JAVA_INT, record + IS_COUNT));
+        model.setAreCount(records.get(ValueLayout.JAVA_INT, record + ARE_COUNT));
+        model.setYouCount(records.get(ValueLayout.JAVA_INT, record + YOU_COUNT));
+        model.setLongestWord(strings.get(records.get(ValueLayout.JAVA_LONG, record + LONGEST_WORD)));
+        model.setShortestWord(strings.get(records.get(ValueLayout.JAVA_LONG, record + SHORTEST_WORD)));
+        model.setTopNGram(strings.get(records.get(ValueLayout.JAVA_LONG, record + TOP_NGRAM)));
+        model.setBytesRead(records.get(ValueLayout.JAVA_LONG, record + BYTES_READ));
+        model.setReadNanos(records.get(ValueLayout.JAVA_LONG, record + READ_NANOS));
+        model.setTokenizeNanos(records.get(ValueLayout.JAVA_LONG, record + TOKENIZE_NANOS));
+        model.setQueueWaitNanos(records.get(ValueLayout.JAVA_LONG, record + QUEUE_WAIT_NANOS));
+        model.setStatus(getStatus(index));
+        return model;
+    }
+
+    // The count files with the longest read plus tokenize time, and the files
+    // whose bytes/sec is below the median divided by outlierFactor, among files
+    // of at least OUTLIER_MIN_BYTES. Only files that were read themselves count;
+    // their copies and failed files have no profile. Works off the records, so
+    // it costs a float per file on the heap.
+    public ProfileReport profileReport(int count, double outlierFactor) {
+        float[] throughputs = new float[size];
+        int measured = 0;
+        int profiled = 0;
+        long totalBytes = 0;
+        long totalRead = 0;
+        long totalTokenize = 0;
+        long totalWait = 0;
+
+        PriorityQueue<Integer> slowest = new PriorityQueue<>(Comparator.comparingLong(this::elapsedNanos));
+        for (int i = 0; i < size; i++) {
+            if (!isProfiled(i)) {
+                continue;
+            }
+            long record = RECORD_SIZE * i;
+            profiled++;
+            totalBytes += records.get(ValueLayout.JAVA_LONG, record + BYTES_READ);
+            totalRead += records.get(ValueLayout.JAVA_LONG, record + READ_NANOS);
+            totalTokenize += records.get(ValueLayout.JAVA_LONG, record + TOKENIZE_NANOS);
+            totalWait += records.get(ValueLayout.JAVA_LONG, record + QUEUE_WAIT_NANOS);
+            if (isMeasured(i)) {
+                throughputs[measured++] = (float) bytesPerSecond(i);
+            }
+            keepTop(slowest, i, count);
+        }
+
+        List<FileModel> slowestFiles = new ArrayList<>(slowest.size());
+        while (!slowest.isEmpty()) {
+            slowestFiles.add(0, toFileModel(slowest.poll()));
+        }
+
+        double median = 0;
+        int outlierCount = 0;
+        // Slowest of the outliers on top, so the heap keeps the lowest bytes/sec
+        PriorityQueue<Integer> outliers = new PriorityQueue<>(
+                Comparator.comparingDouble((Integer i) -> bytesPerSecond(i)).reversed());
+        if (measured > 0) {
+            Arrays.sort(throughputs, 0, measured);
+            median = throughputs[measured / 2];
+            double threshold = median / outlierFactor;
+            for (int i = 0; i < size; i++) {
+                if (isMeasured(i) && bytesPerSecond(i) < threshold) {
+                    outlierCount++;
+                    keepTop(outliers, i, count);
+                }
+            }
+        }
+
+        List<FileModel> outlierFiles = new ArrayList<>(outliers.size());
+        while (!outliers.isEmpty()) {
+            outlierFiles.add(0, toFileModel(outliers.poll()));
+        }
+
+        return new ProfileReport(profiled, totalBytes, totalRead, totalTokenize, totalWait, median,
+                slowestFiles, outlierFiles, outlierCount);
+    }
+
+    // Keeps the count largest entries by the heap's order; its head is the smallest kept
+    private static void keepTop(PriorityQueue<Integer> heap, int index, int count) {
+        if (heap.size() < count) {
+            heap.add(index);
+        } else if (count > 0 && heap.comparator().compare(index, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(index);
+        }
+    }
+
+    private boolean isProfiled(int index) {
+        return getStatus(index) == FileStatus.COMPLETED && elapsedNanos(index) > 0;
+    }
+
+    private boolean isMeasured(int index) {
+        return isProfiled(index)
+                && records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * index + BYTES_READ) >= OUTLIER_MIN_BYTES;
+    }
+
+    private long elapsedNanos(int index) {
+        long record = RECORD_SIZE * index;
+        return records.get(ValueLayout.JAVA_LONG, record + READ_NANOS)
+                + records.get(ValueLayout.JAVA_LONG, record + TOKENIZE_NANOS);
+    }
+
+    private double bytesPerSecond(int index) {
+        return records.get(ValueLayout.JAVA_LONG, RECORD_SIZE * index + BYTES_READ) * 1e9 / elapsedNanos(index);
+    }
+}
@@ -1,16 +1,37 @@
 package word_statistics.core;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 public class FileSearch {
+
+    // How often listTextFiles reports its count
+    private static final long COUNT_INTERVAL_NANOS = 100_000_000L;
+
     public static List<Path> searchTextFiles(String directoryPath, boolean includeSubdirs) throws IOException {
-        List<Path> txtFiles = new ArrayList<>();
+        return listTextFiles(directoryPath, includeSubdirs, () -> false, count -> {
+        }).getFiles();
+    }
+
+    // Like searchTextFiles, but keeps the sizes, inodes and directory times the
+    // walk sees anyway, reports the count as it goes and returns null once cancelled
+    public static DirectoryListing listTextFiles(String directoryPath, boolean includeSubdirs,
+            BooleanSupplier cancelled, IntConsumer onCount) throws IOException {
         Path startDir = Paths.get(directoryPath);
 
         if (!Files.exists(startDir) || !Files.isDirectory(startDir)) {
@@ -18,16 +39,111 @@ public class FileSearch {
         }
         int depth = includeSubdirs ? Integer.MAX_VALUE : 1;
 
-        try (var stream = Files.walk(startDir, depth)) {
-            stream.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".txt"))
-                    .forEach(txtFiles::add);
-        } catch (
+        TextFileVisitor visitor = new TextFileVisitor(cancelled, onCount);
+        Files.walkFileTree(startDir, EnumSet.noneOf(FileVisitOption.class), depth, visitor);
+        if (visitor.cancelled) {
+            return null;
+        }
+        onCount.accept(visitor.txtFiles.size());
+        return new DirectoryListing(directoryPath, includeSubdirs, visitor.txtFiles,
+                Arrays.copyOf(visitor.sizes, visitor.txtFiles.size()),
+                Arrays.copyOf(visitor.inodes, visitor.txtFiles.size()), visitor.directories);
+    }
 
-        UncheckedIOException e) {
+    // The inode of a Unix fileKey(), which reads "(dev=..,ino=..)"; 0 where
+    // the filesystem has no such key, which leaves the file in walk order
+    static long inodeOf(Object fileKey) {
+        if (fileKey == null) {
+            return 0;
+        }
+        String key = fileKey.toString();
+        int start = key.indexOf("ino=");
+        if (start < 0) {
+            return 0;
+        }
+        start += 4;
+        int end = start;
+        while (end < key.length() && Character.isDigit(key.charAt(end))) {
+            end++;
+        }
+        try {
+            return Long.parseLong(key, start, end, 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class TextFileVisitor extends SimpleFileVisitor<Path> {
+        private final BooleanSupplier cancelRequested;
+        private final IntConsumer onCount;
+        private final List<Path> txtFiles = new ArrayList<>();
+        private final Map<Path, FileTime> directories = new HashMap<>();
+        private long[] sizes = new long[1024];
+        private long[] inodes = new long[1024];
+        private long lastCount = System.nanoTime();
+        private boolean cancelled;
+
+        TextFileVisitor(BooleanSupplier cancelRequested, IntConsumer onCount) {
+            this.cancelRequested = cancelRequested;
+            this.onCount = onCount;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (cancelRequested.getAsBoolean()) {
+                cancelled = true;
+                return FileVisitResult.TERMINATE;
+            }
+            directories.put(dir, attrs.lastModifiedTime());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!file.toString().endsWith(".txt")) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (attrs.isSymbolicLink()) {
+                // Links to text files count, like the files themselves
+                try {
+                    attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            }
+            if (!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (txtFiles.size() == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                inodes = Arrays.copyOf(inodes, inodes.length * 2);
+            }
+            sizes[txtFiles.size()] = attrs.size();
+            inodes[txtFiles.size()] = inodeOf(attrs.fileKey());
+            txtFiles.add(file);
+
+            long now = System.nanoTime();
+            if (now - lastCount >= COUNT_INTERVAL_NANOS) {
+                lastCount = now;
+                onCount.accept(txtFiles.size());
+                if (cancelRequested.getAsBoolean()) {
+                    cancelled = true;
+                    return FileVisitResult.TERMINATE;
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
             // Skip AccessDenied Folders or files
+            return FileVisitResult.CONTINUE;
         }
 
-        return txtFiles;
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            return FileVisitResult.CONTINUE;
+        }
     }
 
     // for testing
@@ -0,0 +1,253 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Read side of the index written by InvertedIndexBuilder. The file is memory
+// mapped as a MemorySegment, so it may be larger than 2 GB, and nothing is
+// decoded up front: a query binary-searches the term table in the mapping and
+// decodes only the postings of its terms and the paths of its results.
+public class InvertedIndex {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final MemorySegment segment;
+    private final String directory;
+    private final long termTableOffset;
+    private final long pathTableOffset;
+    private final int docCount;
+    private final int termCount;
+    private final boolean unicode;
+
+    private InvertedIndex(MemorySegment segment, Path indexFile) throws IOException {
+        this.segment = segment;
+        long footer = segment.byteSize() - InvertedIndexBuilder.FOOTER_SIZE;
+        int magic = footer < 0 ? 0 : segment.get(INT, segment.byteSize() - Integer.BYTES);
+        if ((magic != InvertedIndexBuilder.MAGIC && magic != InvertedIndexBuilder.UNICODE_MAGIC)
+                || segment.get(INT, 0) != magic) {
+            throw new IOException("Not a word statistics index: " + indexFile);
+        }
+        int version = segment.get(INT, Integer.BYTES);
+        if (version != InvertedIndexBuilder.VERSION) {
+            throw new IOException("Unsupported index version " + version + ": " + indexFile);
+        }
+        this.unicode = magic == InvertedIndexBuilder.UNICODE_MAGIC;
+        this.directory = new Reader(segment, 2 * Integer.BYTES).readString();
+        this.termTableOffset = segment.get(LONG, footer);
+        this.pathTableOffset = segment.get(LONG, footer + Long.BYTES);
+        this.docCount = segment.get(INT, footer + 2 * Long.BYTES);
+        this.termCount = segment.get(INT, footer + 2 * Long.BYTES + Integer.BYTES);
+    }
+
+    public static InvertedIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            // Unmapped by the GC once the index is no longer referenced
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            return new InvertedIndex(segment, indexFile);
+        }
+    }
+
+    // The index of the directory, or null if it has none
+    public static InvertedIndex openFor(String directoryPath) throws IOException {
+        Path indexFile = indexFileFor(directoryPath);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        InvertedIndex index = open(indexFile);
+        if (!index.getDirectory().equals(DataDirectory.normalize(directoryPath))) {
+            throw new IOException("Index " + indexFile + " belongs to " + index.getDirectory());
+        }
+        return index;
+    }
+
+    // One index per analyzed directory, kept outside the directory itself
+    public static Path indexFileFor(String directoryPath) {
+        return DataDirectory.fileFor(directoryPath, "index-", ".idx");
+    }
+
+    // Absolute path of the directory the index was built from
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getDocumentCount() {
+        return docCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public boolean isUnicode() {
+        return unicode;
+    }
+
+    // Files containing every term of the query; a literal "AND" is accepted between terms
+    public List<String> search(String query) {
+        List<String> queryTerms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length();) {
+            int codePoint = i < query.length() ? query.codePointAt(i) : ' ';
+            int next = i + Character.charCount(codePoint);
+            byte type;
+            if (unicode) {
+                type = UnicodeWordTable.classOf(codePoint);
+            } else {
+                type = codePoint < 128 && WordTokenizer.isDelimiter((char) codePoint)
+                        ? UnicodeWordTable.DELIMITER
+                        : UnicodeWordTable.WORD;
+            }
+            if (type == UnicodeWordTable.WORD) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else {
+                if (start >= 0) {
+                    addQueryTerm(queryTerms, query.substring(start, i));
+                    start = -1;
+                }
+                if (type == UnicodeWordTable.IDEOGRAPH) {
+                    addQueryTerm(queryTerms, query.substring(i, next));
+                }
+            }
+            i = i == query.length() ? i + 1 : next;
+        }
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        for (String term : queryTerms) {
+            int[] docs = postings(term);
+            if (docs.length == 0) {
+                return List.of();
+            }
+            lists.add(docs);
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+
+        List<String> paths = new ArrayList<>(result.length);
+        for (int docId : result) {
+            paths.add(getPath(docId));
+        }
+        return paths;
+    }
+
+    private static void addQueryTerm(List<String> queryTerms, String term) {
+        if (!term.equals("AND")) {
+            queryTerms.add(WordTokenizer.normalizeTerm(term));
+        }
+    }
+
+    public int[] postings(String term) {
+        long entry = find(term);
+        if (entry < 0) {
+            return new int[0];
+        }
+
+        Reader reader = new Reader(segment, entry);
+        reader.skipString();
+        int count = (int) reader.readVarLong();
+        int[] docs = new int[count];
+        int docId = 0;
+        for (int i = 0; i < count; i++) {
+            docId += (int) reader.readVarLong();
+            reader.readVarLong(); // term frequency
+            docs[i] = docId;
+        }
+        return docs;
+    }
+
+    public String getPath(int docId) {
+        return new Reader(segment, segment.get(LONG, pathTableOffset + (long) docId * Long.BYTES)).readString();
+    }
+
+    // Offset of the term's entry, or -1; terms are in String order
+    private long find(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = segment.get(LONG, termTableOffset + (long) middle * Long.BYTES);
+            int order = new Reader(segment, entry).readString().compareTo(term);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[size++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static final class Reader {
+        private final MemorySegment segment;
+        private long position;
+
+        Reader(MemorySegment segment, long position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = segment.get(ValueLayout.JAVA_BYTE, position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            byte[] bytes = segment.asSlice(position, length).toArray(ValueLayout.JAVA_BYTE);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void skipString() {
+            long length = readVarLong();
+            position += length;
+        }
+    }
+}
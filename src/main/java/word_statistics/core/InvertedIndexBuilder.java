@@ -0,0 +1,650 @@
+package word_statistics.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+// Collects term -> (file id, term frequency) postings while files are
+// analyzed and writes them in the format read by InvertedIndex. As in
+// WordFrequencyAggregator, each worker thread adds to its own partial table,
+// which is sorted and spilled to a run file once it reaches its share of the
+// budget; write() streams a k-way merge of the runs and the partial tables
+// into the index, so the heap it needs doesn't grow with the corpus.
+//
+// [header] int MAGIC, int VERSION, string directory
+// [terms] per term, sorted: string term, varint count, then (varint docId delta, varint tf)*
+// [paths] per file: string path
+// [term table] per term: long offset of its entry
+// [path table] per file: long offset of its path
+// [footer] long termTableOffset, long pathTableOffset, int docCount, int termCount, int MAGIC
+//
+// Strings are a varint UTF-8 length and the bytes; ints and longs are big-endian.
+// The tables have fixed-width entries, so the reader binary-searches the
+// mapped file without decoding the dictionary. Indexes of Unicode-mode runs
+// use UNICODE_MAGIC instead, so queries are split into terms the same way
+// the documents were.
+//
+// Run file: per term, in String order: string term, varint count, (varint docId delta, varint tf)*
+public class InvertedIndexBuilder {
+
+    static final int MAGIC = 0x57534958; // "WSIX"
+    static final int UNICODE_MAGIC = 0x57534955; // "WSIU"
+    static final int VERSION = 2;
+    static final int FOOTER_SIZE = 2 * Long.BYTES + 3 * Integer.BYTES;
+
+    // -Dword_statistics.index.budgetMB, shared by all partial tables of a run
+    public static final long DEFAULT_BUDGET_BYTES =
+            Long.getLong("word_statistics.index.budgetMB", 64) * 1024 * 1024;
+
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Rough heap cost of a HashMap entry with a String key and its Postings
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final String directory;
+    private final List<Path> files;
+    private final boolean unicode;
+    private final long partialBudget;
+    private final Map<Thread, Partial> partials = new ConcurrentHashMap<>();
+    private final List<Path> runs = new CopyOnWriteArrayList<>();
+    private Path runDirectory;
+    private volatile boolean discarded;
+
+    public InvertedIndexBuilder(String directory, List<Path> files, boolean unicode, long budgetBytes,
+            int workers) {
+        this.directory = DataDirectory.normalize(directory);
+        this.files = files;
+        this.unicode = unicode;
+        this.partialBudget = Math.max(1024 * 1024, budgetBytes / Math.max(1, workers));
+    }
+
+    // A file's terms can come in several parts, e.g. as a big file's term table
+    // fills up; the parts' frequencies are summed
+    public void addDocument(int docId, Map<String, int[]> termFrequencies) {
+        if (discarded) {
+            return;
+        }
+        Partial partial = partials.computeIfAbsent(Thread.currentThread(), t -> new Partial());
+        for (Map.Entry<String, int[]> entry : termFrequencies.entrySet()) {
+            partial.add(entry.getKey(), docId, entry.getValue()[0]);
+        }
+        if (partial.bytes >= partialBudget) {
+            try {
+                spill(partial);
+            } catch (IOException e) {
+                // Nothing was lost yet, but a partial index would answer queries wrongly
+                System.err.println("Error spilling index postings, not building the index - " + e.getMessage());
+                discard();
+            }
+        }
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    // Called once every file was added
+    public void write(Path indexFile) throws IOException {
+        if (discarded) {
+            throw new IOException("Index postings were discarded");
+        }
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        // Unique, since two sessions can index the same directory at once; the last move wins
+        Path tempFile = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            List<Cursor> cursors = new ArrayList<>();
+            for (Partial partial : partials.values()) {
+                if (!partial.postings.isEmpty()) {
+                    cursors.add(new MemoryCursor(partial.postings));
+                }
+            }
+            partials.clear();
+
+            // Reduce to one merge pass that keeps at most MAX_FAN_IN files open
+            List<Path> pending = new ArrayList<>(runs);
+            while (pending.size() > 1 && pending.size() + cursors.size() > MAX_FAN_IN) {
+                List<Path> group = new ArrayList<>(pending.subList(0, Math.min(MAX_FAN_IN, pending.size())));
+                pending.subList(0, group.size()).clear();
+                pending.add(mergeRuns(group));
+            }
+            for (Path run : pending) {
+                cursors.add(new RunCursor(run));
+            }
+
+            try (IndexWriter writer = new IndexWriter(tempFile, newRunFile())) {
+                try {
+                    mergeCursors(cursors, writer);
+                } finally {
+                    for (Cursor cursor : cursors) {
+                        cursor.close();
+                    }
+                }
+                writer.finish();
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+            deleteRuns();
+        }
+    }
+
+    // Drops everything, e.g. when the run is stopped
+    public void discard() {
+        discarded = true;
+        partials.clear();
+        deleteRuns();
+    }
+
+    private void spill(Partial partial) throws IOException {
+        Path run = newRunFile();
+        try (RunWriter writer = new RunWriter(run)) {
+            String[] terms = partial.postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            for (String term : terms) {
+                long[] entries = partial.postings.get(term).sorted();
+                writer.beginTerm(term, entries.length);
+                for (long entry : entries) {
+                    writer.posting((int) (entry >>> 32), (int) entry);
+                }
+            }
+        }
+        partial.clear();
+        runs.add(run);
+        if (discarded) {
+            deleteRuns();
+        }
+    }
+
+    private Path mergeRuns(List<Path> group) throws IOException {
+        Path merged = newRunFile();
+        List<Cursor> cursors = new ArrayList<>();
+        try (RunWriter writer = new RunWriter(merged)) {
+            for (Path run : group) {
+                cursors.add(new RunCursor(run));
+            }
+            mergeCursors(cursors, writer);
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        for (Path run : group) {
+            Files.deleteIfExists(run);
+        }
+        return merged;
+    }
+
+    // Streams every distinct term once, in order, with the postings of all
+    // cursors merged by doc id. A file added in parts can be in several cursors
+    // if a spill came in between, so a term found in more than one cursor has
+    // its postings summed per file first, holding 8 bytes per posting.
+    private static void mergeCursors(List<Cursor> cursors, PostingsSink sink) throws IOException {
+        PriorityQueue<Cursor> terms = new PriorityQueue<>(Comparator.comparing(Cursor::term));
+        for (Cursor cursor : cursors) {
+            if (cursor.nextTerm()) {
+                terms.add(cursor);
+            }
+        }
+        List<Cursor> same = new ArrayList<>();
+        PriorityQueue<Cursor> docs = new PriorityQueue<>(Comparator.comparingInt(Cursor::docId));
+        long[] merged = new long[16];
+        while (!terms.isEmpty()) {
+            same.clear();
+            same.add(terms.poll());
+            String term = same.get(0).term();
+            while (!terms.isEmpty() && terms.peek().term().equals(term)) {
+                same.add(terms.poll());
+            }
+
+            for (Cursor cursor : same) {
+                if (cursor.nextPosting()) {
+                    docs.add(cursor);
+                }
+            }
+            if (same.size() == 1) {
+                sink.beginTerm(term, same.get(0).count());
+                while (!docs.isEmpty()) {
+                    Cursor cursor = docs.poll();
+                    sink.posting(cursor.docId(), cursor.frequency());
+                    if (cursor.nextPosting()) {
+                        docs.add(cursor);
+                    }
+                }
+            } else {
+                int size = 0;
+                while (!docs.isEmpty()) {
+                    Cursor cursor = docs.poll();
+                    if (size > 0 && (int) (merged[size - 1] >>> 32) == cursor.docId()) {
+                        merged[size - 1] += cursor.frequency();
+                    } else {
+                        if (size == merged.length) {
+                            merged = Arrays.copyOf(merged, size * 2);
+                        }
+                        merged[size++] = ((long) cursor.docId() << 32) | cursor.frequency();
+                    }
+                    if (cursor.nextPosting()) {
+                        docs.add(cursor);
+                    }
+                }
+                sink.beginTerm(term, size);
+                for (int i = 0; i < size; i++) {
+                    sink.posting((int) (merged[i] >>> 32), (int) merged[i]);
+                }
+            }
+
+            for (Cursor cursor : same) {
+                if (cursor.nextTerm()) {
+                    terms.add(cursor);
+                }
+            }
+        }
+    }
+
+    private synchronized Path newRunFile() throws IOException {
+        if (runDirectory == null) {
+            runDirectory = Files.createTempDirectory("word_statistics-index-");
+        }
+        return Files.createTempFile(runDirectory, "run-", ".bin");
+    }
+
+    private synchronized void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                System.err.println("Cannot delete run file: " + run + " - " + e.getMessage());
+            }
+        }
+        runs.clear();
+        if (runDirectory != null) {
+            try (Stream<Path> leftovers = Files.list(runDirectory)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+                Files.deleteIfExists(runDirectory);
+            } catch (IOException e) {
+                System.err.println("Cannot delete run directory: " + runDirectory + " - " + e.getMessage());
+            }
+            runDirectory = null;
+        }
+    }
+
+    private static final class Partial {
+        final Map<String, Postings> postings = new HashMap<>();
+        long bytes;
+
+        void add(String term, int docId, int frequency) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                list = new Postings();
+                postings.put(term, list);
+                bytes += ENTRY_OVERHEAD + 2L * term.length();
+            }
+            bytes += list.add(docId, frequency);
+        }
+
+        void clear() {
+            postings.clear();
+            bytes = 0;
+        }
+    }
+
+    private static final class Postings {
+        // (docId << 32 | tf) pairs, in the order the files were added
+        private long[] entries = new long[2];
+        private int size;
+
+        // Returns the bytes it grew by
+        int add(int docId, int frequency) {
+            // Parts of one file usually come one after the other; sorted() sums
+            // those that don't, e.g. with the file's duplicates added in between
+            if (size > 0 && (int) (entries[size - 1] >>> 32) == docId) {
+                entries[size - 1] += frequency;
+                return 0;
+            }
+            int grown = 0;
+            if (size == entries.length) {
+                grown = entries.length * Long.BYTES;
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = ((long) docId << 32) | frequency;
+            return grown;
+        }
+
+        // In doc id order, one entry per file
+        long[] sorted() {
+            long[] result = Arrays.copyOf(entries, size);
+            Arrays.sort(result);
+            int merged = 0;
+            for (int i = 0; i < result.length; i++) {
+                if (merged > 0 && (result[merged - 1] >>> 32) == (result[i] >>> 32)) {
+                    result[merged - 1] += (int) result[i];
+                } else {
+                    result[merged++] = result[i];
+                }
+            }
+            return merged == result.length ? result : Arrays.copyOf(result, merged);
+        }
+    }
+
+    private interface PostingsSink {
+        void beginTerm(String term, long count) throws IOException;
+
+        void posting(int docId, int frequency) throws IOException;
+    }
+
+    // A sorted sequence of terms, each with its postings in doc id order; the
+    // postings of a term must be read before moving to the next one
+    private interface Cursor {
+        boolean nextTerm() throws IOException;
+
+        String term();
+
+        long count();
+
+        boolean nextPosting() throws IOException;
+
+        int docId();
+
+        int frequency();
+
+        void close();
+    }
+
+    private static final class MemoryCursor implements Cursor {
+        private final String[] terms;
+        private final Map<String, Postings> postings;
+        private int position = -1;
+        private long[] entries;
+        private int entry;
+
+        MemoryCursor(Map<String, Postings> postings) {
+            this.postings = postings;
+            this.terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+        }
+
+        public boolean nextTerm() {
+            if (++position >= terms.length) {
+                entries = null;
+                return false;
+            }
+            entries = postings.get(terms[position]).sorted();
+            entry = -1;
+            return true;
+        }
+
+        public String term() {
+            return terms[position];
+        }
+
+        public long count() {
+            return entries.length;
+        }
+
+        public boolean nextPosting() {
+            return ++entry < entries.length;
+        }
+
+        public int docId() {
+            return (int) (entries[entry] >>> 32);
+        }
+
+        public int frequency() {
+            return (int) entries[entry];
+        }
+
+        public void close() {
+        }
+    }
+
+    private static final class RunCursor implements Cursor {
+        private final DataInputStream in;
+        private String term;
+        private long count;
+        private long remaining;
+        private int docId;
+        private int frequency;
+
+        RunCursor(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+        }
+
+        public boolean nextTerm() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            byte[] bytes = new byte[(int) readVarLong(in, first)];
+            in.readFully(bytes);
+            term = new String(bytes, StandardCharsets.UTF_8);
+            count = readVarLong(in, in.read());
+            remaining = count;
+            docId = 0;
+            return true;
+        }
+
+        public String term() {
+            return term;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public boolean nextPosting() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            docId += (int) readVarLong(in, in.read());
+            frequency = (int) readVarLong(in, in.read());
+            return true;
+        }
+
+        public int docId() {
+            return docId;
+        }
+
+        public int frequency() {
+            return frequency;
+        }
+
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.err.println("Cannot close run file - " + e.getMessage());
+            }
+        }
+
+        private static long readVarLong(DataInputStream in, int b) throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (b < 0) {
+                    throw new EOFException("Truncated run file");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                b = in.read();
+            }
+        }
+    }
+
+    private static final class RunWriter implements PostingsSink, AutoCloseable {
+        private final CountingOutput out;
+        private int previousDoc;
+
+        RunWriter(Path run) throws IOException {
+            this.out = new CountingOutput(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+        }
+
+        public void beginTerm(String term, long count) throws IOException {
+            out.writeString(term);
+            out.writeVarLong(count);
+            previousDoc = 0;
+        }
+
+        public void posting(int docId, int frequency) throws IOException {
+            out.writeVarLong(docId - previousDoc);
+            out.writeVarLong(frequency);
+            previousDoc = docId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // Writes the terms as they come and their offsets to a side file, which
+    // finish() appends as the term table after the paths
+    private final class IndexWriter implements PostingsSink, AutoCloseable {
+        private final CountingOutput out;
+        private final Path termTableFile;
+        private final DataOutputStream termTable;
+        private int termCount;
+        private int previousDoc;
+
+        IndexWriter(Path indexFile, Path termTableFile) throws IOException {
+            this.out = new CountingOutput(
+                    new BufferedOutputStream(Files.newOutputStream(indexFile), BUFFER_SIZE));
+            this.termTableFile = termTableFile;
+            this.termTable = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(termTableFile), BUFFER_SIZE));
+            out.writeInt(unicode ? UNICODE_MAGIC : MAGIC);
+            out.writeInt(VERSION);
+            out.writeString(directory);
+        }
+
+        public void beginTerm(String term, long count) throws IOException {
+            termTable.writeLong(out.position);
+            termCount++;
+            out.writeString(term);
+            out.writeVarLong(count);
+            previousDoc = 0;
+        }
+
+        public void posting(int docId, int frequency) throws IOException {
+            out.writeVarLong(docId - previousDoc);
+            out.writeVarLong(frequency);
+            previousDoc = docId;
+        }
+
+        void finish() throws IOException {
+            long pathsOffset = out.position;
+            for (Path file : files) {
+                out.writeString(file.toString());
+            }
+
+            long termTableOffset = out.position;
+            termTable.close();
+            try (InputStream in = Files.newInputStream(termTableFile)) {
+                out.position += in.transferTo(out.out);
+            }
+            Files.deleteIfExists(termTableFile);
+
+            // The path offsets again, from the lengths, instead of keeping them all
+            long pathTableOffset = out.position;
+            long offset = pathsOffset;
+            for (Path file : files) {
+                out.writeLong(offset);
+                offset += CountingOutput.stringSize(file.toString());
+            }
+
+            out.writeLong(termTableOffset);
+            out.writeLong(pathTableOffset);
+            out.writeInt(files.size());
+            out.writeInt(termCount);
+            out.writeInt(unicode ? UNICODE_MAGIC : MAGIC);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                termTable.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static final class CountingOutput implements AutoCloseable {
+        private final OutputStream out;
+        private long position;
+
+        CountingOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        static long stringSize(String value) {
+            long length = value.getBytes(StandardCharsets.UTF_8).length;
+            long size = length;
+            do {
+                size++;
+                length >>>= 7;
+            } while (length != 0);
+            return size;
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+                position++;
+            }
+            out.write((int) value);
+            position++;
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        void writeLong(long value) throws IOException {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+            position += Long.BYTES;
+        }
+
+        void writeInt(int value) throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                out.write(value >>> shift);
+            }
+            position += Integer.BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read queue of the pipeline. Each session has one lane holding a FIFO per
+// device (FileStore) its files live on. take() serves the lanes in turn, so
+// sessions share the readers fairly however many devices they read from, and
+// within a lane the devices in turn, skipping a device while it already has as
+// many readers as it should: a spinning disk gets a couple of sequential
+// readers instead of every reader seeking across it.
+//
+// Within a lane files are read directory by directory and, where the
+// filesystem exposes them, in inode order, which is roughly on-disk order.
+// The inodes come from the listing's walk, so ordering costs no extra stat.
+// Queued files are indexes into their RunFiles; a file's FileAnalyzer is only
+// built when take() hands it to a reader.
+//
+// -Dword_statistics.io.readersPerDevice overrides the per-device cap,
+// -Dword_statistics.io.rotationalReaders / networkReaders set the defaults
+public class IoScheduler {
+
+    private static final Integer READERS_PER_DEVICE = Integer.getInteger("word_statistics.io.readersPerDevice");
+    private static final int ROTATIONAL_READERS = Integer.getInteger("word_statistics.io.rotationalReaders", 2);
+    private static final int NETWORK_READERS = Integer.getInteger("word_statistics.io.networkReaders", 16);
+    private static final boolean INODE_ORDER = !Boolean.getBoolean("word_statistics.io.noInodeOrder");
+
+    private static final Set<String> NETWORK_TYPES = Set.of("nfs", "nfs4", "cifs", "smb", "smbfs", "smb3",
+            "9p", "afs", "ceph", "glusterfs", "fuse.sshfs", "fuse.glusterfs", "fuse.s3fs");
+
+    // Devices are shared by all sessions, so two scans of one disk share its cap
+    private final Map<FileStore, Device> devices = new ConcurrentHashMap<>();
+    private final Device unknownDevice = new Device("unknown", Integer.MAX_VALUE);
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private int nextLane;
+
+    // Looks up the device of each directory, so call it off the FX thread
+    public void addAll(RunFiles files, int[] indexes) {
+        // Sort keys only live while the files are ordered, the queues keep the indexes
+        Map<Path, Directory> directories = new HashMap<>();
+        Directory[] directoryOf = new Directory[indexes.length];
+        long[] inodes = new long[indexes.length];
+        Map<Device, List<Integer>> byDevice = new HashMap<>();
+        for (int i = 0; i < indexes.length; i++) {
+            Path file = files.getPath(indexes[i]);
+            directoryOf[i] = directories.computeIfAbsent(file.toAbsolutePath().getParent(),
+                    directory -> new Directory(directory == null ? "" : directory.toString(), deviceOf(directory)));
+            inodes[i] = INODE_ORDER ? files.getInode(indexes[i]) : 0;
+            byDevice.computeIfAbsent(directoryOf[i].device, d -> new ArrayList<>()).add(i);
+        }
+
+        long queuedAt = System.nanoTime();
+        List<FileQueue> queues = new ArrayList<>();
+        for (Map.Entry<Device, List<Integer>> entry : byDevice.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            positions.sort(Comparator.comparing((Integer p) -> directoryOf[p].name).thenComparingLong(p -> inodes[p]));
+            int[] ordered = new int[positions.size()];
+            for (int i = 0; i < ordered.length; i++) {
+                ordered[i] = indexes[positions.get(i)];
+            }
+            queues.add(new FileQueue(files, entry.getKey(), ordered, queuedAt));
+        }
+
+        synchronized (this) {
+            Lane lane = findLane(files.getSession());
+            if (lane == null) {
+                lane = new Lane(files.getSession());
+                lanes.add(lane);
+            }
+            lane.queues.addAll(queues);
+            notifyAll();
+        }
+    }
+
+    // Next file whose device has a free reader slot; the slot is held until release()
+    public synchronized FileAnalyzer take() throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < lanes.size(); i++) {
+                int index = (nextLane + i) % lanes.size();
+                Lane lane = lanes.get(index);
+                FileAnalyzer analyzer = lane.poll();
+                if (analyzer == null) {
+                    continue;
+                }
+                analyzer.dequeued();
+                analyzer.getDevice().readers++;
+                if (lane.isEmpty()) {
+                    lanes.remove(index);
+                    nextLane = index;
+                } else {
+                    nextLane = index + 1;
+                }
+                return analyzer;
+            }
+            wait();
+        }
+    }
+
+    public void release(FileAnalyzer analyzer) {
+        release(analyzer.getDevice());
+    }
+
+    // Device of a file read outside the queue, e.g. by the preview sampler
+    Device deviceOfFile(Path file) {
+        return deviceOf(file.toAbsolutePath().getParent());
+    }
+
+    // Waits for a reader slot on the device for a read outside the queue; release() frees it
+    synchronized void acquire(Device device) throws InterruptedException {
+        if (device == null) {
+            return;
+        }
+        while (device.readers >= device.limit) {
+            wait();
+        }
+        device.readers++;
+    }
+
+    synchronized void release(Device device) {
+        if (device != null) {
+            device.readers--;
+            notifyAll();
+        }
+    }
+
+    // Drops everything still queued for the session; the caller reports the
+    // dropped files as stopped, see FileQueue.stopRemaining()
+    synchronized List<FileQueue> removeAll(AnalysisSession session) {
+        List<FileQueue> removed = new ArrayList<>();
+        for (int i = lanes.size() - 1; i >= 0; i--) {
+            if (lanes.get(i).session == session) {
+                removed.addAll(lanes.remove(i).queues);
+            }
+        }
+        return removed;
+    }
+
+    private Lane findLane(AnalysisSession session) {
+        for (Lane lane : lanes) {
+            if (lane.session == session) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private Device deviceOf(Path directory) {
+        if (directory == null) {
+            return unknownDevice;
+        }
+        try {
+            FileStore store = Files.getFileStore(directory);
+            return devices.computeIfAbsent(store, s -> new Device(s.name() + " (" + s.type() + ")", readerLimit(s)));
+        } catch (IOException e) {
+            return unknownDevice;
+        }
+    }
+
+    private static int readerLimit(FileStore store) {
+        if (READERS_PER_DEVICE != null) {
+            return Math.max(1, READERS_PER_DEVICE);
+        }
+        if (NETWORK_TYPES.contains(store.type())) {
+            // Latency bound rather than seek bound, more requests in flight help
+            return Math.max(1, NETWORK_READERS);
+        }
+        if (isRotational(store)) {
+            return Math.max(1, ROTATIONAL_READERS);
+        }
+        // SSDs and anything we can't tell: only the adaptive global limit applies
+        return Integer.MAX_VALUE;
+    }
+
+    // Linux only: /sys/class/block/<dev>/queue/rotational, or the parent disk's for a partition
+    private static boolean isRotational(FileStore store) {
+        String name = store.name();
+        if (!name.startsWith("/dev/")) {
+            return false;
+        }
+        try {
+            Path device = Path.of(name).toRealPath();
+            Path block = Path.of("/sys/class/block", device.getFileName().toString()).toRealPath();
+            Path flag = block.resolve("queue/rotational");
+            if (!Files.exists(flag)) {
+                flag = block.getParent().resolve("queue/rotational");
+            }
+            return Files.exists(flag) && Files.readString(flag).trim().equals("1");
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static final class Device {
+        private final String name;
+        private final int limit;
+        private int readers;
+
+        Device(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+
+        @Override
+        public String toString() {
+            return name + ", reader limit: " + (limit == Integer.MAX_VALUE ? "none" : limit);
+        }
+    }
+
+    private static final class Lane {
+        final AnalysisSession session;
+        // One queue per device and run, served in turn
+        final List<FileQueue> queues = new ArrayList<>();
+        int nextQueue;
+
+        Lane(AnalysisSession session) {
+            this.session = session;
+        }
+
+        // Next file of the queues in turn whose device has a free reader slot, or null
+        FileAnalyzer poll() {
+            for (int i = 0; i < queues.size(); i++) {
+                int index = (nextQueue + i) % queues.size();
+                FileQueue queue = queues.get(index);
+                if (queue.device.readers >= queue.device.limit) {
+                    continue;
+                }
+                FileAnalyzer analyzer = queue.files.analyzer(queue.indexes[queue.head++]);
+                analyzer.setDevice(queue.device);
+                analyzer.queuedSince(queue.queuedAt);
+                if (queue.head == queue.indexes.length) {
+                    queues.remove(index);
+                    nextQueue = index;
+                } else {
+                    nextQueue = index + 1;
+                }
+                return analyzer;
+            }
+            return null;
+        }
+
+        boolean isEmpty() {
+            return queues.isEmpty();
+        }
+    }
+
+    // Files of one run on one device, in reading order
+    static final class FileQueue {
+        final RunFiles files;
+        final Device device;
+        final int[] indexes;
+        final long queuedAt;
+        int head;
+
+        FileQueue(RunFiles files, Device device, int[] indexes, long queuedAt) {
+            this.files = files;
+            this.device = device;
+            this.indexes = indexes;
+            this.queuedAt = queuedAt;
+        }
+
+        // Gives the files no reader took a STOPPED result, once removed from the scheduler
+        void stopRemaining() {
+            files.stopAll(indexes, head);
+        }
+    }
+
+    private static final class Directory {
+        final String name;
+        final Device device;
+
+        Directory(String name, Device device) {
+            this.name = name;
+            this.device = device;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package word_statistics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Counts word n-grams (2..n consecutive words, case-insensitive) as the
+// tokenizer emits words. N-grams are keyed by a 64-bit hash of their word
+// hashes in primitive open-addressing tables, so counting an occurrence
+// allocates nothing; a word's text is only kept the first time it is seen.
+//
+// The table holds at most maxEntries n-grams. When it is full it is pruned
+// Misra-Gries style: the median count is subtracted from every entry and the
+// ones that reach zero are dropped. Frequent n-grams survive, and their counts
+// are at most getMaxError() too low.
+public final class NGramCounter {
+
+    // -Dword_statistics.ngram.n, -Dword_statistics.ngram.maxEntries
+    public static final int DEFAULT_N = Math.max(2, Integer.getInteger("word_statistics.ngram.n", 3));
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("word_statistics.ngram.maxEntries", 1 << 18);
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final int maxN;
+    private final int maxEntries;
+
+    // Hashes of the last maxN words, oldest first
+    private final long[] window;
+    private int windowSize;
+    private char[] lowered = new char[64];
+
+    // N-gram key -> count, plus the word hashes each n-gram is made of
+    private long[] keys;
+    private long[] counts;
+    private long[] parts;
+    private byte[] lengths;
+    private int size;
+
+    // Word hash -> lower-cased text, for the words the table refers to
+    private long[] wordKeys;
+    private String[] words;
+    private int wordsSize;
+
+    private long maxError;
+
+    public NGramCounter(int maxN, int maxEntries) {
+        if (maxN < 2 || maxN > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("N-gram size must be between 2 and 127: " + maxN);
+        }
+        this.maxN = maxN;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.window = new long[maxN];
+        allocate(INITIAL_CAPACITY);
+        allocateWords(INITIAL_CAPACITY);
+    }
+
+    public int getMaxN() {
+        return maxN;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isApproximate() {
+        return maxError > 0;
+    }
+
+    public long getMaxError() {
+        return maxError;
+    }
+
+    // Next word of the text; counts every n-gram that ends with it
+    void addWord(char[] chars, int from, int length) {
+        if (lowered.length < length) {
+            lowered = new char[Math.max(length, lowered.length * 2)];
+        }
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            char c = chars[from + i];
+            c = c < 128 ? (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c) : Character.toLowerCase(c);
+            lowered[i] = c;
+            hash = (hash ^ c) * 0x100000001B3L;
+        }
+        hash = nonZero(mix(hash));
+        if (findWord(hash) < 0) {
+            putWord(hash, new String(lowered, 0, length));
+        }
+
+        if (windowSize == maxN) {
+            System.arraycopy(window, 1, window, 0, maxN - 1);
+            windowSize--;
+        }
+        window[windowSize++] = hash;
+
+        long key = hash;
+        for (int n = 2; n <= windowSize; n++) {
+            key = key * SEED + window[windowSize - n];
+            add(nonZero(mix(key ^ n)), 1, window, windowSize - n, n);
+        }
+    }
+
+    // Adds another counter's n-grams, each count multiplied by weight
+    public void merge(NGramCounter other, int weight) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.keys[slot] == 0) {
+                continue;
+            }
+            int n = other.lengths[slot];
+            int offset = slot * other.maxN;
+            for (int i = 0; i < n; i++) {
+                long wordHash = other.parts[offset + i];
+                if (findWord(wordHash) < 0) {
+                    putWord(wordHash, other.words[other.findWord(wordHash)]);
+                }
+            }
+            add(other.keys[slot], other.counts[slot] * weight, other.parts, offset, n);
+        }
+        maxError += other.maxError * weight;
+    }
+
+    // The k most frequent n-grams, most frequent first
+    public List<NGram> top(int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(
+                (a, b) -> Long.compare(counts[a], counts[b]));
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == 0) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(slot);
+            } else if (counts[slot] > counts[heap.peek()]) {
+                heap.poll();
+                heap.add(slot);
+            }
+        }
+
+        List<NGram> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int slot = heap.poll();
+            result.add(new NGram(text(slot), lengths[slot], counts[slot]));
+        }
+        result.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return result;
+    }
+
+    public void clear() {
+        windowSize = 0;
+        size = 0;
+        wordsSize = 0;
+        maxError = 0;
+        // Don't keep a large table around for the next, probably smaller, text
+        if (keys.length > INITIAL_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        } else {
+            Arrays.fill(keys, 0);
+        }
+        if (wordKeys.length > INITIAL_CAPACITY) {
+            allocateWords(INITIAL_CAPACITY);
+        } else {
+            Arrays.fill(wordKeys, 0);
+            Arrays.fill(words, null);
+        }
+    }
+
+    private void add(long key, long count, long[] wordHashes, int from, int n) {
+        int slot = slotOf(keys, key);
+        if (keys[slot] == key) {
+            counts[slot] += count;
+            return;
+        }
+
+        if (size >= maxEntries) {
+            prune(wordHashes, from, n);
+            slot = slotOf(keys, key);
+        } else if ((size + 1) * 2 > keys.length) {
+            grow(keys.length * 2);
+            slot = slotOf(keys, key);
+        }
+
+        keys[slot] = key;
+        counts[slot] = count;
+        System.arraycopy(wordHashes, from, parts, slot * maxN, n);
+        lengths[slot] = (byte) n;
+        size++;
+    }
+
+    // Keeps the words of the n-gram about to be added, and of the window
+    private void prune(long[] pendingWords, int from, int n) {
+        long[] live = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                live[count++] = counts[slot];
+            }
+        }
+        Arrays.sort(live, 0, count);
+        long threshold = Math.max(1, live[count / 2]);
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                counts[slot] -= threshold;
+            }
+        }
+        maxError += threshold;
+        grow(keys.length);
+
+        // Drop the text of words no remaining n-gram refers to
+        long[] oldWordKeys = wordKeys;
+        String[] oldWords = words;
+        allocateWords(wordKeys.length);
+        for (int slot = 0; slot < keys.length; slot++) {
+            for (int i = 0; i < lengths[slot] && keys[slot] != 0; i++) {
+                keepWord(parts[slot * maxN + i], oldWordKeys, oldWords);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            keepWord(pendingWords[from + i], oldWordKeys, oldWords);
+        }
+        for (int i = 0; i < windowSize; i++) {
+            keepWord(window[i], oldWordKeys, oldWords);
+        }
+    }
+
+    private void keepWord(long hash, long[] oldWordKeys, String[] oldWords) {
+        if (findWord(hash) < 0) {
+            putWord(hash, oldWords[slotOf(oldWordKeys, hash)]);
+        }
+    }
+
+    // Rehashes into a table of the given capacity, dropping entries whose count is no longer positive
+    private void grow(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldParts = parts;
+        byte[] oldLengths = lengths;
+        allocate(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] == 0 || oldCounts[slot] <= 0) {
+                continue;
+            }
+            int target = slotOf(keys, oldKeys[slot]);
+            keys[target] = oldKeys[slot];
+            counts[target] = oldCounts[slot];
+            System.arraycopy(oldParts, slot * maxN, parts, target * maxN, maxN);
+            lengths[target] = oldLengths[slot];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        parts = new long[capacity * maxN];
+        lengths = new byte[capacity];
+        size = 0;
+    }
+
+    private void allocateWords(int capacity) {
+        wordKeys = new long[capacity];
+        words = new String[capacity];
+        wordsSize = 0;
+    }
+
+    private int findWord(long hash) {
+        int slot = slotOf(wordKeys, hash);
+        return wordKeys[slot] == hash ? slot : -1;
+    }
+
+    private void putWord(long hash, String word) {
+        if ((wordsSize + 1) * 2 > wordKeys.length) {
+            long[] oldKeys = wordKeys;
+            String[] oldWords = words;
+            allocateWords(wordKeys.length * 2);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    int target = slotOf(wordKeys, oldKeys[slot]);
+                    wordKeys[target] = oldKeys[slot];
+                    words[target] = oldWords[slot];
+                    wordsSize++;
+                }
+            }
+        }
+        int slot = slotOf(wordKeys, hash);
+        wordKeys[slot] = hash;
+        words[slot] = word;
+        wordsSize++;
+    }
+
+    private String text(int slot) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lengths[slot]; i++) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(words[findWord(parts[slot * maxN + i])]);
+        }
+        return text.toString();
+    }
+
+    // Linear probing; returns the key's slot or the empty slot where it belongs
+    private static int slotOf(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = (int) key & mask;
+        while (table[slot] != 0 && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long nonZero(long h) {
+        return h == 0 ? 1 : h;
+    }
+
+    public static final class NGram {
+        private final String text;
+        private final int length;
+        private final long count;
+
+        NGram(String text, int length, long count) {
+            this.text = text;
+            this.length = length;
+            this.count = count;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return text + " (" + count + ")";
+        }
+    }
+}
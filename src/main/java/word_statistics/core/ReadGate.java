@@ -0,0 +1,14 @@
+package word_statistics.core;
+
+import java.nio.file.Path;
+
+// Wraps a read that happens outside the scan's read queue, such as the preview
+// sample or duplicate hashing; returns what to run after the read. In a session
+// it is FileSearchEngine.enterRead, which holds a read permit and a device slot
+// like a scan reader.
+interface ReadGate {
+    ReadGate OPEN = file -> () -> {
+    };
+
+    Runnable enter(Path file);
+}
@@ -0,0 +1,135 @@
+package word_statistics.core;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import word_statistics.model.DirectoryModel;
+
+// The files of one run as the read queue sees them, and what the run adds
+// their results to. A queued file is only its index into the listing; its
+// FileAnalyzer is built when a reader takes it, so a run of millions of files
+// holds no per-file objects beyond the listing's paths. Duplicates are chained
+// through one int per file.
+//
+// The index, frequencies and directory totals are the run's own, not read from
+// the session, so a file finishing after the next run started can't add to them.
+final class RunFiles {
+
+    private final AnalysisSession session;
+    private final FileResultLog run;
+    // Null when the run doesn't index or count frequencies
+    private final InvertedIndexBuilder indexBuilder;
+    private final WordFrequencyAggregator frequencies;
+    private final DirectoryModel directoryModel;
+    private final List<Path> files;
+    private final long[] inodes;
+    // canonical[i] is the file whose result file i reuses, i itself if none;
+    // null without deduplication
+    private final int[] canonical;
+    // nextDuplicate[i] is the next file after i reusing the same result, -1 at
+    // the end; a chain starts at its canonical file
+    private final int[] nextDuplicate;
+
+    RunFiles(AnalysisSession session, FileResultLog run, DirectoryListing listing, int[] canonical,
+            InvertedIndexBuilder indexBuilder, WordFrequencyAggregator frequencies, DirectoryModel directoryModel) {
+        this.session = session;
+        this.run = run;
+        this.indexBuilder = indexBuilder;
+        this.frequencies = frequencies;
+        this.directoryModel = directoryModel;
+        this.files = listing.getFiles();
+        this.inodes = listing.getInodes();
+        this.canonical = canonical;
+        this.nextDuplicate = canonical == null ? null : chain(canonical);
+    }
+
+    // Walks backwards, so each chain comes out in file order
+    private static int[] chain(int[] canonical) {
+        int[] next = new int[canonical.length];
+        Arrays.fill(next, -1);
+        for (int i = canonical.length - 1; i >= 0; i--) {
+            int owner = canonical[i];
+            if (owner != i) {
+                next[i] = next[owner];
+                next[owner] = i;
+            }
+        }
+        return next;
+    }
+
+    AnalysisSession getSession() {
+        return session;
+    }
+
+    FileResultLog getRun() {
+        return run;
+    }
+
+    InvertedIndexBuilder getIndexBuilder() {
+        return indexBuilder;
+    }
+
+    WordFrequencyAggregator getFrequencies() {
+        return frequencies;
+    }
+
+    DirectoryModel getDirectoryModel() {
+        return directoryModel;
+    }
+
+    Path getPath(int index) {
+        return files.get(index);
+    }
+
+    // From the listing's walk, 0 if unknown
+    long getInode(int index) {
+        return inodes[index];
+    }
+
+    // Files that are read themselves: all of them, or one per distinct content
+    int[] filesToRead() {
+        int count = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (canonical == null || canonical[i] == i) {
+                count++;
+            }
+        }
+        int[] indexes = new int[count];
+        int next = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (canonical == null || canonical[i] == i) {
+                indexes[next++] = i;
+            }
+        }
+        return indexes;
+    }
+
+    FileAnalyzer analyzer(int index) {
+        return new FileAnalyzer(this, index, duplicatesOf(index));
+    }
+
+    // Reports files no reader will read as stopped, from position 'from' of indexes on
+    void stopAll(int[] indexes, int from) {
+        for (int i = from; i < indexes.length; i++) {
+            analyzer(indexes[i]).handleStoppedFile();
+        }
+    }
+
+    // Files reusing this file's result, or null if there are none
+    private int[] duplicatesOf(int index) {
+        if (nextDuplicate == null || nextDuplicate[index] < 0) {
+            return null;
+        }
+        int count = 0;
+        for (int i = nextDuplicate[index]; i >= 0; i = nextDuplicate[i]) {
+            count++;
+        }
+        int[] duplicates = new int[count];
+        int next = 0;
+        for (int i = nextDuplicate[index]; i >= 0; i = nextDuplicate[i]) {
+            duplicates[next++] = i;
+        }
+        return duplicates;
+    }
+}
@@ -0,0 +1,288 @@
+package word_statistics.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.FileStatus;
+
+// Compact record of one completed run: the directory totals and every file's
+// counts, with the files sorted by directory and then name so that two
+// snapshots can be compared by a streaming merge (see SnapshotDiff).
+// The last KEEP snapshots of each analyzed directory are kept.
+//
+// [header] int MAGIC, int VERSION, string directory, long createdMillis,
+//          varint files, totalWords, isCount, areCount, youCount
+// [entries] byte DIRECTORY, string path, then for each of its files:
+//           byte FILE, string name, byte status, varint wordCount, isCount, areCount, youCount
+// [end] byte END
+// Strings are a varint UTF-8 length followed by the bytes.
+public final class RunSnapshot {
+
+    static final int MAGIC = 0x5753534E; // "WSSN"
+    private static final int VERSION = 1;
+    // -Dword_statistics.snapshots.keep, 0 turns snapshots off
+    private static final int KEEP = Integer.getInteger("word_statistics.snapshots.keep", 30);
+
+    private static final int END = 0;
+    private static final int DIRECTORY = 1;
+    private static final int FILE = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final FileStatus[] STATUSES = FileStatus.values();
+
+    private RunSnapshot() {
+    }
+
+    public static boolean isEnabled() {
+        return KEEP > 0;
+    }
+
+    // Kept next to the index files, outside the analyzed directory
+    public static Path snapshotDirectoryFor(String directoryPath) {
+        return DataDirectory.fileFor(directoryPath, "snapshots-", "");
+    }
+
+    // Snapshots of the directory, oldest first
+    public static List<Path> list(String directoryPath) throws IOException {
+        Path directory = snapshotDirectoryFor(directoryPath);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".snap"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // Writes a snapshot of a completed run and drops the oldest beyond KEEP
+    public static Path write(String directoryPath, DirectoryModel model, FileResultStore store) throws IOException {
+        Path directory = snapshotDirectoryFor(directoryPath);
+        Files.createDirectories(directory);
+        long created = System.currentTimeMillis();
+        // Fixed width, so the names sort by time
+        Path snapshot = directory.resolve(String.format("run-%015d.snap", created));
+        Path tempFile = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, directoryPath);
+            out.writeLong(created);
+            writeVarLong(out, store.size());
+            writeVarLong(out, model.totalWords.get());
+            writeVarLong(out, model.isCount.get());
+            writeVarLong(out, model.areCount.get());
+            writeVarLong(out, model.youCount.get());
+
+            String currentDirectory = null;
+            for (int index : store.pathOrder()) {
+                String fileDirectory = store.getDirectory(index);
+                if (!fileDirectory.equals(currentDirectory)) {
+                    out.write(DIRECTORY);
+                    writeString(out, fileDirectory);
+                    currentDirectory = fileDirectory;
+                }
+                out.write(FILE);
+                writeString(out, store.getName(index));
+                out.write(store.getStatus(index).ordinal());
+                writeVarLong(out, store.getWordCount(index));
+                writeVarLong(out, store.getIsCount(index));
+                writeVarLong(out, store.getAreCount(index));
+                writeVarLong(out, store.getYouCount(index));
+            }
+            out.write(END);
+        }
+        Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list(directoryPath);
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return snapshot;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    // Reads the header on open, then one file per next()
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream in;
+        private final String directory;
+        private final long createdMillis;
+        private final long fileCount;
+        private final long totalWords;
+        private final long isCount;
+        private final long areCount;
+        private final long youCount;
+
+        private String fileDirectory;
+        private String fileName;
+        private FileStatus status;
+        private long wordCount;
+        private long fileIsCount;
+        private long fileAreCount;
+        private long fileYouCount;
+
+        public Reader(Path snapshot) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a word statistics snapshot: " + snapshot);
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version " + version + ": " + snapshot);
+                }
+                this.directory = readString();
+                this.createdMillis = in.readLong();
+                this.fileCount = readVarLong();
+                this.totalWords = readVarLong();
+                this.isCount = readVarLong();
+                this.areCount = readVarLong();
+                this.youCount = readVarLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        public boolean next() throws IOException {
+            while (true) {
+                int tag = in.read();
+                if (tag == DIRECTORY) {
+                    fileDirectory = readString();
+                } else if (tag == FILE) {
+                    fileName = readString();
+                    int ordinal = in.read();
+                    status = ordinal >= 0 && ordinal < STATUSES.length ? STATUSES[ordinal] : FileStatus.ERROR;
+                    wordCount = readVarLong();
+                    fileIsCount = readVarLong();
+                    fileAreCount = readVarLong();
+                    fileYouCount = readVarLong();
+                    return true;
+                } else if (tag == END) {
+                    return false;
+                } else {
+                    throw new EOFException("Truncated snapshot");
+                }
+            }
+        }
+
+        // Orders entries the way they were written: by directory, then name
+        public int compareTo(Reader other) {
+            int byDirectory = fileDirectory.compareTo(other.fileDirectory);
+            return byDirectory != 0 ? byDirectory : fileName.compareTo(other.fileName);
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        public long getTotalWords() {
+            return totalWords;
+        }
+
+        public long getIsCount() {
+            return isCount;
+        }
+
+        public long getAreCount() {
+            return areCount;
+        }
+
+        public long getYouCount() {
+            return youCount;
+        }
+
+        public String getFileDirectory() {
+            return fileDirectory;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getFilePath() {
+            return fileDirectory.isEmpty() ? fileName : Path.of(fileDirectory, fileName).toString();
+        }
+
+        public FileStatus getStatus() {
+            return status;
+        }
+
+        public long getWordCount() {
+            return wordCount;
+        }
+
+        public long getFileIsCount() {
+            return fileIsCount;
+        }
+
+        public long getFileAreCount() {
+            return fileAreCount;
+        }
+
+        public long getFileYouCount() {
+            return fileYouCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[(int) readVarLong()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated snapshot");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+
+import word_statistics.model.Estimate;
+import word_statistics.model.FileModel;
+import word_statistics.model.FileStatus;
+
+// Preview mode: estimates a run's totals from a stratified random sample long
+// before the scan finishes, and converges to the exact totals as it does.
+//
+// Files are stratified by size (empty, up to 4 KB, 64 KB, 1 MB, 16 MB, larger)
+// and a sample of about SAMPLE_FILES is drawn, in proportion to each stratum's
+// bytes but at least two files per stratum. A sampler thread tokenizes the
+// sample with the scan's WordTokenizer: small files whole, big ones as
+// RANGES_PER_FILE ranges of RANGE_BYTES spread over the file and scaled up to
+// its size. Each stratum's words (and is/are/you) per byte then extrapolate
+// the bytes the scan hasn't done yet, added to the exact counts of the files
+// it has. The 95% confidence interval is that of a ratio estimator, plus the
+// spread between the ranges of the files that were only read in part.
+//
+// The sample and the ranges' offsets come from one seeded generator, so a seed
+// reproduces a run's estimates. Every read goes through a ReadGate, which in a
+// session holds the engine's read permit and device slot like a scan reader.
+class SampleEstimator {
+
+    // -Dword_statistics.preview.seed fixes the sample, e.g. to reproduce a run's estimates
+    static long seed() {
+        Long seed = Long.getLong("word_statistics.preview.seed");
+        return seed != null ? seed : System.nanoTime();
+    }
+
+    // -Dword_statistics.preview.sampleFiles
+    private static final int SAMPLE_FILES = Integer.getInteger("word_statistics.preview.sampleFiles", 256);
+    private static final int RANGE_BYTES = 64 * 1024;
+    private static final int RANGES_PER_FILE = 16;
+    // Smaller files are cheaper to read whole than to seek around in
+    private static final long RANGE_MIN_FILE_BYTES = 4L * RANGES_PER_FILE * RANGE_BYTES;
+    private static final int STRATA = 6;
+    private static final int COUNTS = 4;
+    private static final double Z_95 = 1.96;
+
+    private final List<Path> files;
+    private final long[] sizes;
+    private final ReadGate gate;
+    // Only used by the constructor and then the sampler thread
+    private final SplittableRandom random;
+    private final byte[] strata;
+    private final int[] stratumFiles = new int[STRATA];
+    private final long[] stratumBytes = new long[STRATA];
+    private final long totalBytes;
+
+    // What the scan finished so far
+    private final BitSet completed = new BitSet();
+    private final long[] completedStratumBytes = new long[STRATA];
+    private final long[] completedCounts = new long[COUNTS];
+    private long completedBytes;
+    private int completedFiles;
+
+    // Sample, in the order the sampler visits it, and each file's observed (or
+    // scaled up) counts with their variance when only ranges were read
+    private final int[] sample;
+    private final Map<Integer, Integer> sampleSlots = new HashMap<>();
+    private final boolean[] observed;
+    private final boolean[] observedExactly;
+    private final double[][] observedCounts;
+    private final double[][] observedVariances;
+    private int observations;
+
+    // sizes[i] is the size of files.get(i) when it was listed
+    SampleEstimator(List<Path> files, long[] sizes, long seed, ReadGate gate) {
+        this.files = files;
+        this.sizes = sizes;
+        this.gate = gate;
+        this.random = new SplittableRandom(seed);
+        this.strata = new byte[files.size()];
+        long bytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            strata[i] = (byte) stratumOf(sizes[i]);
+            stratumFiles[strata[i]]++;
+            stratumBytes[strata[i]] += sizes[i];
+            bytes += sizes[i];
+        }
+        this.totalBytes = bytes;
+
+        this.sample = drawSample();
+        for (int slot = 0; slot < sample.length; slot++) {
+            sampleSlots.put(sample[slot], slot);
+        }
+        this.observed = new boolean[sample.length];
+        this.observedExactly = new boolean[sample.length];
+        this.observedCounts = new double[sample.length][];
+        this.observedVariances = new double[sample.length][];
+    }
+
+    // Tokenizes the sample until done or cancelled, calling onObservation after each file
+    void sample(boolean unicode, BooleanSupplier cancelled, Runnable onObservation) {
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try {
+            for (int slot = 0; slot < sample.length && !cancelled.getAsBoolean(); slot++) {
+                synchronized (this) {
+                    if (observedExactly[slot]) {
+                        continue;
+                    }
+                }
+                int index = sample[slot];
+                double[] counts = new double[COUNTS];
+                double[] variances = new double[COUNTS];
+                try {
+                    boolean done = sizes[index] >= RANGE_MIN_FILE_BYTES
+                            ? tokenizeRanges(files.get(index), sizes[index], tokenizer, unicode, counts, variances)
+                            : tokenizeWhole(files.get(index), tokenizer, unicode, counts, cancelled);
+                    if (!done) {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    // Unreadable or not UTF-8: the scan won't count any words in it either
+                    counts = new double[COUNTS];
+                    variances = new double[COUNTS];
+                }
+                synchronized (this) {
+                    if (!observedExactly[slot]) {
+                        observe(slot, counts, variances);
+                    }
+                }
+                onObservation.run();
+            }
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+    }
+
+    // A file's final result from the scan; sampled files' observations become exact
+    synchronized void recordFile(int index, FileModel model) {
+        if (model.getStatus() != FileStatus.COMPLETED && model.getStatus() != FileStatus.ERROR) {
+            return;
+        }
+        if (completed.get(index)) {
+            return;
+        }
+        completed.set(index);
+        completedFiles++;
+        completedBytes += sizes[index];
+        completedStratumBytes[strata[index]] += sizes[index];
+
+        double[] counts = new double[COUNTS];
+        if (model.getStatus() == FileStatus.COMPLETED) {
+            counts[0] = model.getWordCount();
+            counts[1] = model.getIsCount();
+            counts[2] = model.getAreCount();
+            counts[3] = model.getYouCount();
+        }
+        for (int c = 0; c < COUNTS; c++) {
+            completedCounts[c] += (long) counts[c];
+        }
+
+        Integer slot = sampleSlots.get(index);
+        if (slot != null) {
+            observe(slot, counts, new double[COUNTS]);
+            observedExactly[slot] = true;
+        }
+    }
+
+    // Null until there are enough observations to say anything
+    synchronized Estimate estimate() {
+        double[] totals = new double[COUNTS];
+        double[] variances = new double[COUNTS];
+        for (int c = 0; c < COUNTS; c++) {
+            totals[c] = completedCounts[c];
+        }
+
+        // Sampled files the scan hasn't finished count as observed, only the
+        // rest is extrapolated: the unfinished files aren't a random subset
+        long[] unobserved = new long[STRATA];
+        for (int h = 0; h < STRATA; h++) {
+            unobserved[h] = stratumBytes[h] - completedStratumBytes[h];
+        }
+        for (int slot = 0; slot < sample.length; slot++) {
+            if (observed[slot] && !observedExactly[slot]) {
+                unobserved[strata[sample[slot]]] -= sizes[sample[slot]];
+                for (int c = 0; c < COUNTS; c++) {
+                    totals[c] += observedCounts[slot][c];
+                    variances[c] += observedVariances[slot][c];
+                }
+            }
+        }
+
+        RatioStats pooled = ratioStats(-1);
+        for (int h = 1; h < STRATA; h++) {
+            if (unobserved[h] <= 0) {
+                continue;
+            }
+            RatioStats stats = ratioStats(h);
+            if (stats.observations < 2) {
+                // Too few of this size seen yet, borrow the whole sample's ratio
+                if (pooled.observations < 2) {
+                    return null;
+                }
+                stats = pooled;
+            }
+            for (int c = 0; c < COUNTS; c++) {
+                totals[c] += unobserved[h] * stats.ratios[c];
+                variances[c] += (double) unobserved[h] * unobserved[h] * stats.ratioVariances[c];
+            }
+        }
+
+        long[] counts = new long[COUNTS];
+        long[] margins = new long[COUNTS];
+        for (int c = 0; c < COUNTS; c++) {
+            counts[c] = Math.round(totals[c]);
+            margins[c] = Math.round(Z_95 * Math.sqrt(variances[c]));
+        }
+        return new Estimate(counts, margins, observations, completedFiles, files.size(), completedBytes,
+                totalBytes);
+    }
+
+    private void observe(int slot, double[] counts, double[] variances) {
+        if (!observed[slot]) {
+            observed[slot] = true;
+            observations++;
+        }
+        observedCounts[slot] = counts;
+        observedVariances[slot] = variances;
+    }
+
+    // Counts per byte over the observed files of stratum h, or all of them for -1
+    private RatioStats ratioStats(int h) {
+        RatioStats stats = new RatioStats();
+        double bytes = 0;
+        double[] counts = new double[COUNTS];
+        double[] measurementVariances = new double[COUNTS];
+        for (int slot = 0; slot < sample.length; slot++) {
+            if (!isObserved(slot, h)) {
+                continue;
+            }
+            stats.observations++;
+            bytes += sizes[sample[slot]];
+            for (int c = 0; c < COUNTS; c++) {
+                counts[c] += observedCounts[slot][c];
+                measurementVariances[c] += observedVariances[slot][c];
+            }
+        }
+        int n = stats.observations;
+        if (n == 0 || bytes == 0) {
+            return stats;
+        }
+        for (int c = 0; c < COUNTS; c++) {
+            stats.ratios[c] = counts[c] / bytes;
+            // Files read in ranges add their own uncertainty, which sampling more files doesn't remove
+            stats.ratioVariances[c] = measurementVariances[c] / (bytes * bytes);
+        }
+        if (n < 2) {
+            return stats;
+        }
+
+        double[] squaredResiduals = new double[COUNTS];
+        for (int slot = 0; slot < sample.length; slot++) {
+            if (!isObserved(slot, h)) {
+                continue;
+            }
+            for (int c = 0; c < COUNTS; c++) {
+                double residual = observedCounts[slot][c] - stats.ratios[c] * sizes[sample[slot]];
+                squaredResiduals[c] += residual * residual;
+            }
+        }
+        double meanBytes = bytes / n;
+        int population = h >= 0 ? stratumFiles[h] : files.size() - stratumFiles[0];
+        double finitePopulation = Math.max(0, 1 - (double) n / Math.max(n, population));
+        for (int c = 0; c < COUNTS; c++) {
+            stats.ratioVariances[c] += finitePopulation * squaredResiduals[c] / (n - 1) / (n * meanBytes * meanBytes);
+        }
+        return stats;
+    }
+
+    private boolean isObserved(int slot, int h) {
+        return observed[slot] && (h < 0 || strata[sample[slot]] == h);
+    }
+
+    // Returns false if cancelled. Small files are read and tokenized under one gate entry
+    private boolean tokenizeWhole(Path file, WordTokenizer tokenizer, boolean unicode, double[] counts,
+            BooleanSupplier cancelled) throws IOException {
+        tokenizer.reset();
+        tokenizer.setUnicode(unicode);
+        Runnable exit = gate.enter(file);
+        try {
+            if (!tokenizer.tokenize(file, cancelled)) {
+                return false;
+            }
+        } finally {
+            exit.run();
+        }
+        counts[0] = tokenizer.getWordCount();
+        counts[1] = tokenizer.getIsCount();
+        counts[2] = tokenizer.getAreCount();
+        counts[3] = tokenizer.getYouCount();
+        return true;
+    }
+
+    // Systematic sample of ranges with a random start, each trimmed to whole words
+    // (ASCII delimiters never occur inside a UTF-8 sequence). The counts are
+    // scaled to the whole file, variances from the spread between the ranges.
+    private boolean tokenizeRanges(Path file, long size, WordTokenizer tokenizer, boolean unicode,
+            double[] counts, double[] variances) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RANGE_BYTES);
+        double start = random.nextDouble();
+        long[] rangeBytes = new long[RANGES_PER_FILE];
+        long[][] rangeCounts = new long[RANGES_PER_FILE][COUNTS];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int r = 0; r < RANGES_PER_FILE; r++) {
+                long offset = Math.min(size - RANGE_BYTES, (long) ((r + start) * size / RANGES_PER_FILE));
+                buffer.clear();
+                Runnable exit = gate.enter(file);
+                try {
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, offset + buffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                } finally {
+                    exit.run();
+                }
+                buffer.flip();
+
+                int from = 0;
+                if (offset > 0) {
+                    while (from < buffer.limit() && !isDelimiter(buffer.get(from))) {
+                        from++;
+                    }
+                }
+                int to = buffer.limit();
+                if (offset + to < size) {
+                    while (to > from && !isDelimiter(buffer.get(to - 1))) {
+                        to--;
+                    }
+                }
+                if (to <= from) {
+                    // Inside a token longer than the range: bytes without a word boundary
+                    rangeBytes[r] = buffer.limit();
+                    continue;
+                }
+
+                tokenizer.reset();
+                tokenizer.setUnicode(unicode);
+                tokenizer.beginBytes();
+                tokenizer.feedBytes(buffer.slice(from, to - from));
+                tokenizer.endBytes();
+                rangeBytes[r] = to - from;
+                rangeCounts[r][0] = tokenizer.getWordCount();
+                rangeCounts[r][1] = tokenizer.getIsCount();
+                rangeCounts[r][2] = tokenizer.getAreCount();
+                rangeCounts[r][3] = tokenizer.getYouCount();
+            }
+        }
+
+        long sampled = 0;
+        for (long bytes : rangeBytes) {
+            sampled += bytes;
+        }
+        if (sampled == 0) {
+            // Truncated since it was listed
+            return true;
+        }
+        double meanBytes = (double) sampled / RANGES_PER_FILE;
+        for (int c = 0; c < COUNTS; c++) {
+            long total = 0;
+            for (long[] range : rangeCounts) {
+                total += range[c];
+            }
+            double ratio = (double) total / sampled;
+            double squaredResiduals = 0;
+            for (int r = 0; r < RANGES_PER_FILE; r++) {
+                double residual = rangeCounts[r][c] - ratio * rangeBytes[r];
+                squaredResiduals += residual * residual;
+            }
+            double ratioVariance = squaredResiduals / (RANGES_PER_FILE - 1)
+                    / (RANGES_PER_FILE * meanBytes * meanBytes);
+            counts[c] = ratio * size;
+            variances[c] = ratioVariance * size * size;
+        }
+        return true;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b >= 0 && WordTokenizer.isDelimiter((char) b);
+    }
+
+    // Allocates the sample to strata by bytes, at least two files each, and
+    // orders it round-robin over the strata so every size is seen early
+    private int[] drawSample() {
+        int[][] members = new int[STRATA][];
+        int[] filled = new int[STRATA];
+        for (int h = 0; h < STRATA; h++) {
+            members[h] = new int[stratumFiles[h]];
+        }
+        for (int i = 0; i < strata.length; i++) {
+            members[strata[i]][filled[strata[i]]++] = i;
+        }
+
+        int[] allocation = new int[STRATA];
+        int sampleSize = 0;
+        for (int h = 1; h < STRATA; h++) {
+            if (stratumFiles[h] == 0) {
+                continue;
+            }
+            long proportional = totalBytes == 0 ? 0 : Math.round((double) SAMPLE_FILES * stratumBytes[h] / totalBytes);
+            allocation[h] = (int) Math.min(stratumFiles[h], Math.max(2, proportional));
+            sampleSize += allocation[h];
+            // Partial Fisher-Yates: the first allocation[h] members are the sample
+            for (int k = 0; k < allocation[h]; k++) {
+                int pick = k + random.nextInt(members[h].length - k);
+                int swap = members[h][k];
+                members[h][k] = members[h][pick];
+                members[h][pick] = swap;
+            }
+        }
+
+        List<Integer> order = new ArrayList<>(sampleSize);
+        for (int k = 0; order.size() < sampleSize; k++) {
+            for (int h = 1; h < STRATA; h++) {
+                if (k < allocation[h]) {
+                    order.add(members[h][k]);
+                }
+            }
+        }
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int stratumOf(long size) {
+        if (size == 0) {
+            return 0;
+        }
+        long limit = 4 * 1024;
+        for (int h = 1; h < STRATA - 1; h++, limit <<= 4) {
+            if (size <= limit) {
+                return h;
+            }
+        }
+        return STRATA - 1;
+    }
+
+    private static final class RatioStats {
+        int observations;
+        final double[] ratios = new double[COUNTS];
+        final double[] ratioVariances = new double[COUNTS];
+    }
+}
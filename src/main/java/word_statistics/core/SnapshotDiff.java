@@ -0,0 +1,333 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import word_statistics.model.FileStatus;
+
+// Compares two RunSnapshots by merging their sorted entries, so only the
+// current entry of each is in memory whatever the number of files. Changes
+// are reported to a Listener as they are found: files added, removed or with
+// different counts or status, and directories whose own files' totals moved.
+public final class SnapshotDiff {
+
+    public enum ChangeType {
+        ADDED, REMOVED, CHANGED
+    }
+
+    public interface Listener {
+        void fileChanged(FileChange change);
+
+        void directoryChanged(DirectoryChange change);
+    }
+
+    private SnapshotDiff() {
+    }
+
+    // Keeps at most maxListed file and directory changes, but counts all of them
+    public static Summary compare(Path older, Path newer, int maxListed) throws IOException {
+        Summary summary = new Summary(maxListed);
+        compare(older, newer, summary);
+        return summary;
+    }
+
+    public static void compare(Path older, Path newer, Listener listener) throws IOException {
+        try (RunSnapshot.Reader before = new RunSnapshot.Reader(older);
+                RunSnapshot.Reader after = new RunSnapshot.Reader(newer)) {
+            if (listener instanceof Summary summary) {
+                summary.begin(before, after);
+            }
+
+            DirectoryTotals directory = null;
+            boolean hasBefore = before.next();
+            boolean hasAfter = after.next();
+            while (hasBefore || hasAfter) {
+                int order = !hasBefore ? 1 : !hasAfter ? -1 : before.compareTo(after);
+                String fileDirectory = order <= 0 ? before.getFileDirectory() : after.getFileDirectory();
+                if (directory == null || !directory.path.equals(fileDirectory)) {
+                    if (directory != null) {
+                        directory.report(listener);
+                    }
+                    directory = new DirectoryTotals(fileDirectory);
+                }
+
+                if (order < 0) {
+                    directory.addBefore(before);
+                    listener.fileChanged(new FileChange(ChangeType.REMOVED, before.getFilePath(),
+                            before.getStatus(), before.getWordCount(), null, 0));
+                    hasBefore = before.next();
+                } else if (order > 0) {
+                    directory.addAfter(after);
+                    listener.fileChanged(new FileChange(ChangeType.ADDED, after.getFilePath(),
+                            null, 0, after.getStatus(), after.getWordCount()));
+                    hasAfter = after.next();
+                } else {
+                    directory.addBefore(before);
+                    directory.addAfter(after);
+                    if (before.getStatus() != after.getStatus()
+                            || before.getWordCount() != after.getWordCount()
+                            || before.getFileIsCount() != after.getFileIsCount()
+                            || before.getFileAreCount() != after.getFileAreCount()
+                            || before.getFileYouCount() != after.getFileYouCount()) {
+                        listener.fileChanged(new FileChange(ChangeType.CHANGED, after.getFilePath(),
+                                before.getStatus(), before.getWordCount(), after.getStatus(), after.getWordCount()));
+                    } else if (listener instanceof Summary summary) {
+                        summary.unchanged++;
+                    }
+                    hasBefore = before.next();
+                    hasAfter = after.next();
+                }
+            }
+            if (directory != null) {
+                directory.report(listener);
+            }
+        }
+    }
+
+    public static final class FileChange {
+        private final ChangeType type;
+        private final String path;
+        private final FileStatus oldStatus;
+        private final long oldWords;
+        private final FileStatus newStatus;
+        private final long newWords;
+
+        FileChange(ChangeType type, String path, FileStatus oldStatus, long oldWords,
+                FileStatus newStatus, long newWords) {
+            this.type = type;
+            this.path = path;
+            this.oldStatus = oldStatus;
+            this.oldWords = oldWords;
+            this.newStatus = newStatus;
+            this.newWords = newWords;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        // Null for an added file
+        public FileStatus getOldStatus() {
+            return oldStatus;
+        }
+
+        public long getOldWords() {
+            return oldWords;
+        }
+
+        // Null for a removed file
+        public FileStatus getNewStatus() {
+            return newStatus;
+        }
+
+        public long getNewWords() {
+            return newWords;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case ADDED:
+                    return "+ " + path + "  (" + newWords + " words)";
+                case REMOVED:
+                    return "- " + path + "  (" + oldWords + " words)";
+                default:
+                    String status = oldStatus == newStatus ? "" : "  " + oldStatus + " -> " + newStatus;
+                    return "~ " + path + "  words " + oldWords + " -> " + newWords
+                            + " (" + signed(newWords - oldWords) + ")" + status;
+            }
+        }
+    }
+
+    // Totals of the files directly in one directory, before and after
+    public static final class DirectoryChange {
+        private final String path;
+        private final long oldFiles;
+        private final long newFiles;
+        private final long oldWords;
+        private final long newWords;
+
+        DirectoryChange(String path, long oldFiles, long newFiles, long oldWords, long newWords) {
+            this.path = path;
+            this.oldFiles = oldFiles;
+            this.newFiles = newFiles;
+            this.oldWords = oldWords;
+            this.newWords = newWords;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getOldFiles() {
+            return oldFiles;
+        }
+
+        public long getNewFiles() {
+            return newFiles;
+        }
+
+        public long getOldWords() {
+            return oldWords;
+        }
+
+        public long getNewWords() {
+            return newWords;
+        }
+
+        @Override
+        public String toString() {
+            return path + "  files " + oldFiles + " -> " + newFiles
+                    + ", words " + oldWords + " -> " + newWords + " (" + signed(newWords - oldWords) + ")";
+        }
+    }
+
+    // Counts every change and keeps the first maxListed of each kind, e.g. for the UI
+    public static final class Summary implements Listener {
+        private final int maxListed;
+        private final List<FileChange> fileChanges = new ArrayList<>();
+        private final List<DirectoryChange> directoryChanges = new ArrayList<>();
+        private long added;
+        private long removed;
+        private long changed;
+        private long unchanged;
+        private long changedDirectories;
+
+        private long oldCreatedMillis;
+        private long newCreatedMillis;
+        private long oldFiles;
+        private long newFiles;
+        private long oldTotalWords;
+        private long newTotalWords;
+
+        public Summary(int maxListed) {
+            this.maxListed = maxListed;
+        }
+
+        void begin(RunSnapshot.Reader before, RunSnapshot.Reader after) {
+            oldCreatedMillis = before.getCreatedMillis();
+            newCreatedMillis = after.getCreatedMillis();
+            oldFiles = before.getFileCount();
+            newFiles = after.getFileCount();
+            oldTotalWords = before.getTotalWords();
+            newTotalWords = after.getTotalWords();
+        }
+
+        @Override
+        public void fileChanged(FileChange change) {
+            switch (change.getType()) {
+                case ADDED -> added++;
+                case REMOVED -> removed++;
+                case CHANGED -> changed++;
+            }
+            if (fileChanges.size() < maxListed) {
+                fileChanges.add(change);
+            }
+        }
+
+        @Override
+        public void directoryChanged(DirectoryChange change) {
+            changedDirectories++;
+            if (directoryChanges.size() < maxListed) {
+                directoryChanges.add(change);
+            }
+        }
+
+        public List<FileChange> getFileChanges() {
+            return fileChanges;
+        }
+
+        public List<DirectoryChange> getDirectoryChanges() {
+            return directoryChanges;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getRemoved() {
+            return removed;
+        }
+
+        public long getChanged() {
+            return changed;
+        }
+
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        public long getChangedDirectories() {
+            return changedDirectories;
+        }
+
+        public long getOldCreatedMillis() {
+            return oldCreatedMillis;
+        }
+
+        public long getNewCreatedMillis() {
+            return newCreatedMillis;
+        }
+
+        public long getOldFiles() {
+            return oldFiles;
+        }
+
+        public long getNewFiles() {
+            return newFiles;
+        }
+
+        public long getOldTotalWords() {
+            return oldTotalWords;
+        }
+
+        public long getNewTotalWords() {
+            return newTotalWords;
+        }
+
+        @Override
+        public String toString() {
+            return added + " added, " + removed + " removed, " + changed + " changed, " + unchanged
+                    + " unchanged; files " + oldFiles + " -> " + newFiles + ", words " + oldTotalWords + " -> "
+                    + newTotalWords + " (" + signed(newTotalWords - oldTotalWords) + ")";
+        }
+    }
+
+    private static final class DirectoryTotals {
+        final String path;
+        long oldFiles;
+        long newFiles;
+        long oldWords;
+        long newWords;
+
+        DirectoryTotals(String path) {
+            this.path = path;
+        }
+
+        void addBefore(RunSnapshot.Reader before) {
+            oldFiles++;
+            oldWords += before.getWordCount();
+        }
+
+        void addAfter(RunSnapshot.Reader after) {
+            newFiles++;
+            newWords += after.getWordCount();
+        }
+
+        void report(Listener listener) {
+            if (oldFiles != newFiles || oldWords != newWords) {
+                listener.directoryChanged(new DirectoryChange(path, oldFiles, newFiles, oldWords, newWords));
+            }
+        }
+    }
+
+    private static String signed(long delta) {
+        return delta > 0 ? "+" + delta : String.valueOf(delta);
+    }
+}
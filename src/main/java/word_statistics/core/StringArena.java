@@ -0,0 +1,72 @@
+package word_statistics.core;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only off-heap UTF-8 strings. A reference is (page << 32 | offset) and
+// points at an int byte length followed by the bytes. Strings that repeat a
+// lot (directories, common words) can be interned so they are stored once.
+final class StringArena {
+
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final int MAX_INTERNED = 1 << 16;
+
+    private final Arena arena;
+    private final ConcurrentHashMap<String, Long> interned = new ConcurrentHashMap<>();
+
+    // Replaced (never modified) when a page is added, so readers need no lock
+    private volatile MemorySegment[] pages = new MemorySegment[0];
+    private MemorySegment current;
+    private long position;
+
+    StringArena(Arena arena) {
+        this.arena = arena;
+    }
+
+    synchronized long add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long size = Integer.BYTES + bytes.length;
+
+        if (current == null || position + size > current.byteSize()) {
+            // Oversized strings get a page of their own
+            current = arena.allocate(Math.max(PAGE_SIZE, size), Integer.BYTES);
+            position = 0;
+            MemorySegment[] grown = Arrays.copyOf(pages, pages.length + 1);
+            grown[grown.length - 1] = current;
+            pages = grown;
+        }
+
+        long ref = ((long) (pages.length - 1) << 32) | position;
+        current.set(ValueLayout.JAVA_INT_UNALIGNED, position, bytes.length);
+        MemorySegment.copy(bytes, 0, current, ValueLayout.JAVA_BYTE, position + Integer.BYTES, bytes.length);
+
+        // Keep the next entry's length field int-aligned
+        position += (size + Integer.BYTES - 1) & -Integer.BYTES;
+        return ref;
+    }
+
+    // Stored once while the intern table has room, then like add()
+    long intern(String value) {
+        Long ref = interned.get(value);
+        if (ref != null) {
+            return ref;
+        }
+        if (interned.size() >= MAX_INTERNED) {
+            return add(value);
+        }
+        return interned.computeIfAbsent(value, this::add);
+    }
+
+    String get(long ref) {
+        MemorySegment page = pages[(int) (ref >>> 32)];
+        long offset = ref & 0xFFFFFFFFL;
+        int length = page.get(ValueLayout.JAVA_INT_UNALIGNED, offset);
+        byte[] bytes = new byte[length];
+        MemorySegment.copy(page, ValueLayout.JAVA_BYTE, offset + Integer.BYTES, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Runs the tokenizer hot loop over a bundled corpus in the background at
+// start-up, so the JIT has compiled it before the first real scan.
+// Disable with -Dword_statistics.warmup=false.
+public class TokenizerWarmup implements Runnable {
+
+    private static final int ITERATIONS = 20_000;
+
+    public static void startInBackground() {
+        if (!Boolean.parseBoolean(System.getProperty("word_statistics.warmup", "true"))) {
+            return;
+        }
+        Thread warmupThread = new Thread(new TokenizerWarmup());
+        warmupThread.setName("TokenizerWarmup");
+        warmupThread.setDaemon(true);
+        warmupThread.setPriority(Thread.MIN_PRIORITY);
+        warmupThread.start();
+    }
+
+    @Override
+    public void run() {
+        char[] corpus;
+        try (InputStream in = TokenizerWarmup.class.getResourceAsStream("/word_statistics/warmup.txt")) {
+            if (in == null) {
+                return;
+            }
+            corpus = new String(in.readAllBytes(), StandardCharsets.UTF_8).toCharArray();
+        } catch (IOException e) {
+            System.err.println("Cannot load warm-up corpus: " + e.getMessage());
+            return;
+        }
+
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                tokenizer.reset();
+                // Half of the passes through the Unicode mode's loop
+                tokenizer.setUnicode((i & 1) == 1);
+                tokenizer.feed(corpus, 0, corpus.length);
+                tokenizer.finish();
+                tokenizer.getLongestWord();
+                tokenizer.getShortestWord();
+            }
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package word_statistics.core;
+
+// Character classes and case folding for the Unicode tokenizer mode,
+// precomputed for the whole BMP so the hot loop is one array load per char
+// instead of Character.getType() and Character.toLowerCase() calls.
+//
+// Word characters are letters, combining marks, digits and other numbers, plus
+// ZWNJ/ZWJ which join Persian and Indic words. Han ideographs and Hiragana are
+// words of one character each, as in the Unicode word-break rules, since those
+// scripts don't separate words with spaces. Everything else (spaces,
+// punctuation, symbols, controls) is a delimiter.
+final class UnicodeWordTable {
+
+    static final byte DELIMITER = 0;
+    static final byte WORD = 1;
+    static final byte IDEOGRAPH = 2;
+    static final byte HIGH_SURROGATE = 3;
+
+    static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+    // Character.toLowerCase, which unlike String.toLowerCase() ignores the default locale
+    static final char[] FOLDED = new char[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            CLASSES[c] = Character.isHighSurrogate((char) c) ? HIGH_SURROGATE : classify(c);
+            FOLDED[c] = Character.toLowerCase((char) c);
+        }
+    }
+
+    private UnicodeWordTable() {
+    }
+
+    // Class of any code point; the tables hold the result for the BMP
+    static byte classify(int codePoint) {
+        if (Character.isIdeographic(codePoint)
+                || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HIRAGANA) {
+            return Character.isLetter(codePoint) ? IDEOGRAPH : DELIMITER;
+        }
+        switch (Character.getType(codePoint)) {
+            case Character.UPPERCASE_LETTER:
+            case Character.LOWERCASE_LETTER:
+            case Character.TITLECASE_LETTER:
+            case Character.MODIFIER_LETTER:
+            case Character.OTHER_LETTER:
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.DECIMAL_DIGIT_NUMBER:
+            case Character.LETTER_NUMBER:
+            case Character.OTHER_NUMBER:
+                return WORD;
+            default:
+                return codePoint == 0x200C || codePoint == 0x200D ? WORD : DELIMITER;
+        }
+    }
+
+    static byte classOf(int codePoint) {
+        return codePoint <= Character.MAX_VALUE ? CLASSES[codePoint] : classify(codePoint);
+    }
+
+    // Lower-cases chars[from, from + length) into target, which must be large enough
+    static void fold(char[] chars, int from, int length, char[] target) {
+        for (int i = 0; i < length; i++) {
+            target[i] = FOLDED[chars[from + i]];
+        }
+    }
+
+    static String fold(String text) {
+        char[] folded = new char[text.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = FOLDED[text.charAt(i)];
+        }
+        return new String(folded);
+    }
+}
@@ -0,0 +1,58 @@
+package word_statistics.core;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD word-boundary scan for WordTokenizer. Classifies a whole vector of
+// chars as delimiter / word at once and walks the set bits of the mask, so
+// runs of word chars are copied in bulk instead of char by char.
+// Only loaded when jdk.incubator.vector is present; see WordTokenizer.SIMD.
+final class VectorWordScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private VectorWordScanner() {
+    }
+
+    static boolean isUsable() {
+        // Masks are read back as a long, and a 1-lane species is no faster than scalar
+        return LANES > 1 && LANES <= Long.SIZE;
+    }
+
+    static void feed(WordTokenizer tokenizer, char[] chars, int from, int to) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += LANES) {
+            ShortVector block = ShortVector.fromCharArray(SPECIES, chars, i);
+            long delimiters = delimiterMask(block).toLong();
+
+            int start = 0;
+            while (delimiters != 0) {
+                int delimiter = Long.numberOfTrailingZeros(delimiters);
+                tokenizer.endWord(chars, i + start, delimiter - start);
+                start = delimiter + 1;
+                delimiters &= delimiters - 1;
+            }
+            tokenizer.appendWord(chars, i + start, LANES - start);
+        }
+        tokenizer.feedScalar(chars, i, to);
+    }
+
+    // Same set as WordTokenizer.DELIMITERS: \t..\r, ' '..'/', ':'..'@', '['..'`', '{'..'~'.
+    // Chars above 0x7FFF are negative as shorts and fall outside every range.
+    private static VectorMask<Short> delimiterMask(ShortVector block) {
+        return inRange(block, 9, 13)
+                .or(inRange(block, 32, 47))
+                .or(inRange(block, 58, 64))
+                .or(inRange(block, 91, 96))
+                .or(inRange(block, 123, 126));
+    }
+
+    private static VectorMask<Short> inRange(ShortVector block, int low, int high) {
+        return block.compare(VectorOperators.GE, (short) low)
+                .and(block.compare(VectorOperators.LE, (short) high));
+    }
+}
@@ -0,0 +1,396 @@
+package word_statistics.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import word_statistics.model.WordFrequency;
+
+// Exact directory-wide word frequencies in a fixed amount of heap. Each worker
+// thread adds files to its own partial table; when that table reaches its
+// share of the budget it is sorted and spilled to a run file. At the end every
+// run is combined by a streaming k-way merge that only holds one buffered
+// reader per run and the current top-K.
+//
+// Run file: per term, in String order: varint UTF-8 length, bytes, varint count
+public class WordFrequencyAggregator {
+
+    // -Dword_statistics.frequencies.budgetMB, shared by all partial tables of a run
+    public static final long DEFAULT_BUDGET_BYTES =
+            Long.getLong("word_statistics.frequencies.budgetMB", 64) * 1024 * 1024;
+
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Rough heap cost of a HashMap entry with a String key and a long[1] value
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long partialBudget;
+    private final Map<Thread, Partial> partials = new ConcurrentHashMap<>();
+    private final List<Path> runs = new CopyOnWriteArrayList<>();
+    private Path runDirectory;
+    private volatile boolean discarded;
+
+    public WordFrequencyAggregator(long budgetBytes, int workers) {
+        this.partialBudget = Math.max(1024 * 1024, budgetBytes / Math.max(1, workers));
+    }
+
+    // Adds one file's term counts, multiplied by the number of identical copies
+    public void add(Map<String, int[]> termFrequencies, int copies) {
+        if (discarded) {
+            return;
+        }
+        Partial partial = partials.computeIfAbsent(Thread.currentThread(), t -> new Partial());
+        for (Map.Entry<String, int[]> entry : termFrequencies.entrySet()) {
+            partial.add(entry.getKey(), (long) entry.getValue()[0] * copies);
+        }
+        if (partial.bytes >= partialBudget) {
+            try {
+                spill(partial);
+            } catch (IOException e) {
+                // Keeping the table would grow it past the budget, and dropping it would make the counts wrong
+                System.err.println("Error spilling word frequencies, not counting them - " + e.getMessage());
+                discard();
+            }
+        }
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    // Called once every file was added. Merges the spilled runs with what is
+    // still in memory and returns the totals and the topK most frequent words.
+    public Result merge(int topK) throws IOException {
+        if (discarded) {
+            throw new IOException("Word frequencies were discarded");
+        }
+        try {
+            List<Cursor> cursors = new ArrayList<>();
+            for (Partial partial : partials.values()) {
+                if (!partial.counts.isEmpty()) {
+                    cursors.add(new MemoryCursor(partial.counts));
+                }
+            }
+            partials.clear();
+
+            // Reduce to one merge pass that keeps at most MAX_FAN_IN files open
+            List<Path> pending = new ArrayList<>(runs);
+            while (pending.size() > 1 && pending.size() + cursors.size() > MAX_FAN_IN) {
+                List<Path> group = new ArrayList<>(pending.subList(0, Math.min(MAX_FAN_IN, pending.size())));
+                pending.subList(0, group.size()).clear();
+                pending.add(mergeRuns(group));
+            }
+
+            for (Path run : pending) {
+                cursors.add(new RunCursor(run));
+            }
+            Result result = new Result(topK);
+            try {
+                mergeCursors(cursors, result::accept);
+            } finally {
+                for (Cursor cursor : cursors) {
+                    cursor.close();
+                }
+            }
+            return result;
+        } finally {
+            deleteRuns();
+        }
+    }
+
+    // Drops everything, e.g. when the run is stopped
+    public void discard() {
+        discarded = true;
+        partials.clear();
+        deleteRuns();
+    }
+
+    private void spill(Partial partial) throws IOException {
+        Path run = newRunFile();
+        try (RunWriter writer = new RunWriter(run)) {
+            String[] terms = partial.counts.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            for (String term : terms) {
+                writer.write(term, partial.counts.get(term)[0]);
+            }
+        }
+        partial.clear();
+        runs.add(run);
+        if (discarded) {
+            deleteRuns();
+        }
+    }
+
+    private Path mergeRuns(List<Path> group) throws IOException {
+        Path merged = newRunFile();
+        List<Cursor> cursors = new ArrayList<>();
+        try (RunWriter writer = new RunWriter(merged)) {
+            for (Path run : group) {
+                cursors.add(new RunCursor(run));
+            }
+            mergeCursors(cursors, writer::write);
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        for (Path run : group) {
+            Files.deleteIfExists(run);
+        }
+        return merged;
+    }
+
+    // Streams every distinct term once, in order, with its summed count
+    private static void mergeCursors(List<Cursor> cursors, TermSink sink) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing(Cursor::term));
+        for (Cursor cursor : cursors) {
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Cursor first = queue.poll();
+            String term = first.term();
+            long count = first.count();
+            if (first.next()) {
+                queue.add(first);
+            }
+            while (!queue.isEmpty() && queue.peek().term().equals(term)) {
+                Cursor same = queue.poll();
+                count += same.count();
+                if (same.next()) {
+                    queue.add(same);
+                }
+            }
+            sink.accept(term, count);
+        }
+    }
+
+    private synchronized Path newRunFile() throws IOException {
+        if (runDirectory == null) {
+            runDirectory = Files.createTempDirectory("word_statistics-runs-");
+        }
+        return Files.createTempFile(runDirectory, "run-", ".bin");
+    }
+
+    private synchronized void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                System.err.println("Cannot delete run file: " + run + " - " + e.getMessage());
+            }
+        }
+        runs.clear();
+        if (runDirectory != null) {
+            try (Stream<Path> leftovers = Files.list(runDirectory)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+                Files.deleteIfExists(runDirectory);
+            } catch (IOException e) {
+                System.err.println("Cannot delete run directory: " + runDirectory + " - " + e.getMessage());
+            }
+            runDirectory = null;
+        }
+    }
+
+    public static final class Result {
+        private final int topK;
+        private final PriorityQueue<WordFrequency> top;
+        private long distinctWords;
+        private long totalWords;
+
+        Result(int topK) {
+            this.topK = topK;
+            this.top = new PriorityQueue<>(Comparator.comparingLong(WordFrequency::getCount)
+                    .thenComparing(WordFrequency::getWord, Comparator.reverseOrder()));
+        }
+
+        void accept(String term, long count) {
+            distinctWords++;
+            totalWords += count;
+            if (top.size() < topK) {
+                top.add(new WordFrequency(term, count));
+            } else if (count > top.peek().getCount()) {
+                top.poll();
+                top.add(new WordFrequency(term, count));
+            }
+        }
+
+        public long getDistinctWords() {
+            return distinctWords;
+        }
+
+        public long getTotalWords() {
+            return totalWords;
+        }
+
+        // Most frequent first
+        public List<WordFrequency> getTopWords() {
+            List<WordFrequency> words = new ArrayList<>(top);
+            words.sort(Comparator.comparingLong(WordFrequency::getCount).reversed()
+                    .thenComparing(WordFrequency::getWord));
+            return words;
+        }
+    }
+
+    private interface TermSink {
+        void accept(String term, long count) throws IOException;
+    }
+
+    private static final class Partial {
+        final Map<String, long[]> counts = new HashMap<>();
+        long bytes;
+
+        void add(String term, long count) {
+            long[] slot = counts.get(term);
+            if (slot == null) {
+                counts.put(term, new long[] { count });
+                bytes += ENTRY_OVERHEAD + 2L * term.length();
+            } else {
+                slot[0] += count;
+            }
+        }
+
+        void clear() {
+            counts.clear();
+            bytes = 0;
+        }
+    }
+
+    private interface Cursor {
+        boolean next() throws IOException;
+
+        String term();
+
+        long count();
+
+        void close();
+    }
+
+    private static final class MemoryCursor implements Cursor {
+        private final String[] terms;
+        private final Map<String, long[]> counts;
+        private int position = -1;
+
+        MemoryCursor(Map<String, long[]> counts) {
+            this.counts = counts;
+            this.terms = counts.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+        }
+
+        public boolean next() {
+            return ++position < terms.length;
+        }
+
+        public String term() {
+            return terms[position];
+        }
+
+        public long count() {
+            return counts.get(terms[position])[0];
+        }
+
+        public void close() {
+        }
+    }
+
+    private static final class RunCursor implements Cursor {
+        private final DataInputStream in;
+        private String term;
+        private long count;
+
+        RunCursor(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+        }
+
+        public boolean next() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            byte[] bytes = new byte[(int) readVarLong(in, first)];
+            in.readFully(bytes);
+            term = new String(bytes, StandardCharsets.UTF_8);
+            count = readVarLong(in, in.read());
+            return true;
+        }
+
+        public String term() {
+            return term;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.err.println("Cannot close run file - " + e.getMessage());
+            }
+        }
+
+        private static long readVarLong(DataInputStream in, int b) throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (b < 0) {
+                    throw new EOFException("Truncated run file");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                b = in.read();
+            }
+        }
+    }
+
+    private static final class RunWriter implements AutoCloseable {
+        private final DataOutputStream out;
+
+        RunWriter(Path run) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+        }
+
+        void write(String term, long count) throws IOException {
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+            writeVarLong(count);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
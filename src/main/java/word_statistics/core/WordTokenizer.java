@@ -0,0 +1,555 @@
+package word_statistics.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import word_statistics.model.FileModel;
+
+// Streaming replacement for content.split("[\\s\\p{Punct}]+") that reuses its
+// buffers across files. Instances are pooled, so the steady state allocates
+// only the two result Strings per file.
+//
+// setUnicode(true) switches to Unicode word boundaries (see UnicodeWordTable)
+// with longest/shortest words compared by code points. Both modes fold case
+// with the same locale-independent table.
+//
+// Words are buffered up to MAX_TOKEN_CHARS. Of a longer token (a minified dump
+// without delimiters) only that prefix, its length and a hash of all of it are
+// kept, and it is counted as a bounded stand-in: a short prefix plus the hash.
+// Its longest/shortest word is reported truncated, see FileModel.truncatedWord.
+// Collected terms are bounded the same way: the pipeline hands the term table
+// on once it holds MAX_FILE_TERMS distinct terms, see isTermTableFull().
+// Memory per tokenizer is therefore bounded whatever the input.
+public final class WordTokenizer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // -Dword_statistics.token.maxChars
+    static final int MAX_TOKEN_CHARS = Math.max(256, Integer.getInteger("word_statistics.token.maxChars", 4096));
+    // -Dword_statistics.token.maxFileTerms, distinct terms of one file held before they are handed on
+    static final int MAX_FILE_TERMS = Math.max(1024, Integer.getInteger("word_statistics.token.maxFileTerms", 1 << 16));
+    // Stand-in for a truncated token: prefix, '…', 16 hex digits of its hash
+    private static final int STAND_IN_PREFIX = 64;
+    private static final int STAND_IN_SUFFIX = 17;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final boolean[] DELIMITERS = new boolean[128];
+    private static final ConcurrentLinkedQueue<WordTokenizer> POOL = new ConcurrentLinkedQueue<>();
+
+    // Opt-in Vector API scan: -Dword_statistics.simd=true with jdk.incubator.vector resolved
+    // (--add-modules jdk.incubator.vector). Results are identical to the scalar loop.
+    static final boolean SIMD = Boolean.getBoolean("word_statistics.simd") && isSimdAvailable();
+
+    static {
+        // Same set as the regex: \s and \p{Punct} are both ASCII-only
+        for (char c : " \t\n\u000B\f\r".toCharArray()) {
+            DELIMITERS[c] = true;
+        }
+        for (char c : "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~".toCharArray()) {
+            DELIMITERS[c] = true;
+        }
+    }
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private char[] word = new char[64];
+    private int wordLength;
+    private long wordCodePoints;
+    // Chars of the current token beyond MAX_TOKEN_CHARS, and the hash of the whole token once there are any
+    private long wordOverflow;
+    private long tokenHash;
+    private final char[] standIn = new char[STAND_IN_PREFIX + STAND_IN_SUFFIX];
+    private char[] folded = new char[64];
+    private final char[] pair = new char[2];
+    private char[] longest = new char[64];
+    private int longestLength;
+    private char[] shortest = new char[64];
+    private int shortestLength;
+    // Lengths compared by code points in Unicode mode, by chars otherwise
+    private long longestCodePoints;
+    private long shortestCodePoints;
+    private boolean longestTruncated;
+    private boolean shortestTruncated;
+
+    private boolean unicode;
+    private boolean simd = SIMD;
+    // High surrogate at the end of the previous chunk, or 0
+    private char pendingHighSurrogate;
+
+    private int wordCount;
+    private int isCount;
+    private int areCount;
+    private int youCount;
+    private long readNanos;
+
+    // Only filled when an index is being built or frequencies are counted, so
+    // the default path stays allocation-free. Holds up to about MAX_FILE_TERMS
+    // entries; the pipeline hands a full table on and clears it.
+    private final Map<String, int[]> termFrequencies = new HashMap<>();
+    private boolean collectTerms;
+
+    // Null unless n-grams are counted for this file
+    private NGramCounter nGrams;
+    private NGramCounter nGramCounter;
+
+    public static WordTokenizer acquire() {
+        WordTokenizer tokenizer = POOL.poll();
+        if (tokenizer == null) {
+            tokenizer = new WordTokenizer();
+        }
+        tokenizer.reset();
+        return tokenizer;
+    }
+
+    public static void release(WordTokenizer tokenizer) {
+        POOL.offer(tokenizer);
+    }
+
+    public static boolean isDelimiter(char c) {
+        return c < 128 && DELIMITERS[c];
+    }
+
+    public void reset() {
+        wordLength = 0;
+        wordCodePoints = 0;
+        wordOverflow = 0;
+        longestLength = 0;
+        shortestLength = 0;
+        longestCodePoints = 0;
+        shortestCodePoints = 0;
+        longestTruncated = false;
+        shortestTruncated = false;
+        unicode = false;
+        simd = SIMD;
+        pendingHighSurrogate = 0;
+        wordCount = 0;
+        isCount = 0;
+        areCount = 0;
+        youCount = 0;
+        readNanos = 0;
+        termFrequencies.clear();
+        collectTerms = false;
+        if (nGrams != null) {
+            nGrams.clear();
+            nGrams = null;
+        }
+    }
+
+    public void setUnicode(boolean unicode) {
+        this.unicode = unicode;
+    }
+
+    public boolean isUnicode() {
+        return unicode;
+    }
+
+    // Whether this JVM can run the SIMD scan, whatever -Dword_statistics.simd says
+    public static boolean isSimdAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && VectorWordScanner.isUsable();
+    }
+
+    // SIMD or scalar scan of ASCII words for this file, e.g. to compare them; ignored if unavailable
+    public void setSimd(boolean simd) {
+        this.simd = simd && isSimdAvailable();
+    }
+
+    public void setCollectTerms(boolean collectTerms) {
+        this.collectTerms = collectTerms;
+    }
+
+    public Map<String, int[]> getTermFrequencies() {
+        return termFrequencies;
+    }
+
+    public boolean isTermTableFull() {
+        return termFrequencies.size() >= MAX_FILE_TERMS;
+    }
+
+    // After a full table was handed on; the file's counts go on from zero
+    public void clearTerms() {
+        termFrequencies.clear();
+    }
+
+    // Counts n-grams of 2..n words alongside the words; n below 2 turns it off
+    public void setNGramSize(int n) {
+        if (n < 2) {
+            nGrams = null;
+            return;
+        }
+        if (nGramCounter == null || nGramCounter.getMaxN() != n) {
+            nGramCounter = new NGramCounter(n, NGramCounter.DEFAULT_MAX_ENTRIES);
+        }
+        nGrams = nGramCounter;
+    }
+
+    public NGramCounter getNGrams() {
+        return nGrams;
+    }
+
+    public static String normalizeTerm(String term) {
+        return UnicodeWordTable.fold(term);
+    }
+
+    // Returns false if cancelled before the whole file was consumed
+    public boolean tokenize(Path path, BooleanSupplier cancelled) throws IOException {
+        decoder.reset();
+        readBuffer.clear();
+        charBuffer.clear();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                long readStart = System.nanoTime();
+                eof = channel.read(readBuffer) < 0;
+                readNanos += System.nanoTime() - readStart;
+
+                readBuffer.flip();
+                decodeAndFeed(eof);
+                readBuffer.compact();
+            }
+        }
+
+        CoderResult result;
+        do {
+            result = decoder.flush(charBuffer);
+            drainChars();
+        } while (result.isOverflow());
+
+        finish();
+        return true;
+    }
+
+    // Push-style variant of tokenize(Path) for callers that read the bytes themselves:
+    // beginBytes(), feedBytes(chunk)*, endBytes()
+    public void beginBytes() {
+        decoder.reset();
+        readBuffer.clear();
+        charBuffer.clear();
+    }
+
+    public void feedBytes(ByteBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            int count = Math.min(readBuffer.remaining(), chunk.remaining());
+            readBuffer.put(chunk.slice(chunk.position(), count));
+            chunk.position(chunk.position() + count);
+
+            readBuffer.flip();
+            decodeAndFeed(false);
+            readBuffer.compact();
+        }
+    }
+
+    public void endBytes() throws IOException {
+        readBuffer.flip();
+        decodeAndFeed(true);
+        readBuffer.compact();
+
+        CoderResult result;
+        do {
+            result = decoder.flush(charBuffer);
+            drainChars();
+        } while (result.isOverflow());
+
+        finish();
+    }
+
+    private void decodeAndFeed(boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(readBuffer, charBuffer, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            drainChars();
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    private void drainChars() {
+        charBuffer.flip();
+        feed(charBuffer.array(), charBuffer.position(), charBuffer.limit());
+        charBuffer.clear();
+    }
+
+    public void feed(char[] chars, int from, int to) {
+        if (unicode) {
+            feedUnicode(chars, from, to);
+        } else if (simd) {
+            VectorWordScanner.feed(this, chars, from, to);
+        } else {
+            feedScalar(chars, from, to);
+        }
+    }
+
+    void feedScalar(char[] chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (isDelimiter(c)) {
+                endWord();
+            } else if (wordLength < word.length) {
+                word[wordLength++] = c;
+            } else {
+                appendSlow(c);
+            }
+        }
+    }
+
+    // Same loop driven by the precomputed class table; a surrogate pair is
+    // classified as one code point, also when a chunk ends between its halves
+    void feedUnicode(char[] chars, int from, int to) {
+        byte[] classes = UnicodeWordTable.CLASSES;
+        if (pendingHighSurrogate != 0 && from < to) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(chars[from])) {
+                feedSupplementary(high, chars[from++]);
+            } else {
+                endWord();
+            }
+        }
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            switch (classes[c]) {
+                case UnicodeWordTable.WORD:
+                    if (wordLength < word.length) {
+                        word[wordLength++] = c;
+                    } else {
+                        appendSlow(c);
+                    }
+                    wordCodePoints++;
+                    break;
+                case UnicodeWordTable.IDEOGRAPH:
+                    endWord();
+                    countWord(chars, i, 1, 1, false);
+                    break;
+                case UnicodeWordTable.HIGH_SURROGATE:
+                    if (i + 1 == to) {
+                        pendingHighSurrogate = c;
+                    } else if (Character.isLowSurrogate(chars[i + 1])) {
+                        feedSupplementary(c, chars[++i]);
+                    } else {
+                        endWord();
+                    }
+                    break;
+                default:
+                    endWord();
+            }
+        }
+    }
+
+    private void feedSupplementary(char high, char low) {
+        switch (UnicodeWordTable.classify(Character.toCodePoint(high, low))) {
+            case UnicodeWordTable.WORD:
+                pair[0] = high;
+                pair[1] = low;
+                appendWord(pair, 0, 2);
+                wordCodePoints++;
+                break;
+            case UnicodeWordTable.IDEOGRAPH:
+                endWord();
+                pair[0] = high;
+                pair[1] = low;
+                countWord(pair, 0, 2, 1, false);
+                break;
+            default:
+                endWord();
+        }
+    }
+
+    // Grows the word buffer up to MAX_TOKEN_CHARS, after that only hashes and counts
+    private void appendSlow(char c) {
+        if (wordLength < MAX_TOKEN_CHARS) {
+            word = Arrays.copyOf(word, Math.min(MAX_TOKEN_CHARS, word.length * 2));
+            word[wordLength++] = c;
+        } else {
+            overflow(c);
+        }
+    }
+
+    private void overflow(char c) {
+        if (wordOverflow == 0) {
+            long hash = FNV_OFFSET;
+            for (int i = 0; i < wordLength; i++) {
+                hash = (hash ^ word[i]) * FNV_PRIME;
+            }
+            tokenHash = hash;
+        }
+        tokenHash = (tokenHash ^ c) * FNV_PRIME;
+        wordOverflow++;
+    }
+
+    void appendWord(char[] chars, int from, int length) {
+        if (length == 0) {
+            return;
+        }
+        int kept = Math.max(0, Math.min(length, MAX_TOKEN_CHARS - wordLength));
+        if (wordLength + kept > word.length) {
+            word = Arrays.copyOf(word, Math.min(MAX_TOKEN_CHARS, Math.max(wordLength + kept, word.length * 2)));
+        }
+        System.arraycopy(chars, from, word, wordLength, kept);
+        wordLength += kept;
+        for (int i = kept; i < length; i++) {
+            overflow(chars[from + i]);
+        }
+    }
+
+    public void finish() {
+        // A high surrogate without its low half ends the text: not a character
+        pendingHighSurrogate = 0;
+        endWord();
+    }
+
+    void endWord() {
+        int length = wordLength;
+        if (length == 0) {
+            return;
+        }
+        wordLength = 0;
+        long codePoints = unicode ? wordCodePoints : length + wordOverflow;
+        wordCodePoints = 0;
+        if (wordOverflow == 0) {
+            countWord(word, 0, length, codePoints, false);
+            return;
+        }
+        wordOverflow = 0;
+
+        // Don't cut a surrogate pair in half
+        int prefix = Character.isHighSurrogate(word[STAND_IN_PREFIX - 1]) ? STAND_IN_PREFIX - 1 : STAND_IN_PREFIX;
+        System.arraycopy(word, 0, standIn, 0, prefix);
+        standIn[prefix] = '…';
+        String hash = String.format("%016x", tokenHash);
+        hash.getChars(0, hash.length(), standIn, prefix + 1);
+        countWord(standIn, 0, prefix + STAND_IN_SUFFIX, codePoints, true);
+    }
+
+    // Ends a word given as chars[from, from + length), without copying it into
+    // the word buffer when no earlier chunk contributed to it
+    void endWord(char[] chars, int from, int length) {
+        if (wordLength > 0 || length > MAX_TOKEN_CHARS) {
+            appendWord(chars, from, length);
+            endWord();
+        } else if (length > 0) {
+            countWord(chars, from, length, length, false);
+        }
+    }
+
+    // length chars of the word or its stand-in; codePoints is the whole token's length
+    private void countWord(char[] chars, int from, int length, long codePoints, boolean truncated) {
+        wordCount++;
+
+        if (length == 2 && equalsIgnoreAsciiCase(chars, from, "is")) {
+            isCount++;
+        } else if (length == 3) {
+            if (equalsIgnoreAsciiCase(chars, from, "are")) {
+                areCount++;
+            } else if (equalsIgnoreAsciiCase(chars, from, "you")) {
+                youCount++;
+            }
+        }
+
+        if (nGrams != null) {
+            nGrams.addWord(chars, from, length);
+        }
+
+        if (collectTerms) {
+            if (folded.length < length) {
+                folded = new char[Math.max(length, folded.length * 2)];
+            }
+            UnicodeWordTable.fold(chars, from, length, folded);
+            termFrequencies.computeIfAbsent(new String(folded, 0, length), k -> new int[1])[0]++;
+        }
+
+        if (longestLength == 0 || codePoints > longestCodePoints) {
+            longest = copyInto(longest, chars, from, length);
+            longestLength = length;
+            longestCodePoints = codePoints;
+            longestTruncated = truncated;
+        }
+        if (shortestLength == 0 || codePoints < shortestCodePoints) {
+            shortest = copyInto(shortest, chars, from, length);
+            shortestLength = length;
+            shortestCodePoints = codePoints;
+            shortestTruncated = truncated;
+        }
+    }
+
+    private static char[] copyInto(char[] target, char[] chars, int from, int length) {
+        if (target.length < length) {
+            target = new char[Math.max(length, target.length * 2)];
+        }
+        System.arraycopy(chars, from, target, 0, length);
+        return target;
+    }
+
+    private static boolean equalsIgnoreAsciiCase(char[] chars, int from, String lowerKeyword) {
+        for (int i = 0; i < lowerKeyword.length(); i++) {
+            char c = chars[from + i];
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != lowerKeyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getIsCount() {
+        return isCount;
+    }
+
+    public int getAreCount() {
+        return areCount;
+    }
+
+    public int getYouCount() {
+        return youCount;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public String getLongestWord() {
+        return word(longest, longestLength, longestCodePoints, longestTruncated);
+    }
+
+    public String getShortestWord() {
+        return word(shortest, shortestLength, shortestCodePoints, shortestTruncated);
+    }
+
+    private static String word(char[] chars, int length, long codePoints, boolean truncated) {
+        if (length == 0) {
+            return "";
+        }
+        if (truncated) {
+            return FileModel.truncatedWord(new String(chars, 0, length - STAND_IN_SUFFIX), codePoints);
+        }
+        return new String(chars, 0, length);
+    }
+}
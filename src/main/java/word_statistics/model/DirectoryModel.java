@@ -1,11 +1,20 @@
 package word_statistics.model;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
+import word_statistics.core.NGramCounter;
+import word_statistics.core.SnapshotDiff;
 
 public class DirectoryModel {
 
@@ -19,11 +28,41 @@ public class DirectoryModel {
     public AtomicInteger areCount;
     public AtomicInteger youCount;
 
+    // Same counters, but each distinct file content is counted once
+    public AtomicInteger uniqueTotalWords;
+    public AtomicInteger uniqueIsCount;
+    public AtomicInteger uniqueAreCount;
+    public AtomicInteger uniqueYouCount;
+
     public AtomicReference<String> longestWord;
     public AtomicReference<String> shortestWord;
 
     private String directoryPath;
 
+    // Each worker thread merges its files' n-grams into its own table, without
+    // a lock; combineNGrams() adds them up once the run's files are done
+    private final Map<Thread, NGramCounter> partialNGrams = new ConcurrentHashMap<>();
+    private int nGramSize;
+    private int maxEntries;
+    private int partialMaxEntries;
+    // Combined n-gram counts of all files, null until the run ends or when n-grams are not counted
+    private volatile NGramCounter nGrams;
+
+    // Exact word frequencies, set once the run's frequency merge finished
+    private volatile long distinctWords = -1;
+    private volatile List<WordFrequency> topWords = List.of();
+    private volatile ProfileReport profileReport;
+    // Changes since the previous snapshot of this directory, null if there was none
+    private volatile SnapshotDiff.Summary changes;
+    // Latest preview estimate, null unless the run samples
+    private volatile Estimate estimate;
+
+    // Per-subdirectory rollups, plus the nodes created since the UI last looked
+    private final DirectoryNode rootNode;
+    private final Queue<DirectoryNode> createdNodes;
+    // A totals and tree refresh is queued on the FX thread
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
     public DirectoryModel(String directoryPath) {
 
         if (directoryPath == null || directoryPath.isEmpty()) {
@@ -40,8 +79,119 @@ public class DirectoryModel {
         this.isCount = new AtomicInteger(0);
         this.areCount = new AtomicInteger(0);
         this.youCount = new AtomicInteger(0);
+        this.uniqueTotalWords = new AtomicInteger(0);
+        this.uniqueIsCount = new AtomicInteger(0);
+        this.uniqueAreCount = new AtomicInteger(0);
+        this.uniqueYouCount = new AtomicInteger(0);
         this.longestWord = new AtomicReference<>("N/A");
         this.shortestWord = new AtomicReference<>("N/A");
+
+        this.rootNode = new DirectoryNode(dir.getName(), directoryPath, null);
+        this.createdNodes = new ConcurrentLinkedQueue<>();
+    }
+
+    public DirectoryNode getRootNode() {
+        return rootNode;
+    }
+
+    public DirectoryNode pollCreatedNode() {
+        return createdNodes.poll();
+    }
+
+    private DirectoryNode nodeForFile(String filePath) {
+        Path parent = Path.of(filePath).getParent();
+        if (parent == null) {
+            return rootNode;
+        }
+        Path relative = Path.of(directoryPath).relativize(parent);
+        DirectoryNode node = rootNode;
+        for (Path segment : relative) {
+            String name = segment.toString();
+            if (!name.isEmpty()) {
+                node = node.child(name, createdNodes::add);
+            }
+        }
+        return node;
+    }
+
+    // maxEntries bounds the combined table; the workers' tables share it, but
+    // each keeps at least room for one file's n-grams
+    public void enableNGrams(int n, int maxEntries, int workers) {
+        nGramSize = n;
+        this.maxEntries = maxEntries;
+        partialMaxEntries = Math.max(NGramCounter.DEFAULT_MAX_ENTRIES, maxEntries / Math.max(1, workers));
+    }
+
+    // Files call this from the worker threads; copies counts the file once per identical copy
+    public void mergeNGrams(NGramCounter fileNGrams, int copies) {
+        if (nGramSize == 0) {
+            return;
+        }
+        partialNGrams.computeIfAbsent(Thread.currentThread(), t -> new NGramCounter(nGramSize, partialMaxEntries))
+                .merge(fileNGrams, copies);
+    }
+
+    // Called once every file was merged, off the workers
+    public void combineNGrams() {
+        if (nGramSize == 0) {
+            return;
+        }
+        NGramCounter combined = new NGramCounter(nGramSize, maxEntries);
+        for (NGramCounter partial : partialNGrams.values()) {
+            combined.merge(partial, 1);
+        }
+        partialNGrams.clear();
+        nGrams = combined;
+    }
+
+    // Most frequent n-grams of the run, with whether the counts may be low by up to getNGramMaxError()
+    public List<NGramCounter.NGram> topNGrams(int k) {
+        NGramCounter combined = nGrams;
+        return combined == null ? List.of() : combined.top(k);
+    }
+
+    public long getNGramMaxError() {
+        NGramCounter combined = nGrams;
+        return combined == null ? 0 : combined.getMaxError();
+    }
+
+    public void setWordFrequencies(long distinctWords, List<WordFrequency> topWords) {
+        this.topWords = List.copyOf(topWords);
+        this.distinctWords = distinctWords;
+    }
+
+    // -1 until the word frequencies of the run are known
+    public long getDistinctWords() {
+        return distinctWords;
+    }
+
+    public List<WordFrequency> getTopWords() {
+        return topWords;
+    }
+
+    // Null until the run completed
+    public ProfileReport getProfileReport() {
+        return profileReport;
+    }
+
+    public void setProfileReport(ProfileReport profileReport) {
+        this.profileReport = profileReport;
+    }
+
+    public Estimate getEstimate() {
+        return estimate;
+    }
+
+    public void setEstimate(Estimate estimate) {
+        this.estimate = estimate;
+    }
+
+    public SnapshotDiff.Summary getChanges() {
+        return changes;
+    }
+
+    public void setChanges(SnapshotDiff.Summary changes) {
+        this.changes = changes;
     }
 
     public String getDirectoryPath() {
@@ -49,16 +199,32 @@ public class DirectoryModel {
     }
 
     public void updateFromFile(FileModel fileModel, Runnable uiCallback) {
+        updateFromFile(fileModel, false, uiCallback);
+    }
+
+    public void updateFromFile(FileModel fileModel, boolean duplicate, Runnable uiCallback) {
 
         totalWords.addAndGet(fileModel.getWordCount());
         isCount.addAndGet(fileModel.getIsCount());
         areCount.addAndGet(fileModel.getAreCount());
         youCount.addAndGet(fileModel.getYouCount());
 
+        if (!duplicate) {
+            uniqueTotalWords.addAndGet(fileModel.getWordCount());
+            uniqueIsCount.addAndGet(fileModel.getIsCount());
+            uniqueAreCount.addAndGet(fileModel.getAreCount());
+            uniqueYouCount.addAndGet(fileModel.getYouCount());
+        }
+
+        for (DirectoryNode node = nodeForFile(fileModel.getFilePath()); node != null; node = node.getParent()) {
+            node.add(fileModel);
+        }
+
+        boolean unicode = fileModel.isUnicodeWords();
         String fileLongest = fileModel.getLongestWord();
         if (!fileLongest.equals("N/A") && !fileLongest.equals("ERROR") && !fileLongest.equals("-")) {
             String currentLongest = longestWord.get();
-            if (currentLongest.equals("N/A") || fileLongest.length() > currentLongest.length()) {
+            if (currentLongest.equals("N/A") || FileModel.wordLength(fileLongest, unicode) > FileModel.wordLength(currentLongest, unicode)) {
                 longestWord.set(fileLongest);
             }
         }
@@ -66,13 +232,17 @@ public class DirectoryModel {
         String fileShortest = fileModel.getShortestWord();
         if (!fileShortest.equals("N/A") && !fileShortest.equals("ERROR") && !fileShortest.equals("-")) {
             String currentShortest = shortestWord.get();
-            if (currentShortest.equals("N/A") || fileShortest.length() < currentShortest.length()) {
+            if (currentShortest.equals("N/A") || FileModel.wordLength(fileShortest, unicode) < FileModel.wordLength(currentShortest, unicode)) {
                 shortestWord.set(fileShortest);
             }
         }
 
-        if (uiCallback != null) {
-            Platform.runLater(uiCallback);
+        // Files finishing while a refresh is queued are shown by that refresh
+        if (uiCallback != null && refreshPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                refreshPending.set(false);
+                uiCallback.run();
+            });
         }
 
     }
@@ -0,0 +1,128 @@
+package word_statistics.model;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Rollup of every file below one directory. Counters are LongAdders and the
+// word slots are CAS-updated, so workers finishing files in different
+// subtrees never wait on each other, even at the root.
+public class DirectoryNode {
+
+    private final String name;
+    private final String path;
+    private final DirectoryNode parent;
+    private final ConcurrentHashMap<String, DirectoryNode> children;
+
+    private final LongAdder fileCount;
+    private final LongAdder totalWords;
+    private final LongAdder isCount;
+    private final LongAdder areCount;
+    private final LongAdder youCount;
+
+    private final AtomicReference<String> longestWord;
+    private final AtomicReference<String> shortestWord;
+
+    public DirectoryNode(String name, String path, DirectoryNode parent) {
+        this.name = name;
+        this.path = path;
+        this.parent = parent;
+        this.children = new ConcurrentHashMap<>();
+
+        this.fileCount = new LongAdder();
+        this.totalWords = new LongAdder();
+        this.isCount = new LongAdder();
+        this.areCount = new LongAdder();
+        this.youCount = new LongAdder();
+        this.longestWord = new AtomicReference<>("N/A");
+        this.shortestWord = new AtomicReference<>("N/A");
+    }
+
+    public static boolean isRealWord(String word) {
+        return word != null && !word.isEmpty() && !word.equals("N/A") && !word.equals("ERROR") && !word.equals("-");
+    }
+
+    public void add(FileModel fileModel) {
+        fileCount.increment();
+        totalWords.add(fileModel.getWordCount());
+        isCount.add(fileModel.getIsCount());
+        areCount.add(fileModel.getAreCount());
+        youCount.add(fileModel.getYouCount());
+
+        boolean unicode = fileModel.isUnicodeWords();
+        String fileLongest = fileModel.getLongestWord();
+        if (isRealWord(fileLongest)) {
+            longestWord.accumulateAndGet(fileLongest,
+                    (current, candidate) -> current.equals("N/A") || FileModel.wordLength(candidate, unicode) > FileModel.wordLength(current, unicode)
+                            ? candidate
+                            : current);
+        }
+
+        String fileShortest = fileModel.getShortestWord();
+        if (isRealWord(fileShortest)) {
+            shortestWord.accumulateAndGet(fileShortest,
+                    (current, candidate) -> current.equals("N/A") || FileModel.wordLength(candidate, unicode) < FileModel.wordLength(current, unicode)
+                            ? candidate
+                            : current);
+        }
+    }
+
+    DirectoryNode child(String childName, Consumer<DirectoryNode> onCreate) {
+        DirectoryNode existing = children.get(childName);
+        if (existing != null) {
+            return existing;
+        }
+        return children.computeIfAbsent(childName, key -> {
+            DirectoryNode created = new DirectoryNode(key, path + File.separator + key, this);
+            onCreate.accept(created);
+            return created;
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public DirectoryNode getParent() {
+        return parent;
+    }
+
+    public Collection<DirectoryNode> getChildren() {
+        return children.values();
+    }
+
+    public long getFileCount() {
+        return fileCount.sum();
+    }
+
+    public long getTotalWords() {
+        return totalWords.sum();
+    }
+
+    public long getIsCount() {
+        return isCount.sum();
+    }
+
+    public long getAreCount() {
+        return areCount.sum();
+    }
+
+    public long getYouCount() {
+        return youCount.sum();
+    }
+
+    public String getLongestWord() {
+        return longestWord.get();
+    }
+
+    public String getShortestWord() {
+        return shortestWord.get();
+    }
+}
@@ -0,0 +1,101 @@
+package word_statistics.model;
+
+// Directory totals extrapolated while a preview run is in progress: the exact
+// counts of the files done so far plus an estimate for the rest, each with the
+// half-width of its 95% confidence interval. Once every file is done the
+// margins are 0 and the totals are exact.
+public class Estimate {
+
+    private final long totalWords;
+    private final long totalWordsMargin;
+    private final long isCount;
+    private final long isMargin;
+    private final long areCount;
+    private final long areMargin;
+    private final long youCount;
+    private final long youMargin;
+    private final int sampledFiles;
+    private final int completedFiles;
+    private final int totalFiles;
+    private final long completedBytes;
+    private final long totalBytes;
+
+    // counts and margins in the order words, is, are, you
+    public Estimate(long[] counts, long[] margins, int sampledFiles, int completedFiles, int totalFiles,
+            long completedBytes, long totalBytes) {
+        this.totalWords = counts[0];
+        this.totalWordsMargin = margins[0];
+        this.isCount = counts[1];
+        this.isMargin = margins[1];
+        this.areCount = counts[2];
+        this.areMargin = margins[2];
+        this.youCount = counts[3];
+        this.youMargin = margins[3];
+        this.sampledFiles = sampledFiles;
+        this.completedFiles = completedFiles;
+        this.totalFiles = totalFiles;
+        this.completedBytes = completedBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    public long getTotalWords() {
+        return totalWords;
+    }
+
+    public long getTotalWordsMargin() {
+        return totalWordsMargin;
+    }
+
+    public long getIsCount() {
+        return isCount;
+    }
+
+    public long getIsMargin() {
+        return isMargin;
+    }
+
+    public long getAreCount() {
+        return areCount;
+    }
+
+    public long getAreMargin() {
+        return areMargin;
+    }
+
+    public long getYouCount() {
+        return youCount;
+    }
+
+    public long getYouMargin() {
+        return youMargin;
+    }
+
+    // Files of the random sample that have been tokenized (whole or in ranges) so far
+    public int getSampledFiles() {
+        return sampledFiles;
+    }
+
+    public int getCompletedFiles() {
+        return completedFiles;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public long getCompletedBytes() {
+        return completedBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public boolean isExact() {
+        return completedFiles >= totalFiles;
+    }
+
+    public static String format(long value, long margin) {
+        return margin == 0 ? String.valueOf(value) : value + " ± " + margin;
+    }
+}
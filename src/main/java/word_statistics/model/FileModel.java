@@ -8,11 +8,20 @@ public class FileModel {
     private final String filePath;
     private String longestWord;
     private String shortestWord;
+    private String topNGram;
     private FileStatus status;
     private int wordCount;
     private int isCount;
     private int areCount;
     private int youCount;
+    // Tokenized with Unicode word boundaries, where lengths count code points
+    private boolean unicodeWords;
+
+    // Profile of the read; zero for files that were not read themselves
+    private long bytesRead;
+    private long readNanos;
+    private long tokenizeNanos;
+    private long queueWaitNanos;
 
     public FileModel(String fileName, String filePath) {
         this(fileName, filePath, true);
@@ -41,6 +50,7 @@ public class FileModel {
         this.filePath = filePath;
         this.longestWord = "";
         this.shortestWord = "";
+        this.topNGram = "";
         this.wordCount = 0;
         this.isCount = 0;
         this.areCount = 0;
@@ -48,6 +58,21 @@ public class FileModel {
         this.status = FileStatus.PENDING;
     }
 
+    // Result for another path with byte-identical content
+    public FileModel copyFor(String fileName, String filePath) {
+        FileModel copy = new FileModel(fileName, filePath, false);
+        copy.longestWord = longestWord;
+        copy.shortestWord = shortestWord;
+        copy.topNGram = topNGram;
+        copy.wordCount = wordCount;
+        copy.isCount = isCount;
+        copy.areCount = areCount;
+        copy.youCount = youCount;
+        copy.unicodeWords = unicodeWords;
+        copy.status = status;
+        return copy;
+    }
+
     public FileStatus getStatus() {
         return status;
     }
@@ -69,13 +94,47 @@ public class FileModel {
         return filePath;
     }
 
+    private static final String TRUNCATED_MARKER = "…[";
+    private static final String TRUNCATED_END = " chars]";
+
+    // In Unicode mode words are compared by code points, so a character outside
+    // the BMP counts once. A truncated word counts with the length of the whole token.
+    public static long wordLength(String word, boolean unicode) {
+        if (word.endsWith(TRUNCATED_END)) {
+            int marker = word.lastIndexOf(TRUNCATED_MARKER);
+            if (marker >= 0) {
+                try {
+                    return Long.parseLong(word.substring(marker + TRUNCATED_MARKER.length(),
+                            word.length() - TRUNCATED_END.length()));
+                } catch (NumberFormatException e) {
+                    // Not a marker after all
+                }
+            }
+        }
+        return unicode ? word.codePointCount(0, word.length()) : word.length();
+    }
+
+    // A word too long to keep: its first characters and its full length. Words
+    // never contain spaces, so this can't be confused with a real word.
+    public static String truncatedWord(String prefix, long length) {
+        return prefix + TRUNCATED_MARKER + length + TRUNCATED_END;
+    }
+
+    public boolean isUnicodeWords() {
+        return unicodeWords;
+    }
+
+    public void setUnicodeWords(boolean unicodeWords) {
+        this.unicodeWords = unicodeWords;
+    }
+
     public String getLongestWord() {
         return longestWord;
     }
 
     public void setLongestWord(String longestWord) {
         if (this.longestWord.equals("-") || this.longestWord.isEmpty() ||
-                longestWord.length() >= this.longestWord.length()) {
+                wordLength(longestWord, unicodeWords) >= wordLength(this.longestWord, unicodeWords)) {
             this.longestWord = longestWord;
         }
     }
@@ -86,11 +145,19 @@ public class FileModel {
 
     public void setShortestWord(String shortestWord) {
         if (this.shortestWord.isEmpty() ||
-                shortestWord.length() <= this.shortestWord.length()) {
+                wordLength(shortestWord, unicodeWords) <= wordLength(this.shortestWord, unicodeWords)) {
             this.shortestWord = shortestWord;
         }
     }
 
+    public String getTopNGram() {
+        return topNGram;
+    }
+
+    public void setTopNGram(String topNGram) {
+        this.topNGram = topNGram == null ? "" : topNGram;
+    }
+
     public int getWordCount() {
         return wordCount;
     }
@@ -135,6 +202,64 @@ public class FileModel {
         this.youCount = youCount;
     }
 
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public void setReadNanos(long readNanos) {
+        this.readNanos = readNanos;
+    }
+
+    public long getTokenizeNanos() {
+        return tokenizeNanos;
+    }
+
+    public void setTokenizeNanos(long tokenizeNanos) {
+        this.tokenizeNanos = tokenizeNanos;
+    }
+
+    // Time spent waiting for a reader and then for a tokenizer
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    public void setQueueWaitNanos(long queueWaitNanos) {
+        this.queueWaitNanos = queueWaitNanos;
+    }
+
+    // Bytes per second of read plus tokenize time, 0 if nothing was measured
+    public double getBytesPerSecond() {
+        long nanos = readNanos + tokenizeNanos;
+        return nanos == 0 ? 0 : bytesRead * 1e9 / nanos;
+    }
+
+    // Profile column of the files table
+    public String getTimings() {
+        if (readNanos == 0 && tokenizeNanos == 0) {
+            return "";
+        }
+        return String.format("%s, read %.1f ms, tokenize %.1f ms, wait %.0f ms",
+                formatBytes(bytesRead), readNanos / 1e6, tokenizeNanos / 1e6, queueWaitNanos / 1e6);
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
     public void incrementYouCount() {
         this.youCount += 1;
     }
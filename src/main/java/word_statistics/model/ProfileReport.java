@@ -0,0 +1,74 @@
+package word_statistics.model;
+
+import java.util.List;
+
+// Where a run's time went, built from the per-file profiles once it completed:
+// the files that took longest to read and tokenize, and the files whose
+// bytes/sec is far below the run's median, e.g. a single huge line or a file
+// on a slow mount.
+public class ProfileReport {
+
+    private final int profiledFiles;
+    private final long totalBytes;
+    private final long totalReadNanos;
+    private final long totalTokenizeNanos;
+    private final long totalQueueWaitNanos;
+    private final double medianBytesPerSecond;
+    private final List<FileModel> slowestFiles;
+    private final List<FileModel> outliers;
+    private final int outlierCount;
+
+    public ProfileReport(int profiledFiles, long totalBytes, long totalReadNanos, long totalTokenizeNanos,
+            long totalQueueWaitNanos, double medianBytesPerSecond, List<FileModel> slowestFiles,
+            List<FileModel> outliers, int outlierCount) {
+        this.profiledFiles = profiledFiles;
+        this.totalBytes = totalBytes;
+        this.totalReadNanos = totalReadNanos;
+        this.totalTokenizeNanos = totalTokenizeNanos;
+        this.totalQueueWaitNanos = totalQueueWaitNanos;
+        this.medianBytesPerSecond = medianBytesPerSecond;
+        this.slowestFiles = List.copyOf(slowestFiles);
+        this.outliers = List.copyOf(outliers);
+        this.outlierCount = outlierCount;
+    }
+
+    public int getProfiledFiles() {
+        return profiledFiles;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getTotalReadNanos() {
+        return totalReadNanos;
+    }
+
+    public long getTotalTokenizeNanos() {
+        return totalTokenizeNanos;
+    }
+
+    public long getTotalQueueWaitNanos() {
+        return totalQueueWaitNanos;
+    }
+
+    // Over the files large enough to judge, 0 if there were none
+    public double getMedianBytesPerSecond() {
+        return medianBytesPerSecond;
+    }
+
+    // Longest read plus tokenize time first
+    public List<FileModel> getSlowestFiles() {
+        return slowestFiles;
+    }
+
+    // Lowest bytes/sec first; at most as many as the slowest files
+    public List<FileModel> getOutliers() {
+        return outliers;
+    }
+
+    // All outliers, including those not in getOutliers()
+    public int getOutlierCount() {
+        return outlierCount;
+    }
+}
@@ -0,0 +1,20 @@
+package word_statistics.model;
+
+public class WordFrequency {
+
+    private final String word;
+    private final long count;
+
+    public WordFrequency(String word, long count) {
+        this.word = word;
+        this.count = count;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
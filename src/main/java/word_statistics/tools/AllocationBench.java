@@ -0,0 +1,202 @@
+package word_statistics.tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import word_statistics.core.FileSearch;
+import word_statistics.core.WordTokenizer;
+import word_statistics.model.FileModel;
+import word_statistics.model.FileStatus;
+
+// Heap allocated per MB of text by the analyze loop, before and after the
+// pooled tokenizer, in the spirit of JMH's -prof gc:
+//   alloc-bench --dir=<dir> [--iterations=5] [--unicode]
+//
+// Each variant analyzes every .txt file under the directory on this thread,
+// once to warm up and then --iterations times, and reports the bytes the
+// thread allocated (ThreadMXBean.getCurrentThreadAllocatedBytes) per MB read
+// and per file:
+//   regex     Files.readString, split on [\s\p{Punct}]+, toLowerCase per word
+//             and a validating FileModel, as the analyzer did originally
+//   tokenizer WordTokenizer.tokenize(Path) with a pooled tokenizer
+//   pipeline  a reused 64 KB buffer pushed through feedBytes, as AnalysisPipeline does
+// What remains for the last two is opening the file and its FileModel, nothing
+// per word or per chunk.
+public class AllocationBench {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<Path> files;
+    private final int iterations;
+    private final boolean unicode;
+    private final long totalBytes;
+    private final com.sun.management.ThreadMXBean threads;
+    private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    // Keeps the results reachable so nothing is optimized away
+    private long sink;
+
+    AllocationBench(ToolOptions options) throws IOException {
+        Path directory = Path.of(options.require("dir")).toAbsolutePath();
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        this.files = FileSearch.searchTextFiles(directory.toString(), true);
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No .txt files in: " + directory);
+        }
+        this.iterations = Math.max(1, options.getInt("iterations", 5));
+        this.unicode = options.getBoolean("unicode");
+        long bytes = 0;
+        for (Path file : files) {
+            bytes += Files.size(file);
+        }
+        this.totalBytes = bytes;
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+                || !bean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalArgumentException("This JVM does not report allocated bytes per thread");
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        this.threads = bean;
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("alloc-bench")) {
+            return -1;
+        }
+        try {
+            AllocationBench bench = new AllocationBench(new ToolOptions(args, 1));
+            bench.report();
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: alloc-bench --dir=<dir> [--iterations=5] [--unicode]");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error running allocation benchmark - " + e.getMessage());
+            return 1;
+        }
+    }
+
+    void report() throws IOException {
+        double megabytes = totalBytes / (1024.0 * 1024.0);
+        System.out.printf("%d files, %.1f MB, %d iterations%s%n", files.size(), megabytes, iterations,
+                unicode ? ", Unicode words" : "");
+        System.out.printf("%-10s %14s %14s %10s%n", "variant", "bytes/MB", "bytes/file", "MB/s");
+        for (String variant : new String[] { "regex", "tokenizer", "pipeline" }) {
+            runVariant(variant);
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                runVariant(variant);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double allocated = (double) (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / iterations;
+            System.out.printf("%-10s %14.0f %14.0f %10.1f%n", variant, allocated / megabytes,
+                    allocated / files.size(), megabytes * iterations / seconds);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private void runVariant(String variant) throws IOException {
+        for (Path file : files) {
+            try {
+                switch (variant) {
+                    case "regex" -> analyzeWithRegex(file);
+                    case "tokenizer" -> analyzeWithTokenizer(file);
+                    default -> analyzeWithPipeline(file);
+                }
+            } catch (IOException e) {
+                // Not UTF-8: the analyzer reports these as errors, skipped here like there
+            }
+        }
+    }
+
+    private void analyzeWithRegex(Path file) throws IOException {
+        String content = Files.readString(file);
+        int wordCount = 0;
+        int isCount = 0;
+        int areCount = 0;
+        int youCount = 0;
+        String longest = "";
+        String shortest = "";
+        for (String word : content.split("[\\s\\p{Punct}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            wordCount++;
+            switch (word.toLowerCase()) {
+                case "is" -> isCount++;
+                case "are" -> areCount++;
+                case "you" -> youCount++;
+                default -> {
+                }
+            }
+            if (longest.isEmpty() || word.length() > longest.length()) {
+                longest = word;
+            }
+            if (shortest.isEmpty() || word.length() < shortest.length()) {
+                shortest = word;
+            }
+        }
+        FileModel model = new FileModel(file.getFileName().toString(), file.toString());
+        model.setWordCount(wordCount);
+        model.setIsCount(isCount);
+        model.setAreCount(areCount);
+        model.setYouCount(youCount);
+        model.setLongestWord(longest);
+        model.setShortestWord(shortest);
+        model.setStatus(FileStatus.COMPLETED);
+        sink += model.getWordCount();
+    }
+
+    private void analyzeWithTokenizer(Path file) throws IOException {
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try {
+            tokenizer.setUnicode(unicode);
+            tokenizer.tokenize(file, () -> false);
+            publish(file, tokenizer);
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+    }
+
+    private void analyzeWithPipeline(Path file) throws IOException {
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            tokenizer.setUnicode(unicode);
+            tokenizer.beginBytes();
+            chunk.clear();
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                tokenizer.feedBytes(chunk);
+                chunk.clear();
+            }
+            tokenizer.endBytes();
+            publish(file, tokenizer);
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+    }
+
+    // The per-file result the analyzer builds, without the filesystem checks
+    private void publish(Path file, WordTokenizer tokenizer) {
+        FileModel model = new FileModel(file.getFileName().toString(), file.toString(), false);
+        model.setWordCount(tokenizer.getWordCount());
+        model.setIsCount(tokenizer.getIsCount());
+        model.setAreCount(tokenizer.getAreCount());
+        model.setYouCount(tokenizer.getYouCount());
+        model.setLongestWord(tokenizer.getLongestWord());
+        model.setShortestWord(tokenizer.getShortestWord());
+        model.setStatus(FileStatus.COMPLETED);
+        sink += model.getWordCount();
+    }
+}
@@ -0,0 +1,115 @@
+package word_statistics.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import word_statistics.core.AnalysisSession;
+import word_statistics.core.FileSearchEngine;
+import word_statistics.core.InvertedIndex;
+import word_statistics.core.NGramCounter;
+import word_statistics.core.RunSnapshot;
+import word_statistics.core.TokenizerWarmup;
+import word_statistics.model.AppStatus;
+
+// Training run of the aot-cache Maven profile, without the UI or a display:
+//   aot-training [--files=400]
+//
+// Warms the tokenizer up on the bundled sample, then analyzes a small
+// generated corpus twice through FileSearchEngine, once with deduplication,
+// the index, word frequencies and n-grams and once with Unicode words and the
+// preview sampler, so the cache holds the classes and profiles real runs use.
+// The corpus, its index and its snapshots are deleted afterwards.
+//
+// Run with -Dword_statistics.noSimulatedWork=true, otherwise every file
+// waits its simulated 1-4 s.
+public class AotTraining {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final int fileCount;
+
+    AotTraining(ToolOptions options) {
+        this.fileCount = Math.max(1, options.getInt("files", 400));
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("aot-training")) {
+            return -1;
+        }
+        try {
+            AotTraining training = new AotTraining(new ToolOptions(args, 1));
+            return training.train() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: aot-training [--files=400]");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error running AOT training - " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    boolean train() throws IOException, InterruptedException {
+        new TokenizerWarmup().run();
+
+        Path corpus = Files.createTempDirectory("word_statistics-aot-");
+        String directory = corpus.toString();
+        try {
+            new CorpusGenerator(new ToolOptions(new String[] { "--out=" + directory, "--files=" + fileCount,
+                    "--median-size=8k", "--max-size=1m", "--long-token-chars=64k", "--duplicate-rate=0.05" }, 0))
+                    .generate();
+            return analyze(directory, false) && analyze(directory, true);
+        } finally {
+            delete(corpus);
+            Files.deleteIfExists(InvertedIndex.indexFileFor(directory));
+            delete(RunSnapshot.snapshotDirectoryFor(directory));
+        }
+    }
+
+    private boolean analyze(String directory, boolean unicode) throws InterruptedException {
+        AnalysisSession session = FileSearchEngine.getInstance().createSession();
+        try {
+            session.setCurrentDirectory(directory);
+            session.includeSubdirectoriesProperty().set(true);
+            session.deduplicateProperty().set(!unicode);
+            session.buildIndexProperty().set(!unicode);
+            session.wordFrequenciesProperty().set(!unicode);
+            session.nGramSizeProperty().set(unicode ? 0 : NGramCounter.DEFAULT_N);
+            session.unicodeWordsProperty().set(unicode);
+            session.previewProperty().set(unicode);
+            // Same steps as the Analyze button
+            session.setStatus(AppStatus.RUNNING);
+            session.setTotalFiles(0);
+            session.setFileProcessed(0);
+            session.startEngine();
+            while (session.getStatus() == AppStatus.RUNNING) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            if (session.getStatus() != AppStatus.COMPLETED) {
+                System.err.println("Error in AOT training run - ended " + session.getStatus());
+                return false;
+            }
+            return true;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package word_statistics.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+// Writes a synthetic corpus for load and soak testing (see SoakTest):
+//   generate-corpus --out=<dir> [--files=10000] [--depth=3] [--fanout=4]
+//       [--median-size=16k] [--size-sigma=1.5] [--max-size=64m] [--empty-rate=0.01]
+//       [--vocabulary=50000] [--zipf=1.07] [--encodings=utf-8:100]
+//       [--long-token-rate=0.001] [--long-token-chars=1m] [--duplicate-rate=0.02] [--seed=1]
+//
+// Files are spread over a tree of `depth` levels with `fanout` subdirectories
+// each, with log-normal sizes around the median. Words are drawn from a Zipf
+// distribution over a vocabulary whose top ranks are common English words, so
+// "is", "are" and "you" are frequent as in real text; a few words carry
+// accents. --encodings mixes charsets by weight, e.g. utf-8:90,utf-16le:5,iso-8859-1:5;
+// only UTF-8 is analyzed as text, the others exercise the error paths.
+//
+// The exact totals of the UTF-8 files are written to corpus.properties in the
+// output directory, which SoakTest checks every run against.
+public class CorpusGenerator {
+
+    public static final String MANIFEST = "corpus.properties";
+
+    private static final String[] COMMON_WORDS = { "the", "of", "and", "to", "a", "in", "is", "you", "that", "it",
+            "he", "was", "for", "on", "are", "as", "with", "his", "they", "at", "be", "this", "have", "from", "or",
+            "one", "had", "by", "word", "but", "not", "what", "all", "were", "we", "when", "your", "can", "said" };
+    private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "de", "po", "an",
+            "er", "in", "or", "us", "el", "ta", "qu", "ix", "bo", "li", "ge", "fa", "zu", "hy", "ch", "st", "th" };
+    private static final char[] ACCENTS = "éèêüöäñçå".toCharArray();
+    private static final String[] SEPARATORS = { " ", " ", " ", " ", " ", " ", ", ", "; ", " - ", " (", ") " };
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Well below the number of distinct words the syllables can make
+    private static final int MAX_VOCABULARY = 200_000;
+
+    private final Path out;
+    private final int fileCount;
+    private final int depth;
+    private final int fanout;
+    private final long medianSize;
+    private final double sizeSigma;
+    private final long maxSize;
+    private final double emptyRate;
+    private final double longTokenRate;
+    private final long longTokenChars;
+    private final double duplicateRate;
+    private final long seed;
+    private final SplittableRandom random;
+
+    private final String[] vocabulary;
+    private final double[] cumulative;
+    private final Charset[] charsets;
+    private final double[] charsetWeights;
+    private final int isRank;
+    private final int areRank;
+    private final int youRank;
+
+    // Totals of the files the analyzer reads as text
+    private long totalWords;
+    private long isCount;
+    private long areCount;
+    private long youCount;
+    private long textFiles;
+    private long otherFiles;
+    private long duplicates;
+    private long longTokens;
+    private long totalBytes;
+
+    CorpusGenerator(ToolOptions options) {
+        this.out = Path.of(options.require("out"));
+        this.fileCount = options.getInt("files", 10000);
+        this.depth = options.getInt("depth", 3);
+        this.fanout = options.getInt("fanout", 4);
+        this.medianSize = options.getBytes("median-size", 16 * 1024);
+        this.sizeSigma = options.getDouble("size-sigma", 1.5);
+        this.maxSize = options.getBytes("max-size", 64L * 1024 * 1024);
+        this.emptyRate = options.getDouble("empty-rate", 0.01);
+        this.longTokenRate = options.getDouble("long-token-rate", 0.001);
+        this.longTokenChars = options.getBytes("long-token-chars", 1024 * 1024);
+        this.duplicateRate = options.getDouble("duplicate-rate", 0.02);
+        this.seed = options.getLong("seed", 1);
+        this.random = new SplittableRandom(seed);
+
+        int vocabularySize = options.getInt("vocabulary", 50000);
+        if (vocabularySize < COMMON_WORDS.length || vocabularySize > MAX_VOCABULARY) {
+            throw new IllegalArgumentException("--vocabulary must be between " + COMMON_WORDS.length
+                    + " and " + MAX_VOCABULARY);
+        }
+        this.vocabulary = buildVocabulary(vocabularySize);
+        this.cumulative = zipfDistribution(vocabulary.length, options.getDouble("zipf", 1.07));
+        this.isRank = Arrays.asList(COMMON_WORDS).indexOf("is");
+        this.areRank = Arrays.asList(COMMON_WORDS).indexOf("are");
+        this.youRank = Arrays.asList(COMMON_WORDS).indexOf("you");
+
+        String[] encodings = options.get("encodings", "utf-8:100").split(",");
+        this.charsets = new Charset[encodings.length];
+        this.charsetWeights = new double[encodings.length];
+        double total = 0;
+        for (int i = 0; i < encodings.length; i++) {
+            String[] parts = encodings[i].split(":");
+            charsets[i] = Charset.forName(parts[0].trim());
+            total += parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            charsetWeights[i] = total;
+        }
+        for (int i = 0; i < charsetWeights.length; i++) {
+            charsetWeights[i] /= total;
+        }
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("generate-corpus")) {
+            return -1;
+        }
+        try {
+            CorpusGenerator generator = new CorpusGenerator(new ToolOptions(args, 1));
+            generator.generate();
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: generate-corpus --out=<dir> [--files=N] [--depth=N] [--fanout=N]"
+                    + " [--median-size=16k] [--size-sigma=1.5] [--max-size=64m] [--empty-rate=0.01]"
+                    + " [--vocabulary=N] [--zipf=1.07] [--encodings=utf-8:90,utf-16le:10]"
+                    + " [--long-token-rate=0.001] [--long-token-chars=1m] [--duplicate-rate=0.02] [--seed=N]");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error generating corpus - " + e.getMessage());
+            return 1;
+        }
+    }
+
+    void generate() throws IOException {
+        long start = System.nanoTime();
+        List<Path> directories = createDirectories();
+
+        Path previousFile = null;
+        long[] previousCounts = null;
+        for (int i = 0; i < fileCount; i++) {
+            Path directory = directories.get(random.nextInt(directories.size()));
+            Path file = directory.resolve(String.format("file-%07d.txt", i));
+
+            long[] counts;
+            if (previousFile != null && random.nextDouble() < duplicateRate) {
+                // Same content as the file before, for the deduplication path
+                Files.copy(previousFile, file);
+                counts = previousCounts;
+                duplicates++;
+            } else {
+                Charset charset = pickCharset();
+                counts = writeFile(file, charset);
+                if (!charset.equals(StandardCharsets.UTF_8)) {
+                    counts = null;
+                }
+            }
+
+            if (counts != null) {
+                textFiles++;
+                totalWords += counts[0];
+                isCount += counts[1];
+                areCount += counts[2];
+                youCount += counts[3];
+            } else {
+                otherFiles++;
+            }
+            totalBytes += Files.size(file);
+            previousFile = file;
+            previousCounts = counts;
+
+            if ((i + 1) % 10000 == 0) {
+                System.err.println("Generated " + (i + 1) + " of " + fileCount + " files");
+            }
+        }
+
+        writeManifest(directories.size());
+        System.err.printf("Generated %d files (%d MB) in %d directories in %.1f s: %s%n", fileCount,
+                totalBytes >> 20, directories.size(), (System.nanoTime() - start) / 1e9, out);
+    }
+
+    private List<Path> createDirectories() throws IOException {
+        // Leftover files would make the manifest wrong
+        if (Files.isDirectory(out)) {
+            try (Stream<Path> entries = Files.list(out)) {
+                if (entries.findAny().isPresent()) {
+                    throw new IllegalArgumentException("Output directory is not empty: " + out);
+                }
+            }
+        }
+        List<Path> directories = new ArrayList<>();
+        Files.createDirectories(out);
+        directories.add(out);
+        List<Path> level = List.of(out);
+        for (int d = 0; d < depth; d++) {
+            List<Path> next = new ArrayList<>();
+            for (Path parent : level) {
+                for (int f = 0; f < fanout; f++) {
+                    Path child = parent.resolve(String.format("dir-%02d", f));
+                    Files.createDirectories(child);
+                    next.add(child);
+                }
+            }
+            directories.addAll(next);
+            level = next;
+        }
+        return directories;
+    }
+
+    // Returns words, is, are and you written
+    private long[] writeFile(Path file, Charset charset) throws IOException {
+        long[] counts = new long[4];
+        long size = 0;
+        if (random.nextDouble() >= emptyRate) {
+            // Log-normal around the median
+            size = Math.min(maxSize, Math.max(1, Math.round(medianSize * Math.exp(sizeSigma * random.nextGaussian()))));
+        }
+
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), charset), BUFFER_SIZE)) {
+            long longTokenAt = random.nextDouble() < longTokenRate ? random.nextLong(size + 1) : -1;
+            long written = 0;
+            StringBuilder line = new StringBuilder(256);
+            while (written < size) {
+                line.setLength(0);
+                int words = 6 + random.nextInt(12);
+                for (int w = 0; w < words; w++) {
+                    int rank = nextRank();
+                    String word = vocabulary[rank];
+                    line.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                    line.append(w == words - 1 ? (random.nextInt(8) == 0 ? "?" : ".") : pickSeparator());
+                    counts[0]++;
+                    if (rank == isRank) {
+                        counts[1]++;
+                    } else if (rank == areRank) {
+                        counts[2]++;
+                    } else if (rank == youRank) {
+                        counts[3]++;
+                    }
+                }
+                line.append(random.nextInt(10) == 0 ? "\n\n" : "\n");
+                writer.append(line);
+                written += line.length();
+
+                if (longTokenAt >= 0 && written >= longTokenAt) {
+                    writeLongToken(writer);
+                    counts[0]++;
+                    longTokens++;
+                    longTokenAt = -1;
+                }
+            }
+        }
+        return counts;
+    }
+
+    // One token of longTokenChars letters, a minified-file or base64 blob stand-in
+    private void writeLongToken(Writer writer) throws IOException {
+        char[] chunk = new char[4096];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (char) ('a' + random.nextInt(26));
+        }
+        for (long remaining = longTokenChars; remaining > 0; remaining -= chunk.length) {
+            writer.write(chunk, 0, (int) Math.min(chunk.length, remaining));
+        }
+        writer.write('\n');
+    }
+
+    private void writeManifest(int directoryCount) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("seed", String.valueOf(seed));
+        manifest.setProperty("files", String.valueOf(fileCount));
+        manifest.setProperty("directories", String.valueOf(directoryCount));
+        manifest.setProperty("bytes", String.valueOf(totalBytes));
+        manifest.setProperty("textFiles", String.valueOf(textFiles));
+        manifest.setProperty("otherEncodingFiles", String.valueOf(otherFiles));
+        manifest.setProperty("duplicates", String.valueOf(duplicates));
+        manifest.setProperty("longTokens", String.valueOf(longTokens));
+        manifest.setProperty("totalWords", String.valueOf(totalWords));
+        manifest.setProperty("isCount", String.valueOf(isCount));
+        manifest.setProperty("areCount", String.valueOf(areCount));
+        manifest.setProperty("youCount", String.valueOf(youCount));
+        // The totals match an analysis only if every file is UTF-8
+        manifest.setProperty("verifiable", String.valueOf(otherFiles == 0));
+        try (Writer writer = Files.newBufferedWriter(out.resolve(MANIFEST))) {
+            manifest.store(writer, "word_statistics synthetic corpus");
+        }
+    }
+
+    private int nextRank() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        return Math.min(rank, vocabulary.length - 1);
+    }
+
+    private String pickSeparator() {
+        return SEPARATORS[random.nextInt(SEPARATORS.length)];
+    }
+
+    private Charset pickCharset() {
+        double value = random.nextDouble();
+        for (int i = 0; i < charsets.length; i++) {
+            if (value < charsetWeights[i]) {
+                return charsets[i];
+            }
+        }
+        return charsets[charsets.length - 1];
+    }
+
+    // Common words first, then made-up words of 1 to 4 syllables, every 40th with an accent
+    private String[] buildVocabulary(int size) {
+        String[] words = Arrays.copyOf(COMMON_WORDS, size);
+        Set<String> seen = new HashSet<>(Arrays.asList(COMMON_WORDS));
+        StringBuilder word = new StringBuilder();
+        for (int i = COMMON_WORDS.length; i < size;) {
+            word.setLength(0);
+            int syllables = 1 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            if (i % 40 == 0) {
+                word.setCharAt(random.nextInt(word.length()), ACCENTS[random.nextInt(ACCENTS.length)]);
+            }
+            if (seen.add(word.toString())) {
+                words[i++] = word.toString();
+            }
+        }
+        return words;
+    }
+
+    private static double[] zipfDistribution(int size, double exponent) {
+        double[] cumulative = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= total;
+        }
+        return cumulative;
+    }
+}
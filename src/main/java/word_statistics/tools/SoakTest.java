@@ -0,0 +1,353 @@
+package word_statistics.tools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import word_statistics.core.AnalysisSession;
+import word_statistics.core.FileSearchEngine;
+import word_statistics.model.AppStatus;
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.ProfileReport;
+
+// Analyzes a directory over and over through FileSearchEngine, the way the
+// Analyze button does, and records each run's throughput next to the heap
+// left after a full GC, GC pauses and live threads:
+//   soak --dir=<dir> [--duration=1h] [--sessions=1] [--dedup] [--index] [--frequencies]
+//       [--ngrams=0] [--unicode] [--stop-every=0] [--csv=<file>]
+//
+// Every run uses new sessions which are closed afterwards, so anything a run
+// leaves behind (threads, buffers, listeners) adds up over the hours and shows
+// as a rising retained heap or thread count; the last run is compared with the
+// second one at the end. --stop-every=N stops every Nth run halfway to cover
+// cancellation. If the directory was written by CorpusGenerator its totals are
+// checked after every completed run.
+//
+// Each file still gets the app's simulated 1-4 s of work unless the JVM runs
+// with -Dword_statistics.noSimulatedWork=true, which throughput numbers want.
+// The sessions have no controller, so no display or JavaFX toolkit is needed.
+public class SoakTest {
+
+    private static final long POLL_MILLIS = 100;
+    // Growth between the second and the last run that is reported as a possible leak
+    private static final double RETAINED_HEAP_GROWTH = 1.25;
+    private static final long RETAINED_HEAP_SLACK = 16L * 1024 * 1024;
+    private static final int THREAD_GROWTH = 8;
+
+    private final Path directory;
+    private final Duration duration;
+    private final int sessionCount;
+    private final boolean deduplicate;
+    private final boolean buildIndex;
+    private final boolean wordFrequencies;
+    private final int nGramSize;
+    private final boolean unicodeWords;
+    private final int stopEvery;
+    private final Path csv;
+    private final Properties manifest;
+
+    private final FileSearchEngine engine = FileSearchEngine.getInstance();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final AtomicLong maxPauseMillis = new AtomicLong();
+
+    SoakTest(ToolOptions options) throws IOException {
+        this.directory = Path.of(options.require("dir")).toAbsolutePath();
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        this.duration = options.getDuration("duration", Duration.ofHours(1));
+        this.sessionCount = options.getInt("sessions", 1);
+        this.deduplicate = options.getBoolean("dedup");
+        this.buildIndex = options.getBoolean("index");
+        this.wordFrequencies = options.getBoolean("frequencies");
+        this.nGramSize = options.getInt("ngrams", 0);
+        this.unicodeWords = options.getBoolean("unicode");
+        this.stopEvery = options.getInt("stop-every", 0);
+        String csvFile = options.get("csv", null);
+        this.csv = csvFile == null ? null : Path.of(csvFile);
+
+        Path manifestFile = directory.resolve(CorpusGenerator.MANIFEST);
+        if (Files.exists(manifestFile)) {
+            manifest = new Properties();
+            try (Reader reader = Files.newBufferedReader(manifestFile)) {
+                manifest.load(reader);
+            }
+        } else {
+            manifest = null;
+        }
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("soak")) {
+            return -1;
+        }
+        try {
+            SoakTest soakTest = new SoakTest(new ToolOptions(args, 1));
+            return soakTest.soak() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: soak --dir=<dir> [--duration=1h] [--sessions=1] [--dedup] [--index]"
+                    + " [--frequencies] [--ngrams=0] [--unicode] [--stop-every=0] [--csv=<file>]");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error running soak test - " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    // True if every run checked out and nothing looks like a leak
+    boolean soak() throws IOException, InterruptedException {
+        listenForPauses();
+        boolean verify = manifest != null && Boolean.parseBoolean(manifest.getProperty("verifiable"));
+        System.err.println("Soak test of " + directory + " for " + duration.toMinutes() + " min, "
+                + sessionCount + " session(s)" + (verify ? ", checking totals against " + CorpusGenerator.MANIFEST : ""));
+        if (csv != null && !Files.exists(csv)) {
+            Files.writeString(csv, "round,epochMillis,status,files,words,bytes,elapsedMillis,filesPerSecond,"
+                    + "mbPerSecond,heapUsedMb,retainedMb,gcCount,gcMillis,maxPauseMillis,threads,peakThreads,verified\n");
+        }
+
+        long end = System.nanoTime() + duration.toNanos();
+        int failures = 0;
+        RunSample baseline = null;
+        RunSample last = null;
+        for (int round = 1; System.nanoTime() < end; round++) {
+            RunSample sample = runOnce(round, verify);
+            if (!sample.verified) {
+                failures++;
+            }
+            if (round <= 2) {
+                // The first run still loads classes and fills caches
+                baseline = sample;
+            }
+            last = sample;
+            System.out.println(sample);
+            if (csv != null) {
+                try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv, StandardOpenOption.APPEND))) {
+                    writer.println(sample.toCsv());
+                }
+            }
+        }
+
+        boolean leaking = false;
+        if (last != null && last != baseline) {
+            if (last.retainedBytes > baseline.retainedBytes * RETAINED_HEAP_GROWTH + RETAINED_HEAP_SLACK) {
+                System.out.println("Possible leak: retained heap grew from " + (baseline.retainedBytes >> 20)
+                        + " MB to " + (last.retainedBytes >> 20) + " MB");
+                leaking = true;
+            }
+            if (last.threads > baseline.threads + THREAD_GROWTH) {
+                System.out.println("Possible thread leak: " + baseline.threads + " threads after run "
+                        + baseline.round + ", " + last.threads + " after run " + last.round);
+                leaking = true;
+            }
+        }
+        System.out.println((last == null ? 0 : last.round) + " runs, " + failures + " with wrong totals"
+                + (leaking ? ", possible leak" : ""));
+        return failures == 0 && !leaking;
+    }
+
+    private RunSample runOnce(int round, boolean verify) throws InterruptedException {
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        maxPauseMillis.set(0);
+        boolean stopHalfway = stopEvery > 0 && round % stopEvery == 0;
+
+        List<AnalysisSession> sessions = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < sessionCount; i++) {
+            AnalysisSession session = engine.createSession();
+            session.setCurrentDirectory(directory.toString());
+            session.includeSubdirectoriesProperty().set(true);
+            session.deduplicateProperty().set(deduplicate);
+            session.buildIndexProperty().set(buildIndex);
+            session.wordFrequenciesProperty().set(wordFrequencies);
+            session.nGramSizeProperty().set(nGramSize);
+            session.unicodeWordsProperty().set(unicodeWords);
+            // Same steps as the Analyze button
+            session.setStatus(AppStatus.RUNNING);
+            session.setTotalFiles(0);
+            session.setFileProcessed(0);
+            session.startEngine();
+            sessions.add(session);
+        }
+
+        while (true) {
+            boolean running = false;
+            for (AnalysisSession session : sessions) {
+                if (session.getStatus() != AppStatus.RUNNING) {
+                    continue;
+                }
+                running = true;
+                // totalFiles is 0 until the directory has been listed
+                if (stopHalfway && session.getTotalFiles() > 0
+                        && session.getFileProcessed() * 2 >= session.getTotalFiles()) {
+                    session.stopEngine();
+                }
+            }
+            if (!running) {
+                break;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        RunSample sample = new RunSample(round);
+        sample.elapsedMillis = elapsedNanos / 1_000_000;
+        sample.status = stopHalfway ? AppStatus.STOPPED : AppStatus.COMPLETED;
+        sample.verified = true;
+        for (AnalysisSession session : sessions) {
+            DirectoryModel model = session.getDirectoryModel();
+            sample.files += session.getFileProcessed();
+            if (session.getStatus() != AppStatus.COMPLETED) {
+                if (session.getStatus() != AppStatus.STOPPED) {
+                    sample.status = session.getStatus();
+                    sample.verified = false;
+                }
+                continue;
+            }
+            if (model == null) {
+                continue;
+            }
+            sample.words += model.totalWords.get();
+            ProfileReport profile = model.getProfileReport();
+            if (profile != null) {
+                sample.bytes += profile.getTotalBytes();
+            }
+            if (verify && !matchesManifest(model)) {
+                sample.verified = false;
+            }
+        }
+        for (AnalysisSession session : sessions) {
+            session.close();
+        }
+
+        sample.gcCount = gcCount() - gcCount;
+        sample.gcMillis = gcMillis() - gcMillis;
+        sample.maxPauseMillis = maxPauseMillis.get();
+        sample.heapUsedBytes = memory.getHeapMemoryUsage().getUsed();
+        // What survives a full collection is what the run left behind
+        System.gc();
+        sample.retainedBytes = memory.getHeapMemoryUsage().getUsed();
+        sample.threads = threads.getThreadCount();
+        sample.peakThreads = threads.getPeakThreadCount();
+        threads.resetPeakThreadCount();
+        return sample;
+    }
+
+    private boolean matchesManifest(DirectoryModel model) {
+        long[] actual = { model.totalWords.get(), model.isCount.get(), model.areCount.get(), model.youCount.get() };
+        String[] keys = { "totalWords", "isCount", "areCount", "youCount" };
+        boolean matches = true;
+        for (int i = 0; i < keys.length; i++) {
+            long expected = Long.parseLong(manifest.getProperty(keys[i], "-1"));
+            if (actual[i] != expected) {
+                System.out.println("Wrong " + keys[i] + ": " + actual[i] + ", expected " + expected);
+                matches = false;
+            }
+        }
+        return matches;
+    }
+
+    // Pause times come from GC notifications; collectors reporting whole
+    // concurrent cycles (ZGC's "Cycles" beans) are left out
+    private void listenForPauses() {
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector.getName().endsWith("Cycles") || !(collector instanceof NotificationEmitter emitter)) {
+                continue;
+            }
+            emitter.addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                maxPauseMillis.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+            }, null, null);
+        }
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static final class RunSample {
+        final int round;
+        final long epochMillis = System.currentTimeMillis();
+        AppStatus status;
+        long files;
+        long words;
+        long bytes;
+        long elapsedMillis;
+        long heapUsedBytes;
+        long retainedBytes;
+        long gcCount;
+        long gcMillis;
+        long maxPauseMillis;
+        int threads;
+        int peakThreads;
+        boolean verified;
+
+        RunSample(int round) {
+            this.round = round;
+        }
+
+        double filesPerSecond() {
+            return elapsedMillis == 0 ? 0 : files * 1000.0 / elapsedMillis;
+        }
+
+        double mbPerSecond() {
+            return elapsedMillis == 0 ? 0 : bytes * 1000.0 / elapsedMillis / (1 << 20);
+        }
+
+        String toCsv() {
+            return String.format("%d,%d,%s,%d,%d,%d,%d,%.1f,%.2f,%d,%d,%d,%d,%d,%d,%d,%b", round, epochMillis,
+                    status, files, words, bytes, elapsedMillis, filesPerSecond(), mbPerSecond(),
+                    heapUsedBytes >> 20, retainedBytes >> 20, gcCount, gcMillis, maxPauseMillis, threads,
+                    peakThreads, verified);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("run %d %s: %d files, %d words in %.1f s (%.1f files/s, %.2f MB/s)"
+                    + " | heap %d MB, retained %d MB | gc %d, %d ms, max pause %d ms | threads %d, peak %d%s",
+                    round, status, files, words, elapsedMillis / 1000.0, filesPerSecond(), mbPerSecond(),
+                    heapUsedBytes >> 20, retainedBytes >> 20, gcCount, gcMillis, maxPauseMillis, threads,
+                    peakThreads, verified ? "" : " | FAILED");
+        }
+    }
+}
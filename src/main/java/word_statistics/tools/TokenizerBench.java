@@ -0,0 +1,128 @@
+package word_statistics.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import word_statistics.core.FileSearch;
+import word_statistics.core.WordTokenizer;
+
+// Throughput of the scalar and the SIMD word scan over the same text:
+//   tokenizer-bench --dir=<dir> [--iterations=10]
+//
+// Every UTF-8 .txt file under the directory is decoded into memory once, so
+// only the scan is timed, not the disk or the decoder; use a corpus that fits
+// the heap. Each variant runs once to warm up and then --iterations times;
+// the word counts of both must match. The SIMD row needs the JVM started with
+// --add-modules jdk.incubator.vector and is skipped otherwise.
+public class TokenizerBench {
+
+    private final List<char[]> texts = new ArrayList<>();
+    private final int iterations;
+    private final long totalBytes;
+    // Keeps the results reachable so nothing is optimized away
+    private long sink;
+
+    TokenizerBench(ToolOptions options) throws IOException {
+        Path directory = Path.of(options.require("dir")).toAbsolutePath();
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        this.iterations = Math.max(1, options.getInt("iterations", 10));
+        long bytes = 0;
+        for (Path file : FileSearch.searchTextFiles(directory.toString(), true)) {
+            byte[] content = Files.readAllBytes(file);
+            try {
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(content));
+                char[] text = new char[chars.remaining()];
+                chars.get(text);
+                texts.add(text);
+                bytes += content.length;
+            } catch (CharacterCodingException e) {
+                // Not UTF-8: the analyzer reports these as errors, skipped here
+            }
+        }
+        if (texts.isEmpty()) {
+            throw new IllegalArgumentException("No UTF-8 .txt files in: " + directory);
+        }
+        this.totalBytes = bytes;
+    }
+
+    // Returns the exit status, or -1 if the arguments are not this command
+    public static int run(String[] args) {
+        if (args.length == 0 || !args[0].equals("tokenizer-bench")) {
+            return -1;
+        }
+        try {
+            TokenizerBench bench = new TokenizerBench(new ToolOptions(args, 1));
+            return bench.report() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: tokenizer-bench --dir=<dir> [--iterations=10]");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error running tokenizer benchmark - " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // False if the two scans counted different words
+    boolean report() {
+        double megabytes = totalBytes / (1024.0 * 1024.0);
+        System.out.printf("%d files, %.1f MB, %d iterations%n", texts.size(), megabytes, iterations);
+        System.out.printf("%-8s %10s %14s%n", "variant", "MB/s", "words");
+
+        long scalarWords = runVariant("scalar", false, megabytes);
+        if (!WordTokenizer.isSimdAvailable()) {
+            System.out.println("simd     skipped, start the JVM with --add-modules jdk.incubator.vector");
+            return true;
+        }
+        long simdWords = runVariant("simd", true, megabytes);
+        if (simdWords != scalarWords) {
+            System.err.println("Error: the SIMD scan counted " + simdWords + " words, the scalar one " + scalarWords);
+            return false;
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return true;
+    }
+
+    private long runVariant(String variant, boolean simd, double megabytes) {
+        long words = scan(simd);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += scan(simd);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s %10.1f %14d%n", variant, megabytes * iterations / seconds, words);
+        return words;
+    }
+
+    private long scan(boolean simd) {
+        long words = 0;
+        WordTokenizer tokenizer = WordTokenizer.acquire();
+        try {
+            for (char[] text : texts) {
+                tokenizer.reset();
+                tokenizer.setSimd(simd);
+                tokenizer.feed(text, 0, text.length);
+                tokenizer.finish();
+                words += tokenizer.getWordCount();
+            }
+        } finally {
+            WordTokenizer.release(tokenizer);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,87 @@
+package word_statistics.tools;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// --name=value arguments of the command line tools; a bare --name means true
+class ToolOptions {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    ToolOptions(String[] args, int from) {
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    String require(String name) {
+        String value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    boolean getBoolean(String name) {
+        return Boolean.parseBoolean(values.get(name));
+    }
+
+    // Sizes like 4096, 64k, 16m or 1g
+    long getBytes(String name, long defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+        String number = shift == 0 ? value : value.substring(0, value.length() - 1);
+        return Long.parseLong(number) << shift;
+    }
+
+    // Durations like 90s, 30m or 12h
+    Duration getDuration(String name, Duration defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        long amount = Long.parseLong(Character.isDigit(unit) ? value : value.substring(0, value.length() - 1));
+        switch (unit) {
+            case 'h':
+                return Duration.ofHours(amount);
+            case 'm':
+                return Duration.ofMinutes(amount);
+            default:
+                return Duration.ofSeconds(amount);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package word_statistics.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import word_statistics.core.AnalysisSession;
+import word_statistics.core.FileSearchEngine;
+
+class ApiServerTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern STATUS = Pattern.compile("\"status\":\"(\\w+)\"");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void scanLifecycleOverLoopback() throws Exception {
+        Files.writeString(directory.resolve("a.txt"), "you are what you read");
+        Files.writeString(directory.resolve("b.txt"), "this is it");
+        Files.createDirectories(directory.resolve("sub"));
+        Files.writeString(directory.resolve("sub").resolve("c.txt"), "are you there");
+
+        // The completed scan writes a snapshot under the home directory
+        String home = System.getProperty("user.home");
+        System.setProperty("user.home", directory.resolve("home").toString());
+        FileSearchEngine engine = FileSearchEngine.getInstance();
+        ApiServer server = new ApiServer(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/scans";
+            Response created = request("POST", base + "?subdirectories=true&directory="
+                    + URLEncoder.encode(directory.toString(), StandardCharsets.UTF_8), null);
+            assertEquals(202, created.code, created.body);
+            String id = find(ID, created.body);
+
+            Response list = request("GET", base, null);
+            assertEquals(200, list.code);
+            assertTrue(list.body.contains("\"id\":" + id), list.body);
+
+            // Followed until the scan ends, one line per file
+            Response files = request("GET", base + "/" + id + "/files", null);
+            assertEquals(200, files.code);
+            List<String> lines = files.body.lines().toList();
+            assertEquals(3, lines.size(), files.body);
+            for (String line : lines) {
+                assertEquals("COMPLETED", find(STATUS, line));
+            }
+            assertTrue(files.body.contains("\"wordCount\":5"), files.body);
+
+            Response progress = request("GET", base + "/" + id, null);
+            assertEquals("COMPLETED", find(STATUS, progress.body));
+            assertTrue(progress.body.contains("\"fileProcessed\":3,\"totalFiles\":3"), progress.body);
+
+            Response stopped = request("POST", base + "/" + id + "/stop", null);
+            assertEquals(200, stopped.code);
+            assertEquals("STOPPED", find(STATUS, stopped.body));
+
+            assertEquals(200, request("DELETE", base + "/" + id, null).code);
+            assertEquals(404, request("GET", base + "/" + id, null).code);
+            assertEquals(400, request("POST", base + "?directory=", null).code);
+        } finally {
+            server.stop();
+            System.setProperty("user.home", home);
+        }
+    }
+
+    @Test
+    void uiSessionsCannotBeDeleted() throws Exception {
+        FileSearchEngine engine = FileSearchEngine.getInstance();
+        AnalysisSession tab = engine.createSession();
+        ApiServer server = new ApiServer(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null);
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/scans/" + tab.getId();
+            assertEquals(403, request("DELETE", url, null).code);
+            assertTrue(engine.getSessions().contains(tab));
+            assertEquals(200, request("GET", url, null).code);
+        } finally {
+            server.stop();
+            tab.close();
+        }
+    }
+
+    @Test
+    void offLoopbackRequiresToken() throws Exception {
+        FileSearchEngine engine = FileSearchEngine.getInstance();
+        InetSocketAddress anyAddress = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        assertThrows(IllegalArgumentException.class, () -> new ApiServer(engine, anyAddress, null));
+
+        ApiServer server = new ApiServer(engine, anyAddress, "secret");
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/scans";
+            assertEquals(401, request("GET", url, null).code);
+            assertEquals(401, request("GET", url, "Bearer wrong").code);
+            assertEquals(200, request("GET", url, "Bearer secret").code);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String find(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        assertTrue(matcher.find(), "no " + pattern + " in " + text);
+        return matcher.group(1);
+    }
+
+    private static Response request(String method, String url, String authorization) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(30_000);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        try {
+            int code = connection.getResponseCode();
+            InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            String body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new Response(code, body);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static final class Response {
+        final int code;
+        final String body;
+
+        Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyControllerTest {
+
+    @Test
+    void cachedWindowDoesNotPinTheBaselineAtZero() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(8, 1, 64);
+        // A window of cached reads, then reads that wait far longer than they compute,
+        // so the limit should climb towards its maximum
+        for (int i = 0; i < 8; i++) {
+            controller.recordSample(0, 4, 10);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            controller.recordSample(6_000, 4, 10);
+        }
+        assertTrue(controller.getLimit() > 8, "limit " + controller.getLimit());
+    }
+
+    @Test
+    void slowChunksCutTheLimit() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(32, 1, 64);
+        for (int i = 0; i < 64; i++) {
+            controller.recordSample(40_000, 4, 1_000);
+        }
+        int before = controller.getLimit();
+        for (int i = 0; i < 64; i++) {
+            controller.recordSample(400_000, 4, 1_000);
+        }
+        assertTrue(controller.getLimit() < before, controller.getLimit() + " < " + before);
+    }
+}
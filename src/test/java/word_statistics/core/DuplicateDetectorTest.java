@@ -0,0 +1,49 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicateDetectorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sameContentSharesTheFirstIndexAndEveryReadIsGated() throws IOException {
+        // Small files are decided by the sample, large ones by the full hash
+        String small = "you are what you read";
+        String large = "is ".repeat(10_000);
+        List<Path> files = new ArrayList<>();
+        for (String content : new String[] { small, large, small, large + "x", large, "other text here, same size?" }) {
+            Path file = directory.resolve("f" + files.size() + ".txt");
+            Files.writeString(file, content);
+            files.add(file);
+        }
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = Files.size(files.get(i));
+        }
+
+        AtomicInteger entered = new AtomicInteger();
+        AtomicInteger exited = new AtomicInteger();
+        int[] canonical = DuplicateDetector.findCanonicalIndexes(files, sizes, file -> {
+            entered.incrementAndGet();
+            return exited::incrementAndGet;
+        });
+
+        assertArrayEquals(new int[] { 0, 1, 0, 3, 1, 5 }, canonical);
+        // Sampled: the two small and two large files; in full: the two large ones
+        assertEquals(6, entered.get());
+        assertEquals(entered.get(), exited.get());
+    }
+}
@@ -0,0 +1,186 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InvertedIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void spilledPostingsMergeIntoTheSameIndex() throws Exception {
+        int fileCount = 3_000;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            files.add(directory.resolve("dir-" + i % 7).resolve("file-" + i + ".txt"));
+        }
+        // Enough distinct terms per file to spill the smallest budget many times
+        TreeMap<String, List<Integer>> expected = new TreeMap<>();
+        List<Map<String, int[]>> documents = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(5);
+        for (int docId = 0; docId < fileCount; docId++) {
+            Map<String, int[]> terms = new HashMap<>();
+            for (int i = 0; i < 300; i++) {
+                String term = i == 0 ? "common" : "t" + random.nextInt(200_000);
+                terms.computeIfAbsent(term, k -> new int[1])[0]++;
+            }
+            documents.add(terms);
+            for (String term : terms.keySet()) {
+                expected.computeIfAbsent(term, k -> new ArrayList<>()).add(docId);
+            }
+        }
+
+        int workers = 4;
+        InvertedIndexBuilder builder = new InvertedIndexBuilder(directory.toString(), files, false, 0, workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> added = new ArrayList<>();
+            for (int docId = 0; docId < fileCount; docId++) {
+                int id = docId;
+                added.add(pool.submit(() -> builder.addDocument(id, documents.get(id))));
+            }
+            for (Future<?> future : added) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(builder.getRunCount() > 64, "runs spilled: " + builder.getRunCount());
+
+        Path indexFile = directory.resolve("index.idx");
+        builder.write(indexFile);
+        assertEquals(0, builder.getRunCount());
+
+        InvertedIndex index = InvertedIndex.open(indexFile);
+        assertEquals(fileCount, index.getDocumentCount());
+        assertEquals(expected.size(), index.getTermCount());
+        assertEquals(DataDirectory.normalize(directory.toString()), index.getDirectory());
+        for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+            int[] docs = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(docs, index.postings(entry.getKey()));
+        }
+        assertEquals(0, index.postings("missing").length);
+        assertEquals(0, index.postings("").length);
+        assertEquals(fileCount, index.search("common").size());
+        for (int docId : new int[] { 0, 1, fileCount / 2, fileCount - 1 }) {
+            assertEquals(files.get(docId).toString(), index.getPath(docId));
+        }
+    }
+
+    @Test
+    void documentAddedInPartsHasOnePostingPerTerm() throws IOException {
+        List<Path> files = List.of(directory.resolve("big.txt"), directory.resolve("small.txt"));
+        InvertedIndexBuilder builder = new InvertedIndexBuilder(directory.toString(), files, false, 0, 1);
+        // The first part alone fills the budget, so the parts end up in different runs
+        Map<String, int[]> first = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            first.put("t" + i, new int[] { 1 });
+        }
+        builder.addDocument(0, first);
+        assertTrue(builder.getRunCount() > 0, "runs spilled: " + builder.getRunCount());
+        builder.addDocument(0, Map.of("t1", new int[] { 2 }, "late", new int[] { 1 }));
+        builder.addDocument(0, Map.of("late", new int[] { 1 }));
+        builder.addDocument(1, Map.of("t1", new int[] { 1 }));
+        Path indexFile = directory.resolve("index.idx");
+        builder.write(indexFile);
+
+        InvertedIndex index = InvertedIndex.open(indexFile);
+        assertEquals(20_001, index.getTermCount());
+        assertArrayEquals(new int[] { 0, 1 }, index.postings("t1"));
+        assertArrayEquals(new int[] { 0 }, index.postings("t2"));
+        assertArrayEquals(new int[] { 0 }, index.postings("late"));
+        assertEquals(List.of(files.get(0).toString()), index.search("late t2"));
+    }
+
+    @Test
+    void duplicateAddedInPartsHasOnePostingPerFile() throws IOException {
+        List<Path> files = List.of(directory.resolve("big.txt"), directory.resolve("other.txt"),
+                directory.resolve("copy.txt"));
+        InvertedIndexBuilder builder = new InvertedIndexBuilder(directory.toString(), files, false,
+                InvertedIndexBuilder.DEFAULT_BUDGET_BYTES, 1);
+        // As FileAnalyzer.addTerms adds each term-table part: the file, then its duplicate
+        List<Map<String, int[]>> parts = List.of(
+                Map.of("shared", new int[] { 2 }, "first", new int[] { 1 }),
+                Map.of("shared", new int[] { 3 }, "second", new int[] { 1 }),
+                Map.of("shared", new int[] { 1 }, "first", new int[] { 4 }));
+        for (Map<String, int[]> part : parts) {
+            builder.addDocument(0, part);
+            builder.addDocument(2, part);
+        }
+        builder.addDocument(1, Map.of("shared", new int[] { 1 }));
+        Path indexFile = directory.resolve("index.idx");
+        builder.write(indexFile);
+
+        InvertedIndex index = InvertedIndex.open(indexFile);
+        assertEquals(3, index.getTermCount());
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.postings("shared"));
+        assertArrayEquals(new int[] { 0, 2 }, index.postings("first"));
+        assertArrayEquals(new int[] { 0, 2 }, index.postings("second"));
+        assertEquals(List.of(files.get(0).toString(), files.get(1).toString(), files.get(2).toString()),
+                index.search("shared"));
+        assertEquals(List.of(files.get(0).toString(), files.get(2).toString()), index.search("first second"));
+    }
+
+    @Test
+    void searchIntersectsTerms() throws IOException {
+        List<Path> files = List.of(directory.resolve("a.txt"), directory.resolve("b.txt"),
+                directory.resolve("c.txt"));
+        InvertedIndexBuilder builder = new InvertedIndexBuilder(directory.toString(), files, true,
+                InvertedIndexBuilder.DEFAULT_BUDGET_BYTES, 1);
+        builder.addDocument(0, Map.of("über", new int[] { 2 }, "is", new int[] { 1 }));
+        builder.addDocument(2, Map.of("über", new int[] { 1 }, "日", new int[] { 1 }));
+        builder.addDocument(1, Map.of("is", new int[] { 3 }));
+        Path indexFile = directory.resolve("index.idx");
+        builder.write(indexFile);
+
+        InvertedIndex index = InvertedIndex.open(indexFile);
+        assertTrue(index.isUnicode());
+        assertEquals(List.of(files.get(0).toString(), files.get(2).toString()), index.search("ÜBER"));
+        assertEquals(List.of(files.get(0).toString()), index.search("Über AND is"));
+        assertEquals(List.of(files.get(2).toString()), index.search("über日"));
+        assertEquals(List.of(), index.search("is 日"));
+    }
+
+    @Test
+    void indexBelongsToItsDirectory() throws IOException {
+        String home = System.getProperty("user.home");
+        System.setProperty("user.home", directory.resolve("home").toString());
+        try {
+            String analyzed = directory.toString();
+            assertNull(InvertedIndex.openFor(analyzed));
+
+            InvertedIndexBuilder builder = new InvertedIndexBuilder(analyzed, List.of(directory.resolve("a.txt")),
+                    false, InvertedIndexBuilder.DEFAULT_BUDGET_BYTES, 1);
+            builder.addDocument(0, Map.of("word", new int[] { 1 }));
+            builder.write(InvertedIndex.indexFileFor(analyzed));
+            assertEquals(1, InvertedIndex.openFor(analyzed + "/.").getDocumentCount());
+
+            // Another directory's index under this one's name is refused
+            String other = directory.resolve("other").toString();
+            Files.copy(InvertedIndex.indexFileFor(analyzed), InvertedIndex.indexFileFor(other));
+            assertThrows(IOException.class, () -> InvertedIndex.openFor(other));
+        } finally {
+            System.setProperty("user.home", home);
+        }
+    }
+}
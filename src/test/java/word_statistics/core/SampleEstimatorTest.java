@@ -0,0 +1,179 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import word_statistics.model.Estimate;
+import word_statistics.model.FileModel;
+import word_statistics.model.FileStatus;
+
+class SampleEstimatorTest {
+
+    private static final String[] WORDS = { "you", "are", "is", "the", "of", "statistics", "a", "word" };
+
+    @TempDir
+    Path directory;
+
+    private final List<Path> files = new ArrayList<>();
+    private final List<long[]> counts = new ArrayList<>();
+
+    @Test
+    void noEstimateBeforeAnyObservation() throws IOException {
+        writeCorpus(20, 0);
+        SampleEstimator estimator = estimator();
+        assertNull(estimator.estimate());
+    }
+
+    @Test
+    void sampleEstimateCoversTheTruth() throws IOException {
+        // Many small files and two big enough to be read in ranges
+        writeCorpus(300, 2);
+        SampleEstimator estimator = estimator();
+        estimator.sample(false, () -> false, () -> {
+        });
+
+        Estimate estimate = estimator.estimate();
+        assertNotNull(estimate);
+        assertTrue(estimate.getSampledFiles() > 0);
+        long[] truth = totals();
+        // The words are drawn independently, so a few margins' worth is plenty
+        assertWithin(truth[0], estimate.getTotalWords(), estimate.getTotalWordsMargin());
+        assertWithin(truth[1], estimate.getIsCount(), estimate.getIsMargin());
+        assertWithin(truth[3], estimate.getYouCount(), estimate.getYouMargin());
+        assertTrue(estimate.getTotalWordsMargin() > 0);
+    }
+
+    @Test
+    void sameSeedReproducesTheEstimateAndEveryReadIsGated() throws IOException {
+        writeCorpus(200, 2);
+        AtomicInteger entered = new AtomicInteger();
+        AtomicInteger exited = new AtomicInteger();
+        ReadGate counting = file -> {
+            entered.incrementAndGet();
+            return exited::incrementAndGet;
+        };
+        SampleEstimator first = new SampleEstimator(files, sizes(), 7, counting);
+        first.sample(false, () -> false, () -> {
+        });
+        SampleEstimator second = new SampleEstimator(files, sizes(), 7, ReadGate.OPEN);
+        second.sample(false, () -> false, () -> {
+        });
+
+        Estimate expected = first.estimate();
+        Estimate actual = second.estimate();
+        assertEquals(expected.getTotalWords(), actual.getTotalWords());
+        assertEquals(expected.getTotalWordsMargin(), actual.getTotalWordsMargin());
+        assertEquals(expected.getYouCount(), actual.getYouCount());
+        // Whole small files once each, the big ones once per range
+        assertTrue(entered.get() > expected.getSampledFiles(), "reads gated: " + entered.get());
+        assertEquals(entered.get(), exited.get());
+    }
+
+    @Test
+    void completedFilesMakeItExact() throws IOException {
+        writeCorpus(50, 0);
+        SampleEstimator estimator = estimator();
+        estimator.sample(false, () -> false, () -> {
+        });
+        for (int i = 0; i < files.size(); i++) {
+            estimator.recordFile(i, result(i));
+        }
+
+        Estimate estimate = estimator.estimate();
+        long[] truth = totals();
+        assertTrue(estimate.isExact());
+        assertEquals(truth[0], estimate.getTotalWords());
+        assertEquals(truth[1], estimate.getIsCount());
+        assertEquals(truth[2], estimate.getAreCount());
+        assertEquals(truth[3], estimate.getYouCount());
+        assertEquals(0, estimate.getTotalWordsMargin());
+        assertEquals(files.size(), estimate.getCompletedFiles());
+    }
+
+    @Test
+    void errorsCountAsNoWords() throws IOException {
+        writeCorpus(10, 0);
+        SampleEstimator estimator = estimator();
+        for (int i = 0; i < files.size(); i++) {
+            FileModel model = i == 0 ? new FileModel("x", "x", false) : result(i);
+            if (i == 0) {
+                model.setStatus(FileStatus.ERROR);
+            }
+            estimator.recordFile(i, model);
+        }
+        assertEquals(totals()[0] - counts.get(0)[0], estimator.estimate().getTotalWords());
+    }
+
+    private SampleEstimator estimator() throws IOException {
+        return new SampleEstimator(files, sizes(), 3, ReadGate.OPEN);
+    }
+
+    // Small files of 100 to 2000 words, plus big ones of several MB
+    private void writeCorpus(int small, int big) throws IOException {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < small + big; i++) {
+            int words = i < small ? 100 + random.nextInt(1_900) : 1_000_000 + random.nextInt(200_000);
+            long[] fileCounts = new long[4];
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(word).append(w % 12 == 11 ? ".\n" : " ");
+                fileCounts[0]++;
+                fileCounts[1] += word.equals("is") ? 1 : 0;
+                fileCounts[2] += word.equals("are") ? 1 : 0;
+                fileCounts[3] += word.equals("you") ? 1 : 0;
+            }
+            Path file = directory.resolve(String.format("file-%04d.txt", i));
+            Files.writeString(file, text);
+            files.add(file);
+            counts.add(fileCounts);
+        }
+    }
+
+    private long[] sizes() throws IOException {
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = Files.size(files.get(i));
+        }
+        return sizes;
+    }
+
+    private long[] totals() {
+        long[] totals = new long[4];
+        for (long[] fileCounts : counts) {
+            for (int c = 0; c < 4; c++) {
+                totals[c] += fileCounts[c];
+            }
+        }
+        return totals;
+    }
+
+    private FileModel result(int index) {
+        Path file = files.get(index);
+        FileModel model = new FileModel(file.getFileName().toString(), file.toString(), false);
+        model.setWordCount((int) counts.get(index)[0]);
+        model.setIsCount((int) counts.get(index)[1]);
+        model.setAreCount((int) counts.get(index)[2]);
+        model.setYouCount((int) counts.get(index)[3]);
+        model.setStatus(FileStatus.COMPLETED);
+        return model;
+    }
+
+    private static void assertWithin(long expected, long actual, long margin) {
+        assertTrue(Math.abs(expected - actual) <= 3 * margin + 1,
+                "expected " + expected + " but estimated " + actual + " ± " + margin);
+    }
+}
@@ -0,0 +1,161 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import word_statistics.model.DirectoryModel;
+import word_statistics.model.FileModel;
+import word_statistics.model.FileStatus;
+
+class SnapshotDiffTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reportsAddedRemovedAndChangedFiles() throws IOException {
+        Path a = directory.resolve("a.txt");
+        Path b = directory.resolve("b.txt");
+        Path c = directory.resolve("sub").resolve("c.txt");
+        Path d = directory.resolve("sub").resolve("d.txt");
+
+        Path older = snapshot(List.of(b, a, c), new long[] { 5, 10, 7 });
+        Path newer = snapshot(List.of(a, c, d), new long[] { 12, 7, 3 });
+
+        SnapshotDiff.Summary summary = SnapshotDiff.compare(older, newer, 10);
+        assertEquals(1, summary.getAdded());
+        assertEquals(1, summary.getRemoved());
+        assertEquals(1, summary.getChanged());
+        assertEquals(1, summary.getUnchanged());
+        assertEquals(3, summary.getOldFiles());
+        assertEquals(3, summary.getNewFiles());
+
+        List<SnapshotDiff.FileChange> changes = summary.getFileChanges();
+        assertEquals(3, changes.size());
+        assertEquals(SnapshotDiff.ChangeType.CHANGED, changes.get(0).getType());
+        assertEquals(a.toString(), changes.get(0).getPath());
+        assertEquals(10, changes.get(0).getOldWords());
+        assertEquals(12, changes.get(0).getNewWords());
+        assertEquals(SnapshotDiff.ChangeType.REMOVED, changes.get(1).getType());
+        assertEquals(b.toString(), changes.get(1).getPath());
+        assertEquals(SnapshotDiff.ChangeType.ADDED, changes.get(2).getType());
+        assertEquals(d.toString(), changes.get(2).getPath());
+
+        // Both directories' own totals moved
+        assertEquals(2, summary.getChangedDirectories());
+        SnapshotDiff.DirectoryChange sub = summary.getDirectoryChanges().get(1);
+        assertEquals(c.getParent().toString(), sub.getPath());
+        assertEquals(1, sub.getOldFiles());
+        assertEquals(2, sub.getNewFiles());
+    }
+
+    @Test
+    void identicalRunsHaveNoChanges() throws IOException {
+        List<Path> files = List.of(directory.resolve("x.txt"), directory.resolve("y.txt"));
+        Path older = snapshot(files, new long[] { 1, 2 });
+        Path newer = snapshot(files, new long[] { 1, 2 });
+
+        SnapshotDiff.Summary summary = SnapshotDiff.compare(older, newer, 10);
+        assertEquals(0, summary.getAdded() + summary.getRemoved() + summary.getChanged());
+        assertEquals(2, summary.getUnchanged());
+        assertEquals(0, summary.getChangedDirectories());
+    }
+
+    @Test
+    void listsAtMostMaxListedButCountsAll() throws IOException {
+        List<Path> before = List.of(directory.resolve("only.txt"));
+        List<Path> after = List.of(directory.resolve("n1.txt"), directory.resolve("n2.txt"),
+                directory.resolve("n3.txt"));
+        SnapshotDiff.Summary summary = SnapshotDiff.compare(snapshot(before, new long[] { 1 }),
+                snapshot(after, new long[] { 1, 1, 1 }), 2);
+        assertEquals(3, summary.getAdded());
+        assertEquals(1, summary.getRemoved());
+        assertEquals(2, summary.getFileChanges().size());
+    }
+
+    @Test
+    void statusChangeWithTheSameCountIsChanged() throws IOException {
+        List<Path> files = List.of(directory.resolve("x.txt"));
+        Path older = snapshot(files, new long[] { 4 }, FileStatus.ERROR);
+        Path newer = snapshot(files, new long[] { 4 }, FileStatus.COMPLETED);
+
+        SnapshotDiff.Summary summary = SnapshotDiff.compare(older, newer, 10);
+        assertEquals(1, summary.getChanged());
+        assertEquals(0, summary.getUnchanged());
+        SnapshotDiff.FileChange change = summary.getFileChanges().get(0);
+        assertEquals(FileStatus.ERROR, change.getOldStatus());
+        assertEquals(FileStatus.COMPLETED, change.getNewStatus());
+    }
+
+    @Test
+    void readerReturnsTheHeaderAndFilesInPathOrder() throws IOException {
+        Path a = directory.resolve("a.txt");
+        Path b = directory.resolve("b.txt");
+        Path c = directory.resolve("sub").resolve("c.txt");
+        Path written = snapshot(List.of(c, b, a), new long[] { 7, 5, 10 });
+
+        try (RunSnapshot.Reader reader = new RunSnapshot.Reader(written)) {
+            assertEquals(directory.toString(), reader.getDirectory());
+            assertEquals(3, reader.getFileCount());
+            assertEquals(22, reader.getTotalWords());
+            assertEquals(3, reader.getIsCount());
+
+            assertTrue(reader.next());
+            assertEquals(a.toString(), reader.getFilePath());
+            assertEquals(directory.toString(), reader.getFileDirectory());
+            assertEquals("a.txt", reader.getFileName());
+            assertEquals(FileStatus.COMPLETED, reader.getStatus());
+            assertEquals(10, reader.getWordCount());
+            assertEquals(1, reader.getFileIsCount());
+            assertTrue(reader.next());
+            assertEquals(b.toString(), reader.getFilePath());
+            assertEquals(5, reader.getWordCount());
+            assertTrue(reader.next());
+            assertEquals(c.toString(), reader.getFilePath());
+            assertEquals(c.getParent().toString(), reader.getFileDirectory());
+            assertEquals(7, reader.getWordCount());
+            assertFalse(reader.next());
+        }
+    }
+
+    // Writes a run of the given files and word counts, moved out of
+    // the snapshot directory so that runs in the same millisecond don't collide
+    private Path snapshot(List<Path> files, long[] wordCounts) throws IOException {
+        return snapshot(files, wordCounts, FileStatus.COMPLETED);
+    }
+
+    private Path snapshot(List<Path> files, long[] wordCounts, FileStatus status) throws IOException {
+        FileResultStore store = new FileResultStore(files);
+        DirectoryModel totals = new DirectoryModel(directory.toString());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            FileModel model = new FileModel(file.getFileName().toString(), file.toString(), false);
+            model.setWordCount((int) wordCounts[i]);
+            model.setIsCount(1);
+            model.setStatus(status);
+            store.set(i, model);
+            totals.totalWords.addAndGet((int) wordCounts[i]);
+            totals.isCount.incrementAndGet();
+        }
+
+        String home = System.getProperty("user.home");
+        System.setProperty("user.home", directory.resolve("home").toString());
+        try {
+            Path written = RunSnapshot.write(directory.toString(), totals, store);
+            return Files.move(written, Files.createTempFile(directory, "run-", ".snap"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            System.setProperty("user.home", home);
+        }
+    }
+}
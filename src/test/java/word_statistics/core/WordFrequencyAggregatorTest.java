@@ -0,0 +1,140 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import word_statistics.model.WordFrequency;
+
+class WordFrequencyAggregatorTest {
+
+    @Test
+    void inMemoryTotalsAreExact() throws IOException {
+        WordFrequencyAggregator aggregator = new WordFrequencyAggregator(64L * 1024 * 1024, 1);
+        aggregator.add(Map.of("the", new int[] { 3 }, "is", new int[] { 1 }), 1);
+        aggregator.add(Map.of("the", new int[] { 2 }, "you", new int[] { 4 }), 2);
+
+        WordFrequencyAggregator.Result result = aggregator.merge(2);
+        assertEquals(0, aggregator.getRunCount());
+        assertEquals(3, result.getDistinctWords());
+        assertEquals(3 + 1 + 2 * (2 + 4), result.getTotalWords());
+        List<WordFrequency> top = result.getTopWords();
+        assertEquals(2, top.size());
+        assertEquals("you", top.get(0).getWord());
+        assertEquals(8, top.get(0).getCount());
+        assertEquals("the", top.get(1).getWord());
+        assertEquals(7, top.get(1).getCount());
+    }
+
+    @Test
+    void spilledRunsMergeToTheSameTotals() throws Exception {
+        // The smallest budget (1 MB per worker) and enough distinct terms to spill
+        // many runs from several threads, more than one merge pass can open
+        int workers = 4;
+        WordFrequencyAggregator aggregator = new WordFrequencyAggregator(0, workers);
+        Map<String, long[]> expected = new HashMap<>();
+        List<Map<String, int[]>> files = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int file = 0; file < 800; file++) {
+            Map<String, int[]> terms = new HashMap<>();
+            for (int i = 0; i < 2_000; i++) {
+                String term = "term" + random.nextInt(300_000);
+                terms.computeIfAbsent(term, k -> new int[1])[0]++;
+            }
+            files.add(terms);
+            for (Map.Entry<String, int[]> entry : terms.entrySet()) {
+                expected.computeIfAbsent(entry.getKey(), k -> new long[1])[0] += entry.getValue()[0];
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> added = new ArrayList<>();
+            for (Map<String, int[]> terms : files) {
+                added.add(pool.submit(() -> aggregator.add(terms, 1)));
+            }
+            for (Future<?> future : added) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(aggregator.getRunCount() > 64, "runs spilled: " + aggregator.getRunCount());
+
+        WordFrequencyAggregator.Result result = aggregator.merge(10);
+        long total = 0;
+        String mostFrequent = null;
+        long mostFrequentCount = 0;
+        for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+            long count = entry.getValue()[0];
+            total += count;
+            if (count > mostFrequentCount
+                    || (count == mostFrequentCount && entry.getKey().compareTo(mostFrequent) < 0)) {
+                mostFrequent = entry.getKey();
+                mostFrequentCount = count;
+            }
+        }
+        assertEquals(expected.size(), result.getDistinctWords());
+        assertEquals(total, result.getTotalWords());
+        assertEquals(mostFrequent, result.getTopWords().get(0).getWord());
+        assertEquals(mostFrequentCount, result.getTopWords().get(0).getCount());
+        assertEquals(0, aggregator.getRunCount());
+    }
+
+    @Test
+    void discardDropsRuns() {
+        WordFrequencyAggregator aggregator = new WordFrequencyAggregator(0, 1);
+        Map<String, int[]> terms = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            terms.put("w" + i, new int[] { 1 });
+        }
+        aggregator.add(terms, 1);
+        assertTrue(aggregator.getRunCount() > 0);
+        aggregator.discard();
+        assertEquals(0, aggregator.getRunCount());
+    }
+
+    @Test
+    void copiesCountLikeSeparateAdds() throws IOException {
+        Map<String, int[]> terms = Map.of("you", new int[] { 2 }, "are", new int[] { 1 });
+        WordFrequencyAggregator copied = new WordFrequencyAggregator(64L * 1024 * 1024, 1);
+        copied.add(terms, 3);
+        WordFrequencyAggregator repeated = new WordFrequencyAggregator(64L * 1024 * 1024, 1);
+        for (int i = 0; i < 3; i++) {
+            repeated.add(terms, 1);
+        }
+
+        WordFrequencyAggregator.Result expected = repeated.merge(5);
+        WordFrequencyAggregator.Result result = copied.merge(5);
+        assertEquals(9, result.getTotalWords());
+        assertEquals(expected.getTotalWords(), result.getTotalWords());
+        assertEquals(expected.getDistinctWords(), result.getDistinctWords());
+        assertEquals(expected.getTopWords().size(), result.getTopWords().size());
+        for (int i = 0; i < result.getTopWords().size(); i++) {
+            assertEquals(expected.getTopWords().get(i).getWord(), result.getTopWords().get(i).getWord());
+            assertEquals(expected.getTopWords().get(i).getCount(), result.getTopWords().get(i).getCount());
+        }
+    }
+
+    @Test
+    void discardedAggregatorIgnoresAddsAndCannotMerge() {
+        WordFrequencyAggregator aggregator = new WordFrequencyAggregator(64L * 1024 * 1024, 1);
+        aggregator.add(Map.of("is", new int[] { 1 }), 1);
+        aggregator.discard();
+        aggregator.add(Map.of("is", new int[] { 1 }), 1);
+        assertEquals(0, aggregator.getRunCount());
+        assertThrows(IOException.class, () -> aggregator.merge(1));
+    }
+}
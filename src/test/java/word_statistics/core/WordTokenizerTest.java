@@ -0,0 +1,262 @@
+package word_statistics.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import word_statistics.model.FileModel;
+
+class WordTokenizerTest {
+
+    private static final String[] WORDS = { "is", "IS", "Are", "you", "YOU", "the", "a", "word", "statistics",
+            "x", "longerwordhere", "e-mail", "don't", "42", "tab\there" };
+    private static final String[] SEPARATORS = { " ", "  ", ",", ". ", "\n", "\r\n", "!?", "(", ")", "\t", "--" };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void scalarMatchesTheRegexSplit() {
+        String text = randomText(new SplittableRandom(1), 20_000);
+        WordTokenizer tokenizer = tokenize(text, false, 97);
+        assertMatchesRegex(text, tokenizer);
+    }
+
+    @Test
+    void chunkBoundariesDoNotChangeTheCounts() {
+        String text = randomText(new SplittableRandom(2), 5_000);
+        WordTokenizer whole = tokenize(text, false, text.length());
+        for (int chunk : new int[] { 1, 2, 3, 7, 64, 1000 }) {
+            WordTokenizer chunked = tokenize(text, false, chunk);
+            assertSameCounts(whole, chunked);
+        }
+    }
+
+    @Test
+    void simdMatchesScalar() {
+        assumeTrue(VectorWordScanner.isUsable(), "jdk.incubator.vector not available");
+        SplittableRandom random = new SplittableRandom(3);
+        for (int round = 0; round < 20; round++) {
+            char[] chars = randomText(random, 2_000 + random.nextInt(4_000)).toCharArray();
+            WordTokenizer scalar = new WordTokenizer();
+            WordTokenizer simd = new WordTokenizer();
+            int chunk = 1 + random.nextInt(300);
+            for (int from = 0; from < chars.length; from += chunk) {
+                int to = Math.min(chars.length, from + chunk);
+                scalar.feedScalar(chars, from, to);
+                VectorWordScanner.feed(simd, chars, from, to);
+            }
+            scalar.finish();
+            simd.finish();
+            assertSameCounts(scalar, simd);
+        }
+    }
+
+    @Test
+    void simdMatchesScalarOnRunsAndRangeEdges() {
+        assumeTrue(VectorWordScanner.isUsable(), "jdk.incubator.vector not available");
+        // The chars on either side of every delimiter range, chars that are
+        // negative as shorts, and runs longer than any vector
+        StringBuilder edges = new StringBuilder();
+        for (char c : new char[] { 8, 9, 13, 14, 31, 32, 47, 48, 57, 58, 64, 65, 90, 91, 96, 97, 122, 123,
+                126, 127, '\u00e9', '\u65e5', '\u8000', '\uff0c', '\uffff' }) {
+            edges.append(c).append('y').append(c).append(c);
+        }
+        String[] texts = { "", " ", "a", " ".repeat(1_000), "w".repeat(1_000), "is ".repeat(400),
+                "\t\n" + "you".repeat(300) + "!", edges.toString().repeat(20) };
+        for (String text : texts) {
+            char[] chars = text.toCharArray();
+            for (int chunk = 1; chunk <= 130; chunk++) {
+                WordTokenizer scalar = new WordTokenizer();
+                WordTokenizer simd = new WordTokenizer();
+                for (int from = 0; from < chars.length; from += chunk) {
+                    int to = Math.min(chars.length, from + chunk);
+                    scalar.feedScalar(chars, from, to);
+                    VectorWordScanner.feed(simd, chars, from, to);
+                }
+                scalar.finish();
+                simd.finish();
+                assertSameCounts(scalar, simd);
+            }
+        }
+    }
+
+    @Test
+    void fileAndPushPathsAgree() throws IOException {
+        String text = randomText(new SplittableRandom(4), 200_000);
+        Path file = directory.resolve("words.txt");
+        Files.writeString(file, text);
+
+        WordTokenizer fromFile = new WordTokenizer();
+        assertTrue(fromFile.tokenize(file, () -> false));
+
+        WordTokenizer pushed = new WordTokenizer();
+        pushed.beginBytes();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int from = 0; from < bytes.length; from += 10_000) {
+            pushed.feedBytes(java.nio.ByteBuffer.wrap(bytes, from, Math.min(10_000, bytes.length - from)));
+        }
+        pushed.endBytes();
+
+        assertMatchesRegex(text, fromFile);
+        assertSameCounts(fromFile, pushed);
+    }
+
+    @Test
+    void unicodeModeSplitsOnLettersAndIdeographs() {
+        // ASCII mode keeps accented and CJK text in one token, Unicode mode
+        // splits on the em dash and counts each ideograph as a word
+        String text = "Café—naïve Straße 日本語 ĲSSEL you ARE";
+        WordTokenizer ascii = tokenize(text, false, text.length());
+        assertEquals(6, ascii.getWordCount());
+
+        WordTokenizer unicode = tokenize(text, true, text.length());
+        assertEquals(9, unicode.getWordCount());
+        assertEquals(1, unicode.getYouCount());
+        assertEquals(1, unicode.getAreCount());
+        assertEquals("Straße", unicode.getLongestWord());
+        assertEquals("日", unicode.getShortestWord());
+    }
+
+    @Test
+    void unicodeModeKeepsSurrogatePairsAcrossChunks() {
+        // U+1D400 (mathematical bold A) is a letter outside the BMP
+        String text = "x𝐀y 𝐀𝐀";
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            WordTokenizer tokenizer = tokenize(text, true, chunk);
+            assertEquals(2, tokenizer.getWordCount(), "chunk " + chunk);
+            assertEquals("x𝐀y", tokenizer.getLongestWord(), "chunk " + chunk);
+            assertEquals("𝐀𝐀", tokenizer.getShortestWord(), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void unicodeTermsAreCaseFolded() {
+        WordTokenizer tokenizer = new WordTokenizer();
+        tokenizer.setUnicode(true);
+        tokenizer.setCollectTerms(true);
+        char[] chars = "Über über ÜBER".toCharArray();
+        tokenizer.feed(chars, 0, chars.length);
+        tokenizer.finish();
+        assertEquals(1, tokenizer.getTermFrequencies().size());
+        assertEquals(3, tokenizer.getTermFrequencies().get("über")[0]);
+    }
+
+    @Test
+    void longTokensAreBoundedStandIns() {
+        int length = WordTokenizer.MAX_TOKEN_CHARS * 50;
+        StringBuilder text = new StringBuilder("short ");
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        text.append(" is");
+
+        for (boolean unicode : new boolean[] { false, true }) {
+            WordTokenizer tokenizer = tokenize(text.toString(), unicode, 4096);
+            assertEquals(3, tokenizer.getWordCount());
+            assertEquals(1, tokenizer.getIsCount());
+            assertEquals("is", tokenizer.getShortestWord());
+
+            String longest = tokenizer.getLongestWord();
+            assertTrue(longest.length() < 200, "stand-in is bounded: " + longest.length());
+            assertEquals(length, FileModel.wordLength(longest, unicode));
+            assertTrue(longest.startsWith("abcdefghij"));
+        }
+    }
+
+    @Test
+    void identicalLongTokensShareAStandIn() {
+        int length = WordTokenizer.MAX_TOKEN_CHARS + 10;
+        String token = "q".repeat(length);
+        WordTokenizer tokenizer = new WordTokenizer();
+        tokenizer.setCollectTerms(true);
+        char[] chars = (token + " " + token + " " + token.substring(1) + "r").toCharArray();
+        tokenizer.feed(chars, 0, chars.length);
+        tokenizer.finish();
+        assertEquals(3, tokenizer.getWordCount());
+        assertEquals(2, tokenizer.getTermFrequencies().size());
+    }
+
+    @Test
+    void resetClearsEverything() {
+        WordTokenizer tokenizer = tokenize("you are what you is", false, 5);
+        tokenizer.reset();
+        tokenizer.finish();
+        assertEquals(0, tokenizer.getWordCount());
+        assertEquals(0, tokenizer.getYouCount());
+        assertEquals("", tokenizer.getLongestWord());
+    }
+
+    private static WordTokenizer tokenize(String text, boolean unicode, int chunk) {
+        WordTokenizer tokenizer = new WordTokenizer();
+        tokenizer.setUnicode(unicode);
+        char[] chars = text.toCharArray();
+        for (int from = 0; from < chars.length; from += chunk) {
+            tokenizer.feed(chars, from, Math.min(chars.length, from + chunk));
+        }
+        tokenizer.finish();
+        return tokenizer;
+    }
+
+    private static String randomText(SplittableRandom random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return text.toString();
+    }
+
+    // The regex split and toLowerCase() switch the analyzer used before WordTokenizer
+    private static void assertMatchesRegex(String text, WordTokenizer tokenizer) {
+        int words = 0;
+        int is = 0;
+        int are = 0;
+        int you = 0;
+        String longest = "";
+        String shortest = "";
+        for (String word : text.split("[\\s\\p{Punct}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            words++;
+            switch (word.toLowerCase()) {
+                case "is" -> is++;
+                case "are" -> are++;
+                case "you" -> you++;
+                default -> {
+                }
+            }
+            if (longest.isEmpty() || word.length() > longest.length()) {
+                longest = word;
+            }
+            if (shortest.isEmpty() || word.length() < shortest.length()) {
+                shortest = word;
+            }
+        }
+        assertEquals(words, tokenizer.getWordCount());
+        assertEquals(is, tokenizer.getIsCount());
+        assertEquals(are, tokenizer.getAreCount());
+        assertEquals(you, tokenizer.getYouCount());
+        assertEquals(longest, tokenizer.getLongestWord());
+        assertEquals(shortest, tokenizer.getShortestWord());
+    }
+
+    private static void assertSameCounts(WordTokenizer expected, WordTokenizer actual) {
+        assertEquals(expected.getWordCount(), actual.getWordCount());
+        assertEquals(expected.getIsCount(), actual.getIsCount());
+        assertEquals(expected.getAreCount(), actual.getAreCount());
+        assertEquals(expected.getYouCount(), actual.getYouCount());
+        assertEquals(expected.getLongestWord(), actual.getLongestWord());
+        assertEquals(expected.getShortestWord(), actual.getShortestWord());
+    }
+}
@@ -0,0 +1,61 @@
+package word_statistics.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FileModelTest {
+
+    // U+1D400 (mathematical bold A) is one code point but two chars
+    private static final String WIDE = "𝐀𝐀";
+
+    @Test
+    void asciiModeComparesChars() {
+        FileModel model = new FileModel("a.txt", "/a.txt", false);
+        model.setLongestWord(WIDE);
+        model.setLongestWord("abc");
+        assertEquals(WIDE, model.getLongestWord());
+        model.setShortestWord("abc");
+        model.setShortestWord(WIDE);
+        assertEquals("abc", model.getShortestWord());
+        assertEquals(4, FileModel.wordLength(WIDE, false));
+    }
+
+    @Test
+    void unicodeModeComparesCodePoints() {
+        FileModel model = new FileModel("a.txt", "/a.txt", false);
+        model.setUnicodeWords(true);
+        model.setLongestWord(WIDE);
+        model.setLongestWord("abc");
+        assertEquals("abc", model.getLongestWord());
+        model.setShortestWord("abc");
+        model.setShortestWord(WIDE);
+        assertEquals(WIDE, model.getShortestWord());
+        assertEquals(2, FileModel.wordLength(WIDE, true));
+        assertTrue(model.copyFor("b.txt", "/b.txt").isUnicodeWords());
+    }
+
+    @Test
+    void directoryRollupUsesTheFilesMode() {
+        for (boolean unicode : new boolean[] { false, true }) {
+            DirectoryNode node = new DirectoryNode("root", "/root", null);
+            for (String word : new String[] { WIDE, "abc" }) {
+                FileModel model = new FileModel(word + ".txt", "/root/" + word + ".txt", false);
+                model.setUnicodeWords(unicode);
+                model.setLongestWord(word);
+                model.setShortestWord(word);
+                node.add(model);
+            }
+            assertEquals(unicode ? "abc" : WIDE, node.getLongestWord());
+            assertEquals(unicode ? WIDE : "abc", node.getShortestWord());
+        }
+    }
+
+    @Test
+    void truncatedWordsCountTheWholeToken() {
+        String truncated = FileModel.truncatedWord("abc", 1_000_000);
+        assertEquals(1_000_000, FileModel.wordLength(truncated, false));
+        assertEquals(1_000_000, FileModel.wordLength(truncated, true));
+    }
+}